@@ -0,0 +1,374 @@
+package com.flutterbeacon;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Opt-in scanning mode where the controller queues scan results and hands them over
+ * in batches (report delay), filtered in hardware by the registered regions. Each
+ * batch is cut into ranging cycles by the original scan timestamps and replayed
+ * through the ranging and monitoring path, so the CPU wakes up once per batch
+ * instead of once per cycle.
+ *
+ * Controllers deliver nothing while no advertisement passes the filters, so regions
+ * are also exited on a timer set for the earliest region that can be left.
+ *
+ * The BLE scanner is behind {@link LeScanner}, so the mode runs on a plain JVM
+ * against a fake one.
+ */
+class FlutterBeaconBatchScanner {
+  static final long DEFAULT_REPORT_DELAY_MILLIS = 10000;
+  static final long DEFAULT_CYCLE_MILLIS = 1100;
+  static final long DEFAULT_EXIT_MILLIS = 10000;
+
+  interface LeScanner {
+    /**
+     * @return false when scanning could not be started.
+     */
+    boolean start(List<Filter> filters, long reportDelayMillis, Callback callback);
+
+    void stop();
+  }
+
+  interface Callback {
+    void onBatch(List<Sighting> sightings);
+
+    void onFailure(int errorCode);
+  }
+
+  interface Listener {
+    void onBatchDelivered(int sightings);
+
+    void onRangingCycle(List<Beacon> beacons, Region region, long timestamp);
+
+    void onMonitoringEvent(String event, String state, Region region, long timestamp);
+  }
+
+  /**
+   * Hardware scan filter, on manufacturer data when {@code serviceUuid} is -1, or on
+   * the 16 bit service UUID otherwise.
+   */
+  static class Filter {
+    final int manufacturerId;
+    final long serviceUuid;
+    final byte[] data;
+    final byte[] mask;
+
+    Filter(int manufacturerId, long serviceUuid, byte[] data, byte[] mask) {
+      this.manufacturerId = manufacturerId;
+      this.serviceUuid = serviceUuid;
+      this.data = data;
+      this.mask = mask;
+    }
+  }
+
+  static class Sighting {
+    final byte[] scanRecord;
+    final int rssi;
+    final String address;
+    // Wall clock time the advertisement was received, not delivered.
+    final long timestamp;
+
+    Sighting(byte[] scanRecord, int rssi, String address, long timestamp) {
+      this.scanRecord = scanRecord;
+      this.rssi = rssi;
+      this.address = address;
+      this.timestamp = timestamp;
+    }
+  }
+
+  private final LeScanner leScanner;
+  private final Listener listener;
+  private final long reportDelayMillis;
+  private final long cycleMillis;
+  private final long exitMillis;
+
+  private List<BeaconParser> parsers = new ArrayList<>();
+  private List<Region> rangingRegions = new ArrayList<>();
+  private List<Region> monitoringRegions = new ArrayList<>();
+  private final Map<Region, Long> lastSeen = new HashMap<>();
+  private long lastCycleTimestamp = -1;
+  private boolean running;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  @SuppressWarnings("rawtypes")
+  FlutterBeaconBatchScanner(LeScanner leScanner, Listener listener, Object arguments) {
+    Map map = arguments instanceof Map ? (Map) arguments : Collections.emptyMap();
+    this.leScanner = leScanner;
+    this.listener = listener;
+    this.reportDelayMillis = longOf(map.get("reportDelayMillis"), DEFAULT_REPORT_DELAY_MILLIS);
+    this.cycleMillis = Math.max(100, longOf(map.get("cycleMillis"), DEFAULT_CYCLE_MILLIS));
+    this.exitMillis = longOf(map.get("exitMillis"), DEFAULT_EXIT_MILLIS);
+  }
+
+  /**
+   * (Re)start scanning for the given regions. Regions monitored before keep their
+   * inside state, so restarting does not fire enter events again.
+   */
+  synchronized boolean start(List<BeaconParser> parsers, List<Region> rangingRegions, List<Region> monitoringRegions) {
+    stop();
+    this.parsers = new ArrayList<>(parsers);
+    this.rangingRegions = new ArrayList<>(rangingRegions);
+    this.monitoringRegions = new ArrayList<>(monitoringRegions);
+    lastSeen.keySet().retainAll(monitoringRegions);
+
+    // A region both ranged and monitored needs its filters once.
+    Set<Region> regions = new LinkedHashSet<>(rangingRegions);
+    regions.addAll(monitoringRegions);
+    running = leScanner.start(filtersFor(this.parsers, regions), reportDelayMillis, callback);
+    scheduleExitCheck();
+    return running;
+  }
+
+  synchronized void stop() {
+    handler.removeCallbacks(exitCheck);
+    if (running) {
+      leScanner.stop();
+      running = false;
+    }
+  }
+
+  synchronized boolean isRunning() {
+    return running;
+  }
+
+  long getCycleMillis() {
+    return cycleMillis;
+  }
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onBatch(List<Sighting> sightings) {
+      replay(sightings);
+    }
+
+    @Override
+    public void onFailure(int errorCode) {
+      synchronized (FlutterBeaconBatchScanner.this) {
+        running = false;
+      }
+    }
+  };
+
+  synchronized void replay(List<Sighting> sightings) {
+    listener.onBatchDelivered(sightings.size());
+    if (sightings.isEmpty()) {
+      // Nothing passed the filters for a whole report delay.
+      if (lastCycleTimestamp >= 0) {
+        lastCycleTimestamp += reportDelayMillis;
+        replayCycle(Collections.<Sighting>emptyList(), lastCycleTimestamp);
+      }
+      scheduleExitCheck();
+      return;
+    }
+
+    List<Sighting> sorted = new ArrayList<>(sightings);
+    Collections.sort(sorted, new Comparator<Sighting>() {
+      @Override
+      public int compare(Sighting a, Sighting b) {
+        return a.timestamp < b.timestamp ? -1 : a.timestamp == b.timestamp ? 0 : 1;
+      }
+    });
+
+    int start = 0;
+    while (start < sorted.size()) {
+      long cycleStart = sorted.get(start).timestamp;
+      int end = start;
+      while (end < sorted.size() && sorted.get(end).timestamp < cycleStart + cycleMillis) {
+        end++;
+      }
+      replayCycle(sorted.subList(start, end), cycleStart + cycleMillis);
+      start = end;
+    }
+    scheduleExitCheck();
+  }
+
+  private final Runnable exitCheck = new Runnable() {
+    @Override
+    public void run() {
+      checkExits(System.currentTimeMillis());
+    }
+  };
+
+  /**
+   * Exit the monitored regions not seen for exitMillis, without waiting for a batch.
+   * A batch still queued in the controller can hold sightings up to a report delay
+   * old, so a region is only left once that delay passed too.
+   *
+   * @return true when a region was exited.
+   */
+  synchronized boolean checkExits(long now) {
+    boolean exited = false;
+    Iterator<Map.Entry<Region, Long>> iterator = lastSeen.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Region, Long> entry = iterator.next();
+      if (now - entry.getValue() >= exitMillis + reportDelayMillis) {
+        iterator.remove();
+        listener.onMonitoringEvent("didExitRegion", null, entry.getKey(), now);
+        listener.onMonitoringEvent("didDetermineStateForRegion", "OUTSIDE", entry.getKey(), now);
+        exited = true;
+      }
+    }
+    scheduleExitCheck();
+    return exited;
+  }
+
+  private void scheduleExitCheck() {
+    handler.removeCallbacks(exitCheck);
+    if (!running || lastSeen.isEmpty()) {
+      return;
+    }
+    long deadline = Long.MAX_VALUE;
+    for (long last : lastSeen.values()) {
+      deadline = Math.min(deadline, last + exitMillis + reportDelayMillis);
+    }
+    handler.postDelayed(exitCheck, Math.max(0, deadline - System.currentTimeMillis()));
+  }
+
+  private void replayCycle(List<Sighting> sightings, long timestamp) {
+    lastCycleTimestamp = timestamp;
+    // Same beacon seen several times in a cycle: keep one, with the mean rssi.
+    Map<String, Beacon> beacons = new LinkedHashMap<>();
+    Map<String, int[]> rssi = new HashMap<>();
+    for (Sighting sighting : sightings) {
+      Beacon beacon = parse(sighting);
+      if (beacon == null) {
+        continue;
+      }
+      String key = FlutterBeaconUtils.identityOf(beacon) + "/" + sighting.address;
+      int[] sum = rssi.get(key);
+      if (sum == null) {
+        sum = new int[2];
+        rssi.put(key, sum);
+      }
+      sum[0] += sighting.rssi;
+      sum[1]++;
+      beacons.put(key, beacon);
+    }
+    for (Map.Entry<String, Beacon> entry : beacons.entrySet()) {
+      int[] sum = rssi.get(entry.getKey());
+      entry.getValue().setRssi(sum[0] / sum[1]);
+    }
+
+    for (Region region : rangingRegions) {
+      listener.onRangingCycle(matching(beacons.values(), region), region, timestamp);
+    }
+
+    for (Region region : monitoringRegions) {
+      boolean seen = !matching(beacons.values(), region).isEmpty();
+      Long last = lastSeen.get(region);
+      if (seen) {
+        lastSeen.put(region, timestamp);
+        if (last == null) {
+          listener.onMonitoringEvent("didEnterRegion", null, region, timestamp);
+          listener.onMonitoringEvent("didDetermineStateForRegion", "INSIDE", region, timestamp);
+        }
+      } else if (last != null && timestamp - last >= exitMillis) {
+        lastSeen.remove(region);
+        listener.onMonitoringEvent("didExitRegion", null, region, timestamp);
+        listener.onMonitoringEvent("didDetermineStateForRegion", "OUTSIDE", region, timestamp);
+      }
+    }
+  }
+
+  private Beacon parse(Sighting sighting) {
+    for (BeaconParser parser : parsers) {
+      Beacon beacon = parser.fromScanData(sighting.scanRecord, sighting.rssi, null);
+      if (beacon != null) {
+        return sighting.address == null ? beacon
+            : new Beacon.Builder().copyBeaconFields(beacon).setBluetoothAddress(sighting.address).build();
+      }
+    }
+    return null;
+  }
+
+  private static List<Beacon> matching(Iterable<Beacon> beacons, Region region) {
+    List<Beacon> list = new ArrayList<>();
+    for (Beacon beacon : beacons) {
+      if (region.matchesBeacon(beacon)) {
+        list.add(beacon);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * One filter per layout and manufacturer matching the beacon type code, narrowed
+   * to the proximity UUID of the region for layouts carrying it at bytes 4-19.
+   * Service UUID layouts such as Eddystone are filtered on the service only.
+   */
+  static List<Filter> filtersFor(List<BeaconParser> parsers, Collection<Region> regions) {
+    List<Filter> filters = new ArrayList<>();
+    for (BeaconParser parser : parsers) {
+      Long serviceUuid = parser.getServiceUuid();
+      if (serviceUuid != null) {
+        filters.add(new Filter(-1, serviceUuid, null, null));
+        continue;
+      }
+
+      Long typeCode = parser.getMatchingBeaconTypeCode();
+      int typeStart = parser.getMatchingBeaconTypeCodeStartOffset() - 2;
+      int typeEnd = parser.getMatchingBeaconTypeCodeEndOffset() - 2;
+      if (typeCode == null || typeStart < 0) {
+        continue;
+      }
+      boolean uuidAt4 = parser.getLayout().contains("i:4-19");
+
+      List<byte[]> uuids = new ArrayList<>();
+      for (Region region : regions) {
+        Identifier id1 = region.getId1();
+        if (!uuidAt4 || id1 == null) {
+          // A region without proximity UUID needs the unfiltered type code.
+          uuids.clear();
+          uuids.add(null);
+          break;
+        }
+        uuids.add(id1.toByteArrayOfSpecifiedEndianness(true));
+      }
+      if (uuids.isEmpty()) {
+        uuids.add(null);
+      }
+
+      for (int manufacturer : parser.getHardwareAssistManufacturers()) {
+        for (byte[] uuid : uuids) {
+          int length = uuid == null ? typeEnd + 1 : 18;
+          byte[] data = new byte[length];
+          byte[] mask = new byte[length];
+          for (int i = typeEnd; i >= typeStart; i--) {
+            data[i] = (byte) (typeCode >> (8 * (typeEnd - i)));
+            mask[i] = (byte) 0xff;
+          }
+          if (uuid != null) {
+            for (int i = 0; i < 16; i++) {
+              data[2 + i] = uuid[i];
+              mask[2 + i] = (byte) 0xff;
+            }
+          }
+          filters.add(new Filter(manufacturer, -1, data, mask));
+        }
+      }
+    }
+    return filters;
+  }
+
+  private static long longOf(Object value, long defaultValue) {
+    return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+  }
+}
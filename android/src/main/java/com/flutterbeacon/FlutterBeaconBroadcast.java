@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.bluetooth.le.AdvertiseCallback;
 import android.bluetooth.le.AdvertiseSettings;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -12,27 +13,84 @@ import org.altbeacon.beacon.Beacon;
 import org.altbeacon.beacon.BeaconParser;
 import org.altbeacon.beacon.BeaconTransmitter;
 
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
 import java.util.Map;
 
 import io.flutter.plugin.common.MethodChannel;
 
 class FlutterBeaconBroadcast {
   private static final String TAG = FlutterBeaconBroadcast.class.getSimpleName();
-  private final BeaconTransmitter beaconTransmitter;
+  static final String PREVIOUS_RESTORED = "PREVIOUS_RESTORED";
+  private final WeakReference<Activity> activity;
+  private final FlutterBeaconMetrics metrics;
+  private final FlutterBeaconBroadcastScheduler scheduler;
 
-  FlutterBeaconBroadcast(Activity activity, BeaconParser iBeaconLayout) {
-    this.beaconTransmitter = new BeaconTransmitter(activity, iBeaconLayout);
+  // One transmitter per layout, so switching formats reuses the advertiser
+  // instead of tearing it down and creating a new one.
+  private final Map<String, BeaconTransmitter> transmitters = new HashMap<>();
+  private BeaconTransmitter beaconTransmitter;
+
+  private Map<Object, Object> currentArguments;
+  private Map<Object, Object> pendingUpdate;
+  private MethodChannel.Result pendingResult;
+  private boolean updateInFlight;
+  // Incremented on every advertise and stop, so callbacks of a superseded start are ignored.
+  private int generation;
+
+  FlutterBeaconBroadcast(Activity activity, FlutterBeaconMetrics metrics) {
+    this.activity = new WeakReference<>(activity);
+    this.metrics = metrics;
+    this.scheduler = new FlutterBeaconBroadcastScheduler(this, metrics);
+  }
+
+  BeaconTransmitter transmitterFor(BeaconParser beaconParser) {
+    BeaconTransmitter transmitter = transmitters.get(beaconParser.getLayout());
+    if (transmitter == null) {
+      transmitter = new BeaconTransmitter(activity.get(), beaconParser);
+      transmitters.put(beaconParser.getLayout(), transmitter);
+    }
+    return transmitter;
+  }
+
+  // New instance outside of the cache, for advertising several beacons of
+  // the same layout at once.
+  BeaconTransmitter newTransmitter(BeaconParser beaconParser) {
+    return new BeaconTransmitter(activity.get(), beaconParser);
   }
-  
+
+  // Whether the single broadcast is on air or starting with this transmitter.
+  boolean isUsing(BeaconTransmitter transmitter) {
+    return transmitter == beaconTransmitter && (updateInFlight || currentArguments != null);
+  }
+
   void isBroadcasting(@NonNull MethodChannel.Result result) {
-    result.success(beaconTransmitter.isStarted());
+    result.success((beaconTransmitter != null && beaconTransmitter.isStarted()) || scheduler.isRunning());
   }
-  
+
   void stopBroadcast(@NonNull MethodChannel.Result result) {
-    beaconTransmitter.stopAdvertising();
+    dropPendingUpdate();
+    generation++;
+    updateInFlight = false;
+    currentArguments = null;
+    stopTransmitter();
+    scheduler.stop();
     result.success(true);
   }
-  
+
+  void startBroadcastRotation(Object arguments, @NonNull MethodChannel.Result result) {
+    dropPendingUpdate();
+    generation++;
+    updateInFlight = false;
+    currentArguments = null;
+    stopTransmitter();
+    scheduler.start(arguments, result);
+  }
+
+  void getBroadcastStats(@NonNull MethodChannel.Result result) {
+    result.success(scheduler.stats());
+  }
+
   @SuppressWarnings("rawtypes")
   void startBroadcast(Object arguments, @NonNull final MethodChannel.Result result) {
     if (!(arguments instanceof Map)) {
@@ -40,10 +98,65 @@ class FlutterBeaconBroadcast {
       return;
     }
 
-    Map map = (Map) arguments;
-    final Beacon beacon = FlutterBeaconUtils.beaconFromMap(map);
-    
+    scheduler.stop();
+    dropPendingUpdate();
+    advertise(new HashMap<Object, Object>((Map) arguments), result, currentArguments);
+  }
+
+  /**
+   * Change identifiers, tx power or mode of the running broadcast. The given arguments
+   * are merged over the ones in effect, and updates arriving while one is still being
+   * applied are coalesced so only the latest reaches the advertiser. The advertiser is
+   * stopped before the update starts; when the update fails to start, the broadcast in
+   * effect before is started again and the error says so with {@link #PREVIOUS_RESTORED}.
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  void updateBroadcast(Object arguments, @NonNull final MethodChannel.Result result) {
+    if (!(arguments instanceof Map)) {
+      result.error("Broadcast", "Invalid parameter", null);
+      return;
+    }
+    if (currentArguments == null || beaconTransmitter == null
+        || !(beaconTransmitter.isStarted() || updateInFlight)) {
+      result.error("Broadcast", "NOT_BROADCASTING", null);
+      return;
+    }
+
+    Map<Object, Object> merged = new HashMap<Object, Object>(pendingUpdate != null ? pendingUpdate : currentArguments);
+    merged.putAll((Map) arguments);
+
+    if (updateInFlight) {
+      dropPendingUpdate();
+      pendingUpdate = merged;
+      pendingResult = result;
+      return;
+    }
+
+    advertise(merged, result, currentArguments);
+  }
+
+  /**
+   * @param previous what was broadcasting before, started again when this map fails.
+   */
+  private void advertise(final Map<Object, Object> map, @NonNull final MethodChannel.Result result,
+                         final Map<Object, Object> previous) {
+    final BeaconParser beaconParser;
+    final Beacon beacon;
+    try {
+      beaconParser = FlutterBeaconParsers.parserForBroadcast(map.get("layout"));
+      beacon = FlutterBeaconUtils.beaconFromMap(map, beaconParser);
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Invalid beacon: " + e);
+      result.error("Broadcast", "Invalid parameter", e.getLocalizedMessage());
+      applyPendingUpdate();
+      return;
+    }
+
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      final BeaconTransmitter transmitter = transmitterFor(beaconParser);
+      stopTransmitter();
+      beaconTransmitter = transmitter;
+
       Object advertisingMode = map.get("advertisingMode");
       if (advertisingMode instanceof Integer) {
         beaconTransmitter.setAdvertiseMode((Integer) advertisingMode);
@@ -52,32 +165,113 @@ class FlutterBeaconBroadcast {
       if (advertisingTxPowerLevel instanceof Integer) {
         beaconTransmitter.setAdvertiseTxPowerLevel((Integer) advertisingTxPowerLevel);
       }
+
+      updateInFlight = true;
+      final int started = ++generation;
       beaconTransmitter.startAdvertising(beacon, new AdvertiseCallback() {
         @Override
         public void onStartSuccess(AdvertiseSettings settingsInEffect) {
+          if (started != generation) {
+            // Stopped or replaced while starting, when stopAdvertising could not stop it
+            // yet: take it off the air now, unless a newer start reuses the transmitter.
+            if (!isUsing(transmitter) && !scheduler.isUsing(transmitter)) {
+              transmitter.stopAdvertising();
+            }
+            result.success(false);
+            return;
+          }
           Log.d(TAG, "Start broadcasting = " + beacon);
+          metrics.onBroadcastStarted();
+          metrics.getEnergy().onAdvertisingStarted(FlutterBeaconBroadcast.this, settingsInEffect.getMode(),
+              settingsInEffect.getTxPowerLevel(), SystemClock.elapsedRealtime());
+          currentArguments = map;
           result.success(true);
+          applyPendingUpdate();
         }
 
         @Override
         public void onStartFailure(int errorCode) {
-          String error = "FEATURE_UNSUPPORTED";
-          if (errorCode == ADVERTISE_FAILED_DATA_TOO_LARGE) {
-            error = "DATA_TOO_LARGE";
-          } else if (errorCode == ADVERTISE_FAILED_TOO_MANY_ADVERTISERS) {
-            error = "TOO_MANY_ADVERTISERS";
-          } else if (errorCode == ADVERTISE_FAILED_ALREADY_STARTED) {
-            error = "ALREADY_STARTED";
-          } else if (errorCode == ADVERTISE_FAILED_INTERNAL_ERROR) {
-            error = "INTERNAL_ERROR";
-          }
+          String error = parseAdvertiseError(errorCode);
           Log.e(TAG, error);
-          result.error("Broadcast", error, null);
+          metrics.onBroadcastFailed();
+          if (started != generation) {
+            result.error("Broadcast", error, null);
+            return;
+          }
+          if (pendingUpdate != null) {
+            result.error("Broadcast", error, null);
+            applyPendingUpdate();
+          } else if (previous != null) {
+            // Stopped for this map, put back what was on air rather than go silent.
+            result.error("Broadcast", error, PREVIOUS_RESTORED);
+            currentArguments = null;
+            advertise(previous, RESTORE_RESULT, null);
+          } else {
+            result.error("Broadcast", error, null);
+            updateInFlight = false;
+          }
         }
       });
     } else {
       Log.e(TAG, "FEATURE_UNSUPPORTED");
+      metrics.onBroadcastFailed();
       result.error("Broadcast", "FEATURE_UNSUPPORTED", null);
     }
   }
+
+  private void applyPendingUpdate() {
+    updateInFlight = false;
+    Map<Object, Object> update = pendingUpdate;
+    MethodChannel.Result result = pendingResult;
+    pendingUpdate = null;
+    pendingResult = null;
+    if (update != null && result != null) {
+      advertise(update, result, currentArguments);
+    }
+  }
+
+  // Nobody waits for the previous broadcast to come back.
+  private static final MethodChannel.Result RESTORE_RESULT = new MethodChannel.Result() {
+    @Override
+    public void success(Object o) {
+    }
+
+    @Override
+    public void error(String code, String message, Object details) {
+      Log.e(TAG, "Previous broadcast not restored: " + message);
+    }
+
+    @Override
+    public void notImplemented() {
+    }
+  };
+
+  private void dropPendingUpdate() {
+    if (pendingResult != null) {
+      // Superseded before it reached the advertiser.
+      pendingResult.success(false);
+    }
+    pendingUpdate = null;
+    pendingResult = null;
+  }
+
+  private void stopTransmitter() {
+    if (beaconTransmitter != null) {
+      beaconTransmitter.stopAdvertising();
+    }
+    metrics.getEnergy().onAdvertisingStopped(this, SystemClock.elapsedRealtime());
+  }
+
+  static String parseAdvertiseError(int errorCode) {
+    if (errorCode == AdvertiseCallback.ADVERTISE_FAILED_DATA_TOO_LARGE) {
+      return "DATA_TOO_LARGE";
+    } else if (errorCode == AdvertiseCallback.ADVERTISE_FAILED_TOO_MANY_ADVERTISERS) {
+      return "TOO_MANY_ADVERTISERS";
+    } else if (errorCode == AdvertiseCallback.ADVERTISE_FAILED_ALREADY_STARTED) {
+      return "ALREADY_STARTED";
+    } else if (errorCode == AdvertiseCallback.ADVERTISE_FAILED_INTERNAL_ERROR) {
+      return "INTERNAL_ERROR";
+    }
+    return "FEATURE_UNSUPPORTED";
+  }
 }
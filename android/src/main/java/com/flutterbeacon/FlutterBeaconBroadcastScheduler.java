@@ -0,0 +1,244 @@
+package com.flutterbeacon;
+
+import android.bluetooth.le.AdvertiseCallback;
+import android.bluetooth.le.AdvertiseSettings;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.BeaconTransmitter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Advertises several beacons from one device, either by time-slicing the cached
+ * transmitters over the list (each beacon keeps the air for its own duration), or
+ * by giving every beacon its own advertising set when the chipset supports it.
+ */
+class FlutterBeaconBroadcastScheduler {
+  private static final String TAG = FlutterBeaconBroadcastScheduler.class.getSimpleName();
+  private static final long DEFAULT_DURATION_MILLIS = 1000;
+
+  private final FlutterBeaconBroadcast broadcast;
+  private final FlutterBeaconMetrics metrics;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  private final List<Slot> slots = new ArrayList<>();
+  private final List<BeaconTransmitter> transmitters = new ArrayList<>();
+  private BeaconTransmitter activeTransmitter;
+  private int current = -1;
+  private boolean running;
+  private boolean concurrent;
+
+  FlutterBeaconBroadcastScheduler(FlutterBeaconBroadcast broadcast, FlutterBeaconMetrics metrics) {
+    this.broadcast = broadcast;
+    this.metrics = metrics;
+  }
+
+  @SuppressWarnings("rawtypes")
+  void start(Object arguments, @NonNull MethodChannel.Result result) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      Log.e(TAG, "FEATURE_UNSUPPORTED");
+      result.error("Broadcast", "FEATURE_UNSUPPORTED", null);
+      return;
+    }
+    if (!(arguments instanceof Map) || !(((Map) arguments).get("beacons") instanceof List)) {
+      result.error("Broadcast", "Invalid parameter", null);
+      return;
+    }
+
+    Map map = (Map) arguments;
+    List list = (List) map.get("beacons");
+    if (list.isEmpty()) {
+      result.error("Broadcast", "Invalid parameter", null);
+      return;
+    }
+
+    stop();
+    slots.clear();
+    for (Object object : list) {
+      if (!(object instanceof Map)) {
+        slots.clear();
+        result.error("Broadcast", "Invalid parameter", null);
+        return;
+      }
+      try {
+        slots.add(new Slot((Map) object));
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Invalid beacon: " + e);
+        slots.clear();
+        result.error("Broadcast", "Invalid parameter", e.getLocalizedMessage());
+        return;
+      }
+    }
+
+    running = true;
+    concurrent = Boolean.TRUE.equals(map.get("concurrent"));
+    if (concurrent) {
+      for (Slot slot : slots) {
+        BeaconTransmitter transmitter = broadcast.newTransmitter(slot.beaconParser);
+        slot.applySettings(transmitter);
+        transmitters.add(transmitter);
+        slot.transmitter = transmitter;
+        transmitter.startAdvertising(slot.beacon, slot.callback);
+      }
+    } else {
+      advance();
+    }
+    result.success(true);
+  }
+
+  void stop() {
+    running = false;
+    handler.removeCallbacks(rotate);
+    for (BeaconTransmitter transmitter : transmitters) {
+      transmitter.stopAdvertising();
+    }
+    transmitters.clear();
+    if (activeTransmitter != null) {
+      activeTransmitter.stopAdvertising();
+      activeTransmitter = null;
+    }
+    long now = SystemClock.elapsedRealtime();
+    for (Slot slot : slots) {
+      metrics.getEnergy().onAdvertisingStopped(slot, now);
+    }
+    current = -1;
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  // Whether a slot is on air or starting with this transmitter.
+  boolean isUsing(BeaconTransmitter transmitter) {
+    return running && (transmitter == activeTransmitter || transmitters.contains(transmitter));
+  }
+
+  List<Map<String, Object>> stats() {
+    List<Map<String, Object>> list = new ArrayList<>();
+    for (Slot slot : slots) {
+      list.add(slot.toMap());
+    }
+    return list;
+  }
+
+  private final Runnable rotate = new Runnable() {
+    @Override
+    public void run() {
+      advance();
+    }
+  };
+
+  private void advance() {
+    if (!running || slots.isEmpty()) {
+      return;
+    }
+
+    if (current >= 0) {
+      // One slot advertises at a time; the next one is accounted from its start.
+      metrics.getEnergy().onAdvertisingStopped(slots.get(current), SystemClock.elapsedRealtime());
+    }
+    current = (current + 1) % slots.size();
+    Slot slot = slots.get(current);
+
+    // Slots of the same layout share the cached transmitter of that layout.
+    BeaconTransmitter transmitter = broadcast.transmitterFor(slot.beaconParser);
+    if (activeTransmitter != null) {
+      activeTransmitter.stopAdvertising();
+    }
+    activeTransmitter = transmitter;
+    slot.applySettings(transmitter);
+    slot.transmitter = transmitter;
+    transmitter.startAdvertising(slot.beacon, slot.callback);
+
+    if (slots.size() > 1) {
+      handler.postDelayed(rotate, slot.durationMillis);
+    }
+  }
+
+  private class Slot {
+    final String identity;
+    final BeaconParser beaconParser;
+    final Beacon beacon;
+    final long durationMillis;
+    final Integer advertisingMode;
+    final Integer advertisingTxPowerLevel;
+    final AtomicLong successes = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    volatile String lastError;
+    // Transmitter of the last start of this slot.
+    BeaconTransmitter transmitter;
+
+    @SuppressWarnings("rawtypes")
+    Slot(Map map) {
+      this.beaconParser = FlutterBeaconParsers.parserForBroadcast(map.get("layout"));
+      this.beacon = FlutterBeaconUtils.beaconFromMap(map, beaconParser);
+      this.identity = FlutterBeaconUtils.identityOf(beacon);
+      Object duration = map.get("durationMillis");
+      this.durationMillis = duration instanceof Number ? Math.max(100, ((Number) duration).longValue()) : DEFAULT_DURATION_MILLIS;
+      Object mode = map.get("advertisingMode");
+      this.advertisingMode = mode instanceof Integer ? (Integer) mode : null;
+      Object txPowerLevel = map.get("advertisingTxPowerLevel");
+      this.advertisingTxPowerLevel = txPowerLevel instanceof Integer ? (Integer) txPowerLevel : null;
+    }
+
+    void applySettings(BeaconTransmitter transmitter) {
+      if (advertisingMode != null) {
+        transmitter.setAdvertiseMode(advertisingMode);
+      }
+      if (advertisingTxPowerLevel != null) {
+        transmitter.setAdvertiseTxPowerLevel(advertisingTxPowerLevel);
+      }
+    }
+
+    final AdvertiseCallback callback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? new AdvertiseCallback() {
+      @Override
+      public void onStartSuccess(AdvertiseSettings settingsInEffect) {
+        // Every slot has its own advertising set when concurrent, otherwise only the
+        // current one is on air. A slot rotated out or stopped before its start came
+        // through was not stopped, since stopAdvertising does nothing until then.
+        if (!running || !concurrent && slots.indexOf(Slot.this) != current) {
+          if (transmitter != null && !isUsing(transmitter) && !broadcast.isUsing(transmitter)) {
+            transmitter.stopAdvertising();
+          }
+          return;
+        }
+        successes.incrementAndGet();
+        metrics.onBroadcastStarted();
+        metrics.getEnergy().onAdvertisingStarted(Slot.this, settingsInEffect.getMode(),
+            settingsInEffect.getTxPowerLevel(), SystemClock.elapsedRealtime());
+      }
+
+      @Override
+      public void onStartFailure(int errorCode) {
+        failures.incrementAndGet();
+        lastError = FlutterBeaconBroadcast.parseAdvertiseError(errorCode);
+        metrics.onBroadcastFailed();
+        Log.e(TAG, identity + ": " + lastError);
+      }
+    } : null;
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new HashMap<>();
+      map.put("identity", identity);
+      map.put("durationMillis", durationMillis);
+      map.put("successes", successes.get());
+      map.put("failures", failures.get());
+      map.put("lastError", lastError);
+      return map;
+    }
+  }
+}
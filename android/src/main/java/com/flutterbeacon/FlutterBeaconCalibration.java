@@ -0,0 +1,220 @@
+package com.flutterbeacon;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.distance.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per handset distance calibration. RSSI samples are collected while the device is
+ * held at known distances from a beacon, and a log-distance path loss model
+ *
+ * <pre>rssi - txPower = offset - 10 * n * log10(distance)</pre>
+ *
+ * is fitted to them. The coefficients are stored per device model and installed as
+ * the library's distance calculator, so {@code accuracy} comes out calibrated.
+ */
+class FlutterBeaconCalibration {
+  private static final String TAG = FlutterBeaconCalibration.class.getSimpleName();
+  private static final String PREFERENCES = "flutter_beacon_calibration";
+  private static final int MIN_SAMPLES = 10;
+  private static final int MAX_SAMPLES = 5000;
+
+  private final SharedPreferences preferences;
+  private final String model;
+
+  // [distance, rssi - txPower] pairs of the running calibration.
+  private final List<double[]> samples = new ArrayList<>();
+  private double distance = -1;
+  private String identity;
+
+  private DistanceCalculator defaultCalculator;
+  private PathLossModel fitted;
+
+  FlutterBeaconCalibration(Context context) {
+    this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    this.model = Build.MANUFACTURER + " " + Build.MODEL;
+    this.fitted = PathLossModel.decode(preferences.getString(model, null));
+  }
+
+  /**
+   * Collect samples at the given distance, from the beacon with the given identity
+   * or from every ranged beacon when it is null. Samples of earlier distances are kept.
+   */
+  synchronized void start(double distanceMeters, String identity) {
+    this.distance = distanceMeters;
+    this.identity = identity;
+  }
+
+  /**
+   * @return the number of samples collected so far.
+   */
+  synchronized int stop() {
+    distance = -1;
+    identity = null;
+    return samples.size();
+  }
+
+  synchronized boolean isCollecting() {
+    return distance > 0;
+  }
+
+  synchronized void collect(Collection<Beacon> beacons) {
+    if (distance <= 0) {
+      return;
+    }
+    for (Beacon beacon : beacons) {
+      if (samples.size() >= MAX_SAMPLES) {
+        return;
+      }
+      if (identity == null || identity.equalsIgnoreCase(FlutterBeaconUtils.identityOf(beacon))) {
+        samples.add(new double[]{distance, beacon.getRssi() - beacon.getTxPower()});
+      }
+    }
+  }
+
+  /**
+   * Fit the model to the collected samples, store it for this device model and use it
+   * from now on.
+   *
+   * @return the fitted coefficients, or null when the samples do not cover at least
+   * two distances.
+   */
+  synchronized Map<String, Object> fit() {
+    PathLossModel model = PathLossModel.fit(samples);
+    if (model == null) {
+      return null;
+    }
+
+    fitted = model;
+    samples.clear();
+    distance = -1;
+    preferences.edit().putString(this.model, model.encode()).apply();
+    apply();
+    return toMap();
+  }
+
+  synchronized void reset() {
+    samples.clear();
+    distance = -1;
+    fitted = null;
+    preferences.edit().remove(model).apply();
+    apply();
+  }
+
+  /**
+   * Install the fitted model, if any, as the distance calculator. Must be called again
+   * once the beacon service is connected, since the service installs its own on start.
+   */
+  synchronized void apply() {
+    DistanceCalculator current = Beacon.getDistanceCalculator();
+    if (!(current instanceof PathLossModel)) {
+      defaultCalculator = current;
+    }
+
+    if (fitted != null) {
+      Beacon.setDistanceCalculator(fitted);
+    } else if (current instanceof PathLossModel && defaultCalculator != null) {
+      Beacon.setDistanceCalculator(defaultCalculator);
+    }
+  }
+
+  synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("model", model);
+    map.put("samples", samples.size());
+    if (fitted != null) {
+      map.put("pathLossExponent", fitted.exponent);
+      map.put("referenceOffset", fitted.offset);
+      map.put("rSquared", fitted.rSquared);
+    }
+    return map;
+  }
+
+  static class PathLossModel implements DistanceCalculator {
+    final double exponent;
+    final double offset;
+    final double rSquared;
+
+    PathLossModel(double exponent, double offset, double rSquared) {
+      this.exponent = exponent;
+      this.offset = offset;
+      this.rSquared = rSquared;
+    }
+
+    @Override
+    public double calculateDistance(int txPower, double rssi) {
+      if (rssi == 0) {
+        return -1.0;
+      }
+      return Math.pow(10, (offset - (rssi - txPower)) / (10 * exponent));
+    }
+
+    /**
+     * Least squares line of (rssi - txPower) over log10(distance).
+     */
+    static PathLossModel fit(List<double[]> samples) {
+      if (samples.size() < MIN_SAMPLES) {
+        return null;
+      }
+
+      double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+      for (double[] sample : samples) {
+        double x = Math.log10(sample[0]);
+        sumX += x;
+        sumY += sample[1];
+        sumXX += x * x;
+        sumXY += x * sample[1];
+      }
+      int n = samples.size();
+      double denominator = n * sumXX - sumX * sumX;
+      if (Math.abs(denominator) < 1e-9) {
+        // All samples taken at the same distance.
+        return null;
+      }
+
+      double slope = (n * sumXY - sumX * sumY) / denominator;
+      double intercept = (sumY - slope * sumX) / n;
+      if (slope >= 0) {
+        Log.w(TAG, "Signal does not decrease with distance, ignoring samples");
+        return null;
+      }
+
+      double mean = sumY / n, total = 0, residual = 0;
+      for (double[] sample : samples) {
+        double predicted = intercept + slope * Math.log10(sample[0]);
+        total += (sample[1] - mean) * (sample[1] - mean);
+        residual += (sample[1] - predicted) * (sample[1] - predicted);
+      }
+      double rSquared = total > 0 ? 1 - residual / total : 1;
+
+      return new PathLossModel(-slope / 10, intercept, rSquared);
+    }
+
+    String encode() {
+      return exponent + "," + offset + "," + rSquared;
+    }
+
+    static PathLossModel decode(String value) {
+      if (value == null) {
+        return null;
+      }
+      String[] parts = value.split(",");
+      try {
+        return new PathLossModel(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Discarding stored calibration: " + e);
+        return null;
+      }
+    }
+  }
+}
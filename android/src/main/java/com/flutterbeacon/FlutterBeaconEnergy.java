@@ -0,0 +1,195 @@
+package com.flutterbeacon;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Energy accounting for scanning and broadcasting. Time is tracked per radio
+ * state, scan windows from the duty cycle in effect and advertising per advertiser,
+ * along with the wakeups scan results cause and the time spent serializing them.
+ *
+ * The estimate multiplies those by a simple current model. Its defaults are typical
+ * phone figures, not measurements of the device, so the absolute numbers are rough;
+ * they are meant for comparing scan configurations against each other, and every
+ * constant can be overridden with values measured on the target hardware.
+ *
+ * Serialization is measured in wall time, which includes time the thread was not
+ * scheduled, so its CPU share is an upper bound; it is reported as such.
+ */
+class FlutterBeaconEnergy {
+  // Share of time the radio listens in SCAN_MODE_LOW_POWER, 512 ms every 5120 ms.
+  static final double LOW_POWER_DUTY_CYCLE = 0.1;
+
+  static final double DEFAULT_SCAN_CURRENT_MA = 12;
+  static final double DEFAULT_CPU_CURRENT_MA = 60;
+  static final double DEFAULT_WAKEUP_MILLIS = 10;
+  // Charge of one advertising event on the three channels at high tx power.
+  static final double DEFAULT_ADVERTISING_EVENT_MA_MILLIS = 20;
+  static final double DEFAULT_VOLTAGE = 3.85;
+
+  // AdvertiseSettings modes and tx power levels, by value.
+  private static final long[] ADVERTISING_INTERVAL_MILLIS = {1000, 250, 100};
+  private static final double[] TX_POWER_FACTORS = {0.5, 0.65, 0.8, 1.0};
+
+  private long startedAt = -1;
+
+  private boolean scanning;
+  private double dutyCycle;
+  private long scanSegmentAt;
+  private double scanActiveMillis;
+  private double scanIdleMillis;
+
+  private long wakeups;
+  private long serializationWallNanos;
+
+  private final Map<Object, Advertiser> advertisers = new HashMap<>();
+  private long advertisingMillis;
+  private double advertisingEvents;
+
+  synchronized void reset(long now) {
+    startedAt = now;
+    scanSegmentAt = now;
+    scanActiveMillis = 0;
+    scanIdleMillis = 0;
+    wakeups = 0;
+    serializationWallNanos = 0;
+    advertisingMillis = 0;
+    advertisingEvents = 0;
+    for (Advertiser advertiser : advertisers.values()) {
+      advertiser.startedAt = now;
+    }
+  }
+
+  /**
+   * Called whenever scanning may have started, stopped or changed its duty cycle;
+   * between scans means the radio is idle.
+   */
+  synchronized void setScanning(boolean scanning, double dutyCycle, long now) {
+    start(now);
+    closeScanSegment(now);
+    this.scanning = scanning;
+    this.dutyCycle = scanning ? Math.max(0, Math.min(1, dutyCycle)) : 0;
+  }
+
+  /**
+   * One per wakeup counted by {@link FlutterBeaconMetrics}, after callbacks of the
+   * same cycle were merged, so ranging many regions is not charged once per region.
+   */
+  synchronized void onWakeup() {
+    wakeups++;
+  }
+
+  /**
+   * @param wallNanos elapsed time of one serialization, not thread CPU time.
+   */
+  synchronized void onSerialization(long wallNanos) {
+    serializationWallNanos += wallNanos;
+  }
+
+  /**
+   * @param key one per concurrent advertiser; starting a key again replaces its settings.
+   */
+  synchronized void onAdvertisingStarted(Object key, int mode, int txPowerLevel, long now) {
+    start(now);
+    onAdvertisingStopped(key, now);
+    advertisers.put(key, new Advertiser(mode, txPowerLevel, now));
+  }
+
+  synchronized void onAdvertisingStopped(Object key, long now) {
+    Advertiser advertiser = advertisers.remove(key);
+    if (advertiser != null) {
+      advertiser.accumulate(now);
+    }
+  }
+
+  /**
+   * Estimate since the last reset, open scan and advertising periods included.
+   *
+   * @param model optional overrides: scanCurrentMa, cpuCurrentMa, wakeupMillis,
+   *              advertisingEventMaMillis and voltage.
+   */
+  @SuppressWarnings("rawtypes")
+  synchronized Map<String, Object> estimate(Object model, long now) {
+    Map overrides = model instanceof Map ? (Map) model : Collections.emptyMap();
+    double scanCurrentMa = doubleOf(overrides.get("scanCurrentMa"), DEFAULT_SCAN_CURRENT_MA);
+    double cpuCurrentMa = doubleOf(overrides.get("cpuCurrentMa"), DEFAULT_CPU_CURRENT_MA);
+    double wakeupMillis = doubleOf(overrides.get("wakeupMillis"), DEFAULT_WAKEUP_MILLIS);
+    double eventMaMillis = doubleOf(overrides.get("advertisingEventMaMillis"), DEFAULT_ADVERTISING_EVENT_MA_MILLIS);
+    double voltage = doubleOf(overrides.get("voltage"), DEFAULT_VOLTAGE);
+
+    start(now);
+    closeScanSegment(now);
+    for (Advertiser advertiser : advertisers.values()) {
+      advertiser.accumulate(now);
+      advertiser.startedAt = now;
+    }
+
+    double serializationWallMillis = serializationWallNanos / 1e6;
+    double scanMa = scanActiveMillis * scanCurrentMa;
+    double cpuMa = (wakeups * wakeupMillis + serializationWallMillis) * cpuCurrentMa;
+    double advertisingMa = advertisingEvents * eventMaMillis;
+
+    // Charges above are in mA ms; per hour of the elapsed time, in mAh.
+    long elapsedMillis = now - startedAt;
+    double perHour = elapsedMillis > 0 ? 1.0 / elapsedMillis : 0;
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("elapsedMillis", elapsedMillis);
+    map.put("scanning", scanning);
+    map.put("scanDutyCycle", dutyCycle);
+    map.put("scanActiveMillis", Math.round(scanActiveMillis));
+    map.put("scanIdleMillis", Math.round(scanIdleMillis));
+    map.put("wakeups", wakeups);
+    map.put("serializationWallMillis", serializationWallMillis);
+    map.put("advertisers", advertisers.size());
+    map.put("advertisingMillis", advertisingMillis);
+    map.put("advertisingEvents", Math.round(advertisingEvents));
+    map.put("scanMahPerHour", scanMa * perHour);
+    map.put("cpuMahPerHour", cpuMa * perHour);
+    map.put("advertisingMahPerHour", advertisingMa * perHour);
+    double total = (scanMa + cpuMa + advertisingMa) * perHour;
+    map.put("totalMahPerHour", total);
+    map.put("totalMwhPerHour", total * voltage);
+    return map;
+  }
+
+  private void start(long now) {
+    if (startedAt < 0) {
+      reset(now);
+    }
+  }
+
+  private void closeScanSegment(long now) {
+    long elapsed = Math.max(0, now - scanSegmentAt);
+    if (scanning) {
+      scanActiveMillis += elapsed * dutyCycle;
+      scanIdleMillis += elapsed * (1 - dutyCycle);
+    } else {
+      scanIdleMillis += elapsed;
+    }
+    scanSegmentAt = now;
+  }
+
+  private static double doubleOf(Object value, double defaultValue) {
+    return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+  }
+
+  private class Advertiser {
+    final long intervalMillis;
+    final double txPowerFactor;
+    long startedAt;
+
+    Advertiser(int mode, int txPowerLevel, long startedAt) {
+      this.intervalMillis = ADVERTISING_INTERVAL_MILLIS[Math.max(0, Math.min(ADVERTISING_INTERVAL_MILLIS.length - 1, mode))];
+      this.txPowerFactor = TX_POWER_FACTORS[Math.max(0, Math.min(TX_POWER_FACTORS.length - 1, txPowerLevel))];
+      this.startedAt = startedAt;
+    }
+
+    void accumulate(long now) {
+      long elapsed = Math.max(0, now - startedAt);
+      advertisingMillis += elapsed;
+      advertisingEvents += (double) elapsed / intervalMillis * txPowerFactor;
+    }
+  }
+}
@@ -0,0 +1,594 @@
+package com.flutterbeacon;
+
+import android.util.Log;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Ships ranged sightings to a gateway process over a local TCP or Unix socket,
+ * without going through Dart.
+ *
+ * Sightings are accumulated into batches bounded by count and age. A batch is sent
+ * as one frame: a 4 byte big endian length, one flags byte (bit 0 set when the
+ * payload is gzipped), and the payload, one JSON object per sighting and line. The
+ * gateway acknowledges every frame with one {@link #ACK} byte.
+ *
+ * Batches are encoded and written only by the worker, never on the ranging callback.
+ * Batches that can not be sent, or that pile up while the worker is busy, are
+ * written to a spool directory and sent again, oldest first, once the gateway is
+ * reachable. When the spool is full, the oldest batches are dropped, and so are new
+ * ones when even the worker's queue is full. Delivery is at least once, and batches
+ * may arrive out of order after spooling, so the gateway should go by the timestamp
+ * of each sighting.
+ *
+ * Only one worker may use a spool directory at a time: an exporter started in place
+ * of another waits for the worker of that one to finish before touching the spool.
+ */
+class FlutterBeaconExporter {
+  private static final String TAG = FlutterBeaconExporter.class.getSimpleName();
+
+  static final int ACK = 0x06;
+  static final int FLAG_GZIP = 0x01;
+
+  static final int DEFAULT_MAX_BATCH_SIGHTINGS = 500;
+  static final long DEFAULT_MAX_BATCH_MILLIS = 5000;
+  static final long DEFAULT_MAX_SPOOL_BYTES = 4 * 1024 * 1024;
+  // Sealed batches kept in memory before the worker spools the oldest ones.
+  static final int MAX_PENDING_BATCHES = 4;
+  // Sealed batches waiting for the worker at all, past which new ones are dropped.
+  static final int MAX_QUEUED_BATCHES = 64;
+  private static final int TIMEOUT_MILLIS = 5000;
+  private static final long MIN_RETRY_MILLIS = 500;
+  private static final long MAX_RETRY_MILLIS = 60000;
+  private static final String SPOOL_SUFFIX = ".batch";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  interface Endpoint {
+    Connection connect() throws IOException;
+  }
+
+  interface Connection extends Closeable {
+    OutputStream getOutputStream() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+  }
+
+  private final File spoolDirectory;
+  private final Endpoint endpoint;
+  private final int maxBatchSightings;
+  private final long maxBatchMillis;
+  private final long maxSpoolBytes;
+  private final boolean compress;
+
+  private final LinkedBlockingQueue<List<Sighting>> pending = new LinkedBlockingQueue<>(MAX_QUEUED_BATCHES);
+  private List<Sighting> batch = new ArrayList<>();
+  private long batchStartedAt = -1;
+  private long nextSpoolSequence;
+  private Thread worker;
+  // Worker of the last stop, still sending what was left.
+  private volatile Thread stoppingWorker;
+  private volatile boolean running;
+
+  private Connection connection;
+  private long retryMillis = MIN_RETRY_MILLIS;
+  private long retryAt;
+
+  private final AtomicLong sightings = new AtomicLong();
+  private final AtomicLong batchesSent = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong bytesEncoded = new AtomicLong();
+  private final AtomicLong payloadBytes = new AtomicLong();
+  private final AtomicLong batchesSpooled = new AtomicLong();
+  private final AtomicLong batchesDropped = new AtomicLong();
+  private final AtomicLong sendFailures = new AtomicLong();
+  private volatile String lastError;
+
+  /**
+   * @param arguments {host, port} for TCP or {path} for a Unix socket, with optional
+   *                  maxBatchSightings, maxBatchMillis, maxSpoolBytes and compress.
+   * @param endpoint  where batches go, or null to connect as given in the arguments.
+   * @throws IllegalArgumentException when the arguments name no usable endpoint.
+   */
+  @SuppressWarnings("rawtypes")
+  FlutterBeaconExporter(File spoolDirectory, Object arguments, Endpoint endpoint) {
+    Map map = arguments instanceof Map ? (Map) arguments : Collections.emptyMap();
+    this.spoolDirectory = spoolDirectory;
+    this.endpoint = endpoint != null ? endpoint : endpointFor(map);
+    this.maxBatchSightings = Math.max(1, intOf(map.get("maxBatchSightings"), DEFAULT_MAX_BATCH_SIGHTINGS));
+    this.maxBatchMillis = Math.max(100, longOf(map.get("maxBatchMillis"), DEFAULT_MAX_BATCH_MILLIS));
+    this.maxSpoolBytes = longOf(map.get("maxSpoolBytes"), DEFAULT_MAX_SPOOL_BYTES);
+    this.compress = !Boolean.FALSE.equals(map.get("compress"));
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static Endpoint endpointFor(Map map) {
+    Object path = map.get("path");
+    if (path instanceof String) {
+      return new FlutterBeaconLocalSocketEndpoint((String) path, TIMEOUT_MILLIS);
+    }
+    Object host = map.get("host");
+    Object port = map.get("port");
+    if (!(port instanceof Number)) {
+      throw new IllegalArgumentException("no path or port to export to");
+    }
+    return new TcpEndpoint(host instanceof String ? (String) host : "127.0.0.1", ((Number) port).intValue());
+  }
+
+  synchronized void start() {
+    start(null);
+  }
+
+  /**
+   * @param previous exporter on the same spool directory, stopped before this one
+   *                 starts; its worker is left to finish before this one spools.
+   */
+  synchronized void start(final FlutterBeaconExporter previous) {
+    if (running) {
+      return;
+    }
+    running = true;
+    worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        if (previous != null) {
+          previous.awaitStopped();
+        }
+        nextSpoolSequence = lastSpoolSequence() + 1;
+        work();
+      }
+    }, "flutter_beacon_export");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Seal the current batch and let the worker send it, waiting up to
+   * {@code timeoutMillis} when positive. Whatever is left stays in the spool for
+   * the next start.
+   */
+  void stop(long timeoutMillis) {
+    Thread thread;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      seal();
+      running = false;
+      thread = worker;
+      worker = null;
+      stoppingWorker = thread;
+    }
+    thread.interrupt();
+    if (timeoutMillis <= 0) {
+      return;
+    }
+    try {
+      thread.join(timeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  // Block until the worker of the last stop is done with the spool.
+  private void awaitStopped() {
+    Thread thread = stoppingWorker;
+    boolean interrupted = false;
+    while (thread != null && thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      // Let the work loop see the stop of this exporter.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Called for every ranging cycle; only copies what is exported, the encoding
+   * happens on the worker.
+   */
+  void onRangingCycle(Collection<Beacon> beacons, Region region, long timestamp) {
+    if (!running || beacons.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      if (batchStartedAt < 0) {
+        batchStartedAt = timestamp;
+      }
+      for (Beacon beacon : beacons) {
+        batch.add(new Sighting(timestamp, region.getUniqueId(), FlutterBeaconUtils.identityOf(beacon),
+            beacon.getBluetoothAddress(), beacon.getRssi(), beacon.getTxPower()));
+      }
+      sightings.addAndGet(beacons.size());
+      if (batch.size() >= maxBatchSightings || timestamp - batchStartedAt >= maxBatchMillis) {
+        seal();
+      }
+    }
+  }
+
+  // Hand the current batch to the worker. Only when the worker is so far behind that
+  // its queue is full, the batch is dropped: encoding and spooling stay off the caller.
+  private synchronized void seal() {
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<Sighting> sealed = batch;
+    batch = new ArrayList<>();
+    batchStartedAt = -1;
+
+    if (!pending.offer(sealed)) {
+      batchesDropped.incrementAndGet();
+    }
+  }
+
+  private void work() {
+    while (running || !pending.isEmpty()) {
+      try {
+        List<Sighting> sealed = pending.poll(Math.min(maxBatchMillis, retryDelay()), TimeUnit.MILLISECONDS);
+        // Sending lags behind: spool the oldest batches so memory stays bounded.
+        while (sealed != null && pending.size() >= MAX_PENDING_BATCHES) {
+          spool(encode(sealed));
+          sealed = pending.poll();
+        }
+        if (sealed != null) {
+          sendOrSpool(encode(sealed));
+        }
+        drainSpool();
+        sealIfOld();
+      } catch (InterruptedException e) {
+        if (running) {
+          continue;
+        }
+        // Stopping: one last try for what is left in memory.
+        List<Sighting> sealed;
+        while ((sealed = pending.poll()) != null) {
+          sendOrSpool(encode(sealed));
+        }
+        drainSpool();
+      }
+    }
+    disconnect();
+  }
+
+  private void sendOrSpool(byte[] frame) {
+    // Keep the order: anything spooled before goes first.
+    if (hasSpool() || !send(frame)) {
+      spool(frame);
+    }
+  }
+
+  private synchronized void sealIfOld() {
+    if (batchStartedAt >= 0 && System.currentTimeMillis() - batchStartedAt >= maxBatchMillis) {
+      seal();
+    }
+  }
+
+  private long retryDelay() {
+    long wait = retryAt - System.currentTimeMillis();
+    return Math.max(10, wait > 0 ? wait : maxBatchMillis);
+  }
+
+  private void drainSpool() {
+    if (System.currentTimeMillis() < retryAt) {
+      return;
+    }
+    for (File file : spoolFiles()) {
+      byte[] frame = read(file);
+      if (frame != null && !send(frame)) {
+        return;
+      }
+      if (!file.delete()) {
+        Log.w(TAG, "Can not delete " + file);
+      }
+    }
+  }
+
+  /**
+   * @return true once the gateway acknowledged the frame.
+   */
+  private boolean send(byte[] frame) {
+    if (System.currentTimeMillis() < retryAt) {
+      return false;
+    }
+    try {
+      if (connection == null) {
+        connection = endpoint.connect();
+      }
+      OutputStream out = connection.getOutputStream();
+      out.write(frame);
+      out.flush();
+      if (connection.getInputStream().read() != ACK) {
+        throw new IOException("frame not acknowledged");
+      }
+      batchesSent.incrementAndGet();
+      bytesSent.addAndGet(frame.length);
+      retryMillis = MIN_RETRY_MILLIS;
+      retryAt = 0;
+      return true;
+    } catch (IOException e) {
+      sendFailures.incrementAndGet();
+      lastError = e.toString();
+      disconnect();
+      retryAt = System.currentTimeMillis() + retryMillis;
+      retryMillis = Math.min(MAX_RETRY_MILLIS, retryMillis * 2);
+      return false;
+    }
+  }
+
+  private void disconnect() {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (IOException ignored) {
+      }
+      connection = null;
+    }
+  }
+
+  // Worker only, and not under the lock the ranging callback takes.
+  private void spool(byte[] frame) {
+    if (spoolDirectory == null || !spoolDirectory.isDirectory() && !spoolDirectory.mkdirs()) {
+      batchesDropped.incrementAndGet();
+      return;
+    }
+
+    File file = new File(spoolDirectory, String.format(Locale.US, "%016d%s", nextSpoolSequence++, SPOOL_SUFFIX));
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(frame);
+      } finally {
+        out.close();
+      }
+      batchesSpooled.incrementAndGet();
+    } catch (IOException e) {
+      Log.e(TAG, "Can not spool batch: " + e);
+      batchesDropped.incrementAndGet();
+      return;
+    }
+
+    // Oldest batches go first when the spool is over its budget.
+    List<File> files = spoolFiles();
+    long total = 0;
+    for (File spooled : files) {
+      total += spooled.length();
+    }
+    for (int i = 0; i < files.size() - 1 && total > maxSpoolBytes; i++) {
+      total -= files.get(i).length();
+      if (files.get(i).delete()) {
+        batchesDropped.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean hasSpool() {
+    return !spoolFiles().isEmpty();
+  }
+
+  private List<File> spoolFiles() {
+    File[] files = spoolDirectory == null ? null : spoolDirectory.listFiles();
+    if (files == null) {
+      return Collections.emptyList();
+    }
+    List<File> list = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().endsWith(SPOOL_SUFFIX)) {
+        list.add(file);
+      }
+    }
+    // Zero padded sequence numbers sort by name.
+    Collections.sort(list);
+    return list;
+  }
+
+  private long lastSpoolSequence() {
+    List<File> files = spoolFiles();
+    if (files.isEmpty()) {
+      return 0;
+    }
+    String name = files.get(files.size() - 1).getName();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SPOOL_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return files.size();
+    }
+  }
+
+  private static byte[] read(File file) {
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Can not read spooled batch: " + e);
+      return null;
+    }
+  }
+
+  private byte[] encode(List<Sighting> sightings) {
+    StringBuilder builder = new StringBuilder(sightings.size() * 120);
+    for (Sighting sighting : sightings) {
+      sighting.appendJson(builder);
+      builder.append('\n');
+    }
+    byte[] payload = builder.toString().getBytes(UTF_8);
+    payloadBytes.addAndGet(payload.length);
+
+    try {
+      ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length / (compress ? 4 : 1) + 5);
+      DataOutputStream header = new DataOutputStream(frame);
+      header.writeInt(0);
+      header.writeByte(compress ? FLAG_GZIP : 0);
+      if (compress) {
+        GZIPOutputStream gzip = new GZIPOutputStream(frame);
+        gzip.write(payload);
+        gzip.finish();
+      } else {
+        frame.write(payload);
+      }
+      byte[] bytes = frame.toByteArray();
+      int length = bytes.length - 4;
+      bytes[0] = (byte) (length >>> 24);
+      bytes[1] = (byte) (length >>> 16);
+      bytes[2] = (byte) (length >>> 8);
+      bytes[3] = (byte) length;
+      bytesEncoded.addAndGet(bytes.length);
+      return bytes;
+    } catch (IOException e) {
+      // Only in memory streams are involved.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("running", running);
+    map.put("sightings", sightings.get());
+    map.put("batchesSent", batchesSent.get());
+    map.put("bytesSent", bytesSent.get());
+    long encoded = bytesEncoded.get();
+    map.put("compressionRatio", encoded > 0 ? (double) payloadBytes.get() / encoded : 0.0);
+    map.put("batchesSpooled", batchesSpooled.get());
+    map.put("batchesInSpool", spoolFiles().size());
+    map.put("batchesDropped", batchesDropped.get());
+    map.put("sendFailures", sendFailures.get());
+    map.put("lastError", lastError);
+    return map;
+  }
+
+  static class Sighting {
+    final long timestamp;
+    final String region;
+    final String identity;
+    final String address;
+    final int rssi;
+    final int txPower;
+
+    Sighting(long timestamp, String region, String identity, String address, int rssi, int txPower) {
+      this.timestamp = timestamp;
+      this.region = region;
+      this.identity = identity;
+      this.address = address;
+      this.rssi = rssi;
+      this.txPower = txPower;
+    }
+
+    void appendJson(StringBuilder builder) {
+      builder.append("{\"t\":").append(timestamp);
+      builder.append(",\"region\":");
+      appendString(builder, region);
+      builder.append(",\"id\":");
+      appendString(builder, identity);
+      if (address != null) {
+        builder.append(",\"mac\":");
+        appendString(builder, address);
+      }
+      builder.append(",\"rssi\":").append(rssi);
+      builder.append(",\"tx\":").append(txPower);
+      builder.append('}');
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+      builder.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '"' || c == '\\') {
+          builder.append('\\').append(c);
+        } else if (c < 0x20) {
+          builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+        } else {
+          builder.append(c);
+        }
+      }
+      builder.append('"');
+    }
+  }
+
+  static class TcpEndpoint implements Endpoint {
+    private final String host;
+    private final int port;
+
+    TcpEndpoint(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    @Override
+    public Connection connect() throws IOException {
+      final Socket socket = new Socket();
+      try {
+        socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+      } catch (IOException e) {
+        socket.close();
+        throw e;
+      }
+      return new Connection() {
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+          return socket.getOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+          return socket.getInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+          socket.close();
+        }
+      };
+    }
+  }
+
+  private static int intOf(Object value, int defaultValue) {
+    return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+  }
+
+  private static long longOf(Object value, long defaultValue) {
+    return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+  }
+}
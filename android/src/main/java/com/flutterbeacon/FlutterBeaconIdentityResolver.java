@@ -0,0 +1,146 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups sightings of the same physical tag into one logical beacon, for tags that
+ * rotate their MAC address or identifiers. Two sightings belong to the same device
+ * when they share any of the configured keys within the time window.
+ *
+ * Keys are kept in a bounded LRU table, so memory stays flat no matter how many
+ * addresses or identifiers go by.
+ */
+class FlutterBeaconIdentityResolver {
+  static final String KEY_MAC = "mac";
+  static final String KEY_IDENTIFIERS = "identifiers";
+  static final String KEY_EDDYSTONE_INSTANCE = "eddystoneInstance";
+
+  private static final long DEFAULT_WINDOW_MILLIS = 10000;
+  private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+  private List<String> keys = new ArrayList<>();
+  private long windowMillis = DEFAULT_WINDOW_MILLIS;
+  private int maxEntries = DEFAULT_MAX_ENTRIES;
+  private Map<String, Sighting> table = newTable(DEFAULT_MAX_ENTRIES);
+
+  /**
+   * @param arguments {keys: ["mac", "identifiers", "eddystoneInstance"], windowMillis, maxEntries},
+   *                  or null to turn resolution off.
+   * @return false when the arguments are not valid.
+   */
+  @SuppressWarnings("rawtypes")
+  synchronized boolean configure(Object arguments) {
+    if (arguments == null) {
+      keys = new ArrayList<>();
+      table.clear();
+      return true;
+    }
+    if (!(arguments instanceof Map) || !(((Map) arguments).get("keys") instanceof List)) {
+      return false;
+    }
+
+    Map map = (Map) arguments;
+    List<String> configured = new ArrayList<>();
+    for (Object key : (List) map.get("keys")) {
+      if (!KEY_MAC.equals(key) && !KEY_IDENTIFIERS.equals(key) && !KEY_EDDYSTONE_INSTANCE.equals(key)) {
+        return false;
+      }
+      configured.add((String) key);
+    }
+
+    Object window = map.get("windowMillis");
+    Object entries = map.get("maxEntries");
+    keys = configured;
+    windowMillis = window instanceof Number ? Math.max(0, ((Number) window).longValue()) : DEFAULT_WINDOW_MILLIS;
+    maxEntries = entries instanceof Number ? Math.max(1, ((Number) entries).intValue()) : DEFAULT_MAX_ENTRIES;
+    table = newTable(maxEntries);
+    return true;
+  }
+
+  synchronized boolean isEnabled() {
+    return !keys.isEmpty();
+  }
+
+  /**
+   * @param now timestamp of the cycle, so the window of a replayed batch is measured
+   *            from when its beacons were seen, not when it is delivered.
+   * @return one beacon per logical device seen in this cycle, the strongest sighting
+   * of each, keyed by logical id in the order the devices were first seen.
+   */
+  synchronized Map<String, Beacon> resolve(Collection<Beacon> beacons, long now) {
+    Map<String, Beacon> stitched = new LinkedHashMap<>();
+    for (Beacon beacon : beacons) {
+      List<String> beaconKeys = keysOf(beacon);
+      if (beaconKeys.isEmpty()) {
+        // None of the configured keys apply to this kind of beacon, report it as is.
+        beaconKeys.add(KEY_IDENTIFIERS + ":" + FlutterBeaconUtils.identityOf(beacon));
+      }
+
+      String logicalId = null;
+      for (String key : beaconKeys) {
+        Sighting sighting = table.get(key);
+        if (sighting != null && now - sighting.lastSeen <= windowMillis) {
+          logicalId = sighting.logicalId;
+          break;
+        }
+      }
+      if (logicalId == null) {
+        logicalId = beaconKeys.get(0);
+      }
+
+      for (String key : beaconKeys) {
+        table.put(key, new Sighting(logicalId, now));
+      }
+
+      Beacon strongest = stitched.get(logicalId);
+      if (strongest == null || beacon.getRssi() > strongest.getRssi()) {
+        stitched.put(logicalId, beacon);
+      }
+    }
+    return stitched;
+  }
+
+  synchronized void clear() {
+    table.clear();
+  }
+
+  private List<String> keysOf(Beacon beacon) {
+    boolean eddystone = beacon.getServiceUuid() == 0xfeaa;
+    List<String> list = new ArrayList<>();
+    for (String key : keys) {
+      if (KEY_MAC.equals(key) && beacon.getBluetoothAddress() != null) {
+        list.add(KEY_MAC + ":" + beacon.getBluetoothAddress());
+      } else if (KEY_IDENTIFIERS.equals(key) && !beacon.getIdentifiers().isEmpty()) {
+        list.add(KEY_IDENTIFIERS + ":" + FlutterBeaconUtils.identityOf(beacon));
+      } else if (KEY_EDDYSTONE_INSTANCE.equals(key) && eddystone && beacon.getIdentifiers().size() > 1) {
+        list.add(KEY_EDDYSTONE_INSTANCE + ":" + beacon.getId2());
+      }
+    }
+    return list;
+  }
+
+  private static Map<String, Sighting> newTable(final int maxEntries) {
+    return new LinkedHashMap<String, Sighting>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Sighting> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  private static class Sighting {
+    final String logicalId;
+    final long lastSeen;
+
+    Sighting(String logicalId, long lastSeen) {
+      this.logicalId = logicalId;
+      this.lastSeen = lastSeen;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.flutterbeacon;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link FlutterBeaconBatchScanner.LeScanner} on top of the platform BLE scanner, with
+ * the report delay applied when the controller supports offloaded batching. Otherwise
+ * results are held here and handed over once per report delay, which saves no radio
+ * wakeups but still replays them in cycles rather than one event per advertisement.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class FlutterBeaconLeScanner implements FlutterBeaconBatchScanner.LeScanner {
+  private static final String TAG = FlutterBeaconLeScanner.class.getSimpleName();
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Results waiting for the report delay when the controller can not batch.
+  private final List<FlutterBeaconBatchScanner.Sighting> pending = new ArrayList<>();
+  private ScanCallback scanCallback;
+  private Runnable flush;
+
+  @SuppressLint("MissingPermission")
+  @Override
+  public boolean start(List<FlutterBeaconBatchScanner.Filter> filters, long reportDelayMillis,
+                       final FlutterBeaconBatchScanner.Callback callback) {
+    BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+    BluetoothLeScanner scanner = adapter != null ? adapter.getBluetoothLeScanner() : null;
+    if (scanner == null) {
+      return false;
+    }
+
+    ScanSettings.Builder settings = new ScanSettings.Builder()
+        .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER);
+    final long softwareDelayMillis;
+    if (adapter.isOffloadedScanBatchingSupported()) {
+      settings.setReportDelay(reportDelayMillis);
+      softwareDelayMillis = 0;
+    } else {
+      Log.w(TAG, "Scan batching not supported by the controller, results are batched in software");
+      softwareDelayMillis = reportDelayMillis;
+    }
+
+    flush = new Runnable() {
+      @Override
+      public void run() {
+        List<FlutterBeaconBatchScanner.Sighting> batch;
+        synchronized (pending) {
+          batch = new ArrayList<>(pending);
+          pending.clear();
+        }
+        if (!batch.isEmpty()) {
+          callback.onBatch(batch);
+        }
+      }
+    };
+    scanCallback = new ScanCallback() {
+      @Override
+      public void onScanResult(int callbackType, ScanResult result) {
+        synchronized (pending) {
+          if (pending.isEmpty()) {
+            handler.postDelayed(flush, softwareDelayMillis);
+          }
+          pending.add(toSighting(result));
+        }
+      }
+
+      @Override
+      public void onBatchScanResults(List<ScanResult> results) {
+        List<FlutterBeaconBatchScanner.Sighting> sightings = new ArrayList<>(results.size());
+        for (ScanResult result : results) {
+          sightings.add(toSighting(result));
+        }
+        callback.onBatch(sightings);
+      }
+
+      @Override
+      public void onScanFailed(int errorCode) {
+        Log.e(TAG, "Scan failed: " + errorCode);
+        callback.onFailure(errorCode);
+      }
+    };
+    scanner.startScan(toScanFilters(filters), settings.build(), scanCallback);
+    return true;
+  }
+
+  @SuppressLint("MissingPermission")
+  @Override
+  public void stop() {
+    BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+    BluetoothLeScanner scanner = adapter != null ? adapter.getBluetoothLeScanner() : null;
+    if (scanner != null && scanCallback != null) {
+      scanner.stopScan(scanCallback);
+    }
+    scanCallback = null;
+    if (flush != null) {
+      handler.removeCallbacks(flush);
+      flush = null;
+    }
+    synchronized (pending) {
+      pending.clear();
+    }
+  }
+
+  private static FlutterBeaconBatchScanner.Sighting toSighting(ScanResult result) {
+    ScanRecord record = result.getScanRecord();
+    // The timestamp is in elapsed realtime, and the result may have waited in the
+    // controller queue for the whole report delay.
+    long age = (SystemClock.elapsedRealtimeNanos() - result.getTimestampNanos()) / 1000000;
+    return new FlutterBeaconBatchScanner.Sighting(
+        record != null ? record.getBytes() : new byte[0],
+        result.getRssi(),
+        result.getDevice() != null ? result.getDevice().getAddress() : null,
+        System.currentTimeMillis() - age);
+  }
+
+  private static List<ScanFilter> toScanFilters(List<FlutterBeaconBatchScanner.Filter> filters) {
+    List<ScanFilter> list = new ArrayList<>();
+    for (FlutterBeaconBatchScanner.Filter filter : filters) {
+      ScanFilter.Builder builder = new ScanFilter.Builder();
+      if (filter.serviceUuid >= 0) {
+        builder.setServiceUuid(ParcelUuid.fromString(
+            String.format(Locale.US, "0000%04x-0000-1000-8000-00805f9b34fb", filter.serviceUuid)));
+      } else {
+        builder.setManufacturerData(filter.manufacturerId, filter.data, filter.mask);
+      }
+      list.add(builder.build());
+    }
+    return list;
+  }
+}
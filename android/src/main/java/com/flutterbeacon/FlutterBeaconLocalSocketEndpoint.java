@@ -0,0 +1,52 @@
+package com.flutterbeacon;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link FlutterBeaconExporter.Endpoint} on a Unix domain socket. Paths starting
+ * with {@code @} are in the abstract namespace, others on the file system.
+ */
+class FlutterBeaconLocalSocketEndpoint implements FlutterBeaconExporter.Endpoint {
+  private final String path;
+  private final int timeoutMillis;
+
+  FlutterBeaconLocalSocketEndpoint(String path, int timeoutMillis) {
+    this.path = path;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  @Override
+  public FlutterBeaconExporter.Connection connect() throws IOException {
+    final LocalSocket socket = new LocalSocket();
+    try {
+      socket.connect(path.startsWith("@")
+          ? new LocalSocketAddress(path.substring(1), LocalSocketAddress.Namespace.ABSTRACT)
+          : new LocalSocketAddress(path, LocalSocketAddress.Namespace.FILESYSTEM));
+      socket.setSoTimeout(timeoutMillis);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+    return new FlutterBeaconExporter.Connection() {
+      @Override
+      public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+      }
+
+      @Override
+      public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+      }
+
+      @Override
+      public void close() throws IOException {
+        socket.close();
+      }
+    };
+  }
+}
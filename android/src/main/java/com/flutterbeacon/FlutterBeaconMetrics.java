@@ -0,0 +1,212 @@
+package com.flutterbeacon;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+class FlutterBeaconMetrics {
+  private final AtomicLong rangingCycles = new AtomicLong();
+  private final AtomicLong beaconsRanged = new AtomicLong();
+  private final AtomicLong lastCycleBeacons = new AtomicLong();
+  private final AtomicLong firstCycleAt = new AtomicLong();
+  private final AtomicLong lastCycleAt = new AtomicLong();
+  private final AtomicLong monitoringEvents = new AtomicLong();
+  private final AtomicLong serializationNanos = new AtomicLong();
+  private final AtomicLong payloadBytes = new AtomicLong();
+  private final AtomicLong eventsDropped = new AtomicLong();
+  private final AtomicLong rangingRegions = new AtomicLong();
+  private final AtomicLong monitoringRegions = new AtomicLong();
+  private final AtomicLong bindStartedAt = new AtomicLong();
+  private final AtomicLong bindLatencyMillis = new AtomicLong(-1);
+  private final AtomicLong unbindLatencyMillis = new AtomicLong(-1);
+  private final AtomicLong broadcastStartSuccesses = new AtomicLong();
+  private final AtomicLong broadcastStartFailures = new AtomicLong();
+  private final AtomicLong startedAt = new AtomicLong();
+  private final AtomicLong timeToFirstBeaconMillis = new AtomicLong(-1);
+  private final AtomicLong scanPauses = new AtomicLong();
+  private final AtomicLong scanPausedMillis = new AtomicLong();
+  private final AtomicLong lastScanPausedMillis = new AtomicLong(-1);
+  private final AtomicLong scanPausedAt = new AtomicLong();
+  private final AtomicLong wakeups = new AtomicLong();
+  private final AtomicLong firstWakeupAt = new AtomicLong();
+  private final AtomicLong lastWakeupAt = new AtomicLong();
+  private final FlutterBeaconEnergy energy = new FlutterBeaconEnergy();
+
+  // Callbacks closer than this, such as one per ranged region, are the same wakeup.
+  private static final long WAKEUP_WINDOW_MILLIS = 100;
+
+  void onStartup() {
+    startedAt.compareAndSet(0, SystemClock.elapsedRealtime());
+  }
+
+  void onRangingCycle(int beacons, long serializationNanos, long payloadBytes) {
+    long now = SystemClock.elapsedRealtime();
+    firstCycleAt.compareAndSet(0, now);
+    lastCycleAt.set(now);
+    rangingCycles.incrementAndGet();
+    beaconsRanged.addAndGet(beacons);
+    lastCycleBeacons.set(beacons);
+    long started = startedAt.get();
+    if (beacons > 0 && started > 0) {
+      timeToFirstBeaconMillis.compareAndSet(-1, now - started);
+    }
+    this.serializationNanos.addAndGet(serializationNanos);
+    this.payloadBytes.addAndGet(payloadBytes);
+    energy.onSerialization(serializationNanos);
+  }
+
+  void onMonitoringEvent(long serializationNanos, long payloadBytes) {
+    monitoringEvents.incrementAndGet();
+    this.serializationNanos.addAndGet(serializationNanos);
+    this.payloadBytes.addAndGet(payloadBytes);
+    energy.onSerialization(serializationNanos);
+  }
+
+  void onEventDropped() {
+    eventsDropped.incrementAndGet();
+  }
+
+  void setRangingRegions(int count) {
+    rangingRegions.set(count);
+  }
+
+  void setMonitoringRegions(int count) {
+    monitoringRegions.set(count);
+  }
+
+  void onBindStarted() {
+    bindStartedAt.set(SystemClock.elapsedRealtime());
+  }
+
+  void onBindCompleted() {
+    long startedAt = bindStartedAt.getAndSet(0);
+    if (startedAt > 0) {
+      bindLatencyMillis.set(SystemClock.elapsedRealtime() - startedAt);
+    }
+  }
+
+  void onUnbind(long latencyMillis) {
+    unbindLatencyMillis.set(latencyMillis);
+  }
+
+  void onScanPaused() {
+    scanPauses.incrementAndGet();
+    scanPausedAt.set(SystemClock.elapsedRealtime());
+  }
+
+  void onScanResumed(long pausedMillis) {
+    scanPausedAt.set(0);
+    scanPausedMillis.addAndGet(pausedMillis);
+    lastScanPausedMillis.set(pausedMillis);
+  }
+
+  /**
+   * Called when scan results reach the plugin: on every ranging and monitoring
+   * callback, or once per batch in batched scanning mode. Only those that do not
+   * follow another within WAKEUP_WINDOW_MILLIS count, and reach the energy model.
+   */
+  void onWakeup() {
+    long now = SystemClock.elapsedRealtime();
+    long last = lastWakeupAt.getAndSet(now);
+    if (last > 0 && now - last < WAKEUP_WINDOW_MILLIS) {
+      return;
+    }
+    firstWakeupAt.compareAndSet(0, now);
+    wakeups.incrementAndGet();
+    energy.onWakeup();
+  }
+
+  void onBroadcastStarted() {
+    broadcastStartSuccesses.incrementAndGet();
+  }
+
+  void onBroadcastFailed() {
+    broadcastStartFailures.incrementAndGet();
+  }
+
+  FlutterBeaconEnergy getEnergy() {
+    return energy;
+  }
+
+  Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    long cycles = rangingCycles.get();
+    long first = firstCycleAt.get();
+    long last = lastCycleAt.get();
+    double cyclesPerSecond = 0;
+    if (cycles > 1 && last > first) {
+      cyclesPerSecond = (cycles - 1) * 1000.0 / (last - first);
+    }
+
+    map.put("rangingCycles", cycles);
+    map.put("beaconsRanged", beaconsRanged.get());
+    map.put("beaconsPerCycle", lastCycleBeacons.get());
+    map.put("cyclesPerSecond", cyclesPerSecond);
+    map.put("monitoringEvents", monitoringEvents.get());
+    map.put("serializationMicros", serializationNanos.get() / 1000);
+    map.put("payloadBytes", payloadBytes.get());
+    map.put("eventsDropped", eventsDropped.get());
+    map.put("rangingRegions", rangingRegions.get());
+    map.put("monitoringRegions", monitoringRegions.get());
+    map.put("bindLatencyMillis", bindLatencyMillis.get());
+    map.put("timeToFirstBeaconMillis", timeToFirstBeaconMillis.get());
+    map.put("unbindLatencyMillis", unbindLatencyMillis.get());
+    map.put("scanPauses", scanPauses.get());
+    map.put("scanPausedMillis", scanPausedMillis.get());
+    map.put("lastScanPausedMillis", lastScanPausedMillis.get());
+    map.put("scanPaused", scanPausedAt.get() > 0);
+    long wakeupCount = wakeups.get();
+    long firstWakeup = firstWakeupAt.get();
+    long lastWakeup = lastWakeupAt.get();
+    double wakeupsPerHour = 0;
+    if (wakeupCount > 1 && lastWakeup > firstWakeup) {
+      wakeupsPerHour = (wakeupCount - 1) * 3600000.0 / (lastWakeup - firstWakeup);
+    }
+    map.put("wakeups", wakeupCount);
+    map.put("wakeupsPerHour", wakeupsPerHour);
+    map.put("broadcastStartSuccesses", broadcastStartSuccesses.get());
+    map.put("broadcastStartFailures", broadcastStartFailures.get());
+
+    return map;
+  }
+
+  /**
+   * Approximate size of a value once it goes through the standard message codec,
+   * without actually encoding it.
+   */
+  @SuppressWarnings("rawtypes")
+  static long estimatePayloadBytes(Object value) {
+    if (value == null || value instanceof Boolean) {
+      return 1;
+    }
+    if (value instanceof Integer) {
+      return 5;
+    }
+    if (value instanceof Number) {
+      return 9;
+    }
+    if (value instanceof String) {
+      return 2 + ((String) value).length();
+    }
+    if (value instanceof Map) {
+      long size = 2;
+      for (Object entry : ((Map) value).entrySet()) {
+        Map.Entry e = (Map.Entry) entry;
+        size += estimatePayloadBytes(e.getKey()) + estimatePayloadBytes(e.getValue());
+      }
+      return size;
+    }
+    if (value instanceof List) {
+      long size = 2;
+      for (Object item : (List) value) {
+        size += estimatePayloadBytes(item);
+      }
+      return size;
+    }
+
+    return 8;
+  }
+}
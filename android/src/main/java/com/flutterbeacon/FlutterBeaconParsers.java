@@ -0,0 +1,158 @@
+package com.flutterbeacon;
+
+import android.util.Log;
+
+import org.altbeacon.beacon.BeaconManager;
+import org.altbeacon.beacon.BeaconParser;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+class FlutterBeaconParsers {
+  private static final String TAG = FlutterBeaconParsers.class.getSimpleName();
+
+  static final String IBEACON = "iBeacon";
+  static final String EDDYSTONE_UID = "eddystoneUID";
+  static final String EDDYSTONE_URL = "eddystoneURL";
+  static final String EDDYSTONE_TLM = "eddystoneTLM";
+  static final String ALTBEACON = "standardAltBeacon";
+
+  // Layout strings by name, and parsed parsers by layout string. Both live for the whole
+  // process so every plugin instance shares the same BeaconParser objects.
+  private static final Map<String, String> layoutsByName = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, BeaconParser> parsersByLayout = new ConcurrentHashMap<>();
+
+  // Flags accepted by "initialize" before named layouts existed.
+  private static final Map<String, String> legacyNames = new LinkedHashMap<>();
+  // Built-in and legacy names, which user layouts may not take over.
+  private static final Set<String> reservedNames = new HashSet<>();
+
+  static {
+    layoutsByName.put(IBEACON, "m:2-3=0215,i:4-19,i:20-21,i:22-23,p:24-24");
+    layoutsByName.put(EDDYSTONE_UID, "s:0-1=feaa,m:2-2=00,p:3-3:-41,i:4-13,i:14-19");
+    layoutsByName.put(EDDYSTONE_URL, BeaconParser.EDDYSTONE_URL_LAYOUT);
+    layoutsByName.put(EDDYSTONE_TLM, BeaconParser.EDDYSTONE_TLM_LAYOUT);
+    layoutsByName.put(ALTBEACON, BeaconParser.ALTBEACON_LAYOUT);
+
+    legacyNames.put("eddystone", EDDYSTONE_UID);
+    legacyNames.put("altbeacon", IBEACON);
+
+    reservedNames.addAll(layoutsByName.keySet());
+    reservedNames.addAll(legacyNames.keySet());
+
+    // Apple's company id instead of the default one, so hardware scan filters built
+    // from the parser let iBeacons through.
+    parserForName(IBEACON).setHardwareAssistManufacturerCodes(new int[]{0x004c});
+  }
+
+  /**
+   * Register a layout under a name usable as an "initialize" flag.
+   *
+   * @throws IllegalArgumentException when the name is one of the built-in layouts.
+   * @throws BeaconParser.BeaconLayoutException when the layout cannot be parsed.
+   */
+  static void register(String name, String layout) {
+    if (reservedNames.contains(name)) {
+      throw new IllegalArgumentException("Reserved beacon layout name: " + name);
+    }
+    parserForLayout(layout);
+    layoutsByName.put(name, layout);
+  }
+
+  static BeaconParser parserForName(String name) {
+    String layout = layoutsByName.get(name);
+    return layout == null ? null : parserForLayout(layout);
+  }
+
+  /**
+   * Parser for the "layout" argument of a broadcast: a registered name, a raw layout
+   * string, or iBeacon when omitted.
+   */
+  static BeaconParser parserForBroadcast(Object layout) {
+    if (!(layout instanceof String)) {
+      return parserForName(IBEACON);
+    }
+
+    BeaconParser parser = parserForName((String) layout);
+    return parser != null ? parser : parserForLayout((String) layout);
+  }
+
+  static BeaconParser parserForLayout(String layout) {
+    BeaconParser parser = parsersByLayout.get(layout);
+    if (parser == null) {
+      BeaconParser parsed = new BeaconParser().setBeaconLayout(layout);
+      parser = parsersByLayout.putIfAbsent(layout, parsed);
+      if (parser == null) {
+        parser = parsed;
+      }
+    }
+    return parser;
+  }
+
+  /**
+   * Parsers requested by the "initialize" arguments: every flag set to true that names
+   * a registered layout, including the legacy "eddystone" and "altbeacon" flags.
+   */
+  @SuppressWarnings("rawtypes")
+  static List<BeaconParser> fromArguments(Object arguments) {
+    List<BeaconParser> parsers = new ArrayList<>();
+    if (!(arguments instanceof Map)) {
+      return parsers;
+    }
+
+    Map map = (Map) arguments;
+    for (Object key : map.keySet()) {
+      if (!(key instanceof String) || !Boolean.TRUE.equals(map.get(key))) {
+        continue;
+      }
+
+      String name = legacyNames.containsKey(key) ? legacyNames.get(key) : (String) key;
+      BeaconParser parser = parserForName(name);
+      if (parser == null) {
+        Log.w(TAG, "Unknown beacon layout: " + key);
+      } else if (!parsers.contains(parser)) {
+        parsers.add(parser);
+      }
+    }
+
+    // Telemetry frames are merged into the matching UID beacon rather than reported
+    // on their own, so scanning for UID always picks up TLM as well.
+    BeaconParser telemetry = parserForName(EDDYSTONE_TLM);
+    if (parsers.contains(parserForName(EDDYSTONE_UID)) && !parsers.contains(telemetry)) {
+      parsers.add(telemetry);
+    }
+    return parsers;
+  }
+
+  /**
+   * Replace the parsers of the beacon manager only when the layouts or their order
+   * differ, so re-initializing with the same formats does not restart the beacon service.
+   * Order matters since the first parser matching an advertisement wins.
+   *
+   * @return true when the parser list was changed.
+   */
+  static boolean apply(BeaconManager beaconManager, List<BeaconParser> parsers) {
+    List<BeaconParser> current = beaconManager.getBeaconParsers();
+    if (layoutsOf(current).equals(layoutsOf(parsers))) {
+      return false;
+    }
+
+    current.clear();
+    current.addAll(parsers);
+    return true;
+  }
+
+  static List<String> layoutsOf(List<BeaconParser> parsers) {
+    List<String> layouts = new ArrayList<>();
+    for (BeaconParser parser : parsers) {
+      layouts.add(parser.getLayout());
+    }
+    return layouts;
+  }
+}
@@ -1,14 +1,23 @@
 package com.flutterbeacon;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import org.altbeacon.beacon.BeaconManager;
 import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
@@ -25,21 +34,23 @@ import io.flutter.plugin.common.PluginRegistry.Registrar;
 public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, MethodCallHandler,
     PluginRegistry.RequestPermissionsResultListener,
     PluginRegistry.ActivityResultListener {
-  
-  private static final BeaconParser iBeaconLayout = new BeaconParser()
-      .setBeaconLayout("m:2-3=0215,i:4-19,i:20-21,i:22-23,p:24-24");
-  private final BeaconParser eddystoneUIDLayout = new BeaconParser()
-      .setBeaconLayout("s:0-1=feaa,m:2-2=00,p:3-3:-41,i:4-13,i:14-19");
 
   static final int REQUEST_CODE_LOCATION = 1234;
   static final int REQUEST_CODE_BLUETOOTH = 5678;
 
+  // Application meta-data enabling the warm-up: "true", or a comma separated list of
+  // layout names to scan for, e.g. "iBeacon,eddystoneUID".
+  static final String META_DATA_WARM_UP = "flutter_beacon.warm_up";
+
   private FlutterPluginBinding flutterPluginBinding;
   private ActivityPluginBinding activityPluginBinding;
 
   private FlutterBeaconScanner beaconScanner;
   private FlutterBeaconBroadcast beaconBroadcast;
   private FlutterPlatform platform;
+  private final FlutterBeaconMetrics metrics = new FlutterBeaconMetrics();
+  private FlutterBeaconRegionStore regionStore;
+  private FlutterBeaconCalibration calibration;
   
   private BeaconManager beaconManager;
   Result flutterResult;
@@ -49,7 +60,10 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
   private MethodChannel channel;
   private EventChannel eventChannel;
   private EventChannel eventChannelMonitoring;
+  private EventChannel eventChannelPositioning;
+  private EventChannel eventChannelRules;
   private EventChannel eventChannelBluetoothState;
+  private FlutterBluetoothStateReceiver bluetoothStateReceiver;
   private EventChannel eventChannelAuthorizationStatus;
 
   public FlutterBeaconPlugin() {
@@ -66,13 +80,104 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
   @Override
   public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
     this.flutterPluginBinding = binding;
+    metrics.onStartup();
+    createBeaconScanner(binding.getApplicationContext());
+
+    Object warmUp = readWarmUp(binding.getApplicationContext());
+    if (warmUp != null) {
+      warmUp(binding.getApplicationContext(), warmUp);
+    }
   }
 
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+    if (beaconScanner != null && beaconManager != null
+        && (beaconScanner.isBinding() || beaconManager.isBound(beaconScanner.beaconConsumer))) {
+      beaconScanner.unbind();
+    }
+    if (beaconScanner != null) {
+      beaconScanner.release();
+    }
+    if (bluetoothStateReceiver != null) {
+      bluetoothStateReceiver.unregister();
+    }
     this.flutterPluginBinding = null;
   }
 
+  /**
+   * Bind the beacon service before any activity or Dart code is around, so the
+   * service is usually connected by the time ranging is requested.
+   */
+  private void warmUp(Context context, Object warmUp) {
+    createBeaconScanner(context);
+    if (warmUp instanceof String) {
+      Map<String, Boolean> layouts = new HashMap<>();
+      for (String name : ((String) warmUp).split(",")) {
+        if (!name.trim().isEmpty()) {
+          layouts.put(name.trim(), true);
+        }
+      }
+      initialize(layouts);
+    }
+
+    Log.d("INITIALIZE", "warm up: " + warmUp);
+    beaconScanner.bind();
+  }
+
+  private static Object readWarmUp(Context context) {
+    try {
+      ApplicationInfo info = context.getPackageManager()
+          .getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+      if (info.metaData == null) {
+        return null;
+      }
+
+      Object value = info.metaData.get(META_DATA_WARM_UP);
+      if (Boolean.TRUE.equals(value) || "true".equals(value)) {
+        return Boolean.TRUE;
+      }
+      return value instanceof String ? value : null;
+    } catch (PackageManager.NameNotFoundException e) {
+      return null;
+    }
+  }
+
+  private void createBeaconScanner(Context context) {
+    if (beaconManager == null) {
+      beaconManager = BeaconManager.getInstanceForApplication(context.getApplicationContext());
+    }
+    if (beaconScanner == null) {
+      beaconScanner = new FlutterBeaconScanner(this, context.getApplicationContext());
+      bluetoothStateReceiver = new FlutterBluetoothStateReceiver(context, beaconScanner);
+      bluetoothStateReceiver.register();
+    }
+    if (calibration == null) {
+      calibration = new FlutterBeaconCalibration(context);
+    }
+    if (regionStore == null) {
+      regionStore = new FlutterBeaconRegionStore(context);
+      restoreMonitoring();
+    }
+  }
+
+  /**
+   * Resume monitoring of the regions stored before the process went away, without
+   * waiting for Dart to register them again.
+   */
+  private void restoreMonitoring() {
+    List<Region> regions = regionStore.loadMonitoring();
+    if (regions.isEmpty()) {
+      return;
+    }
+
+    List<BeaconParser> parsers = regionStore.loadLayouts();
+    if (!parsers.isEmpty()) {
+      FlutterBeaconParsers.apply(beaconManager, parsers);
+    }
+    Log.d("INITIALIZE", "restoring monitoring of " + regions.size() + " regions");
+    beaconScanner.resumeMonitoring(regions);
+  }
+
   @Override
   public void onAttachedToActivity(@NonNull ActivityPluginBinding binding) {
     this.activityPluginBinding = binding;
@@ -99,17 +204,31 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
     return beaconManager;
   }
 
+  FlutterBeaconMetrics getMetrics() {
+    return metrics;
+  }
+
+  FlutterBeaconRegionStore getRegionStore() {
+    return regionStore;
+  }
+
+  FlutterBeaconCalibration getCalibration() {
+    return calibration;
+  }
+
   private void setupChannels(BinaryMessenger messenger, Activity activity) {
     if (activityPluginBinding != null) {
       activityPluginBinding.addActivityResultListener(this);
       activityPluginBinding.addRequestPermissionsResultListener(this);
     }
 
-    beaconManager = BeaconManager.getInstanceForApplication(activity.getApplicationContext());
+    createBeaconScanner(activity);
+    // Changes are heard without an activity, this catches any the receiver missed.
+    bluetoothStateReceiver.register();
+    bluetoothStateReceiver.refresh();
 
-    platform = new FlutterPlatform(activity);
-    beaconScanner = new FlutterBeaconScanner(this, activity);
-    beaconBroadcast = new FlutterBeaconBroadcast(activity, iBeaconLayout);
+    platform = new FlutterPlatform(activity, bluetoothStateReceiver);
+    beaconBroadcast = new FlutterBeaconBroadcast(activity, metrics);
 
     channel = new MethodChannel(messenger, "flutter_beacon");
     channel.setMethodCallHandler(this);
@@ -120,8 +239,14 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
     eventChannelMonitoring = new EventChannel(messenger, "flutter_beacon_event_monitoring");
     eventChannelMonitoring.setStreamHandler(beaconScanner.monitoringStreamHandler);
 
+    eventChannelPositioning = new EventChannel(messenger, "flutter_beacon_event_positioning");
+    eventChannelPositioning.setStreamHandler(beaconScanner.positioningStreamHandler);
+
+    eventChannelRules = new EventChannel(messenger, "flutter_beacon_event_rules");
+    eventChannelRules.setStreamHandler(beaconScanner.rulesStreamHandler);
+
     eventChannelBluetoothState = new EventChannel(messenger, "flutter_bluetooth_state_changed");
-    eventChannelBluetoothState.setStreamHandler(new FlutterBluetoothStateReceiver(activity));
+    eventChannelBluetoothState.setStreamHandler(bluetoothStateReceiver);
 
     eventChannelAuthorizationStatus = new EventChannel(messenger, "flutter_authorization_status_changed");
     eventChannelAuthorizationStatus.setStreamHandler(locationAuthorizationStatusStreamHandler);
@@ -133,18 +258,27 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
       activityPluginBinding.removeRequestPermissionsResultListener(this);
     }
 
+    if (platform != null) {
+      platform.dispose();
+    }
     platform = null;
     beaconBroadcast = null;
+    // Stays registered for the scanner, only Dart stops listening.
+    bluetoothStateReceiver.onCancel(null);
 
     channel.setMethodCallHandler(null);
     eventChannel.setStreamHandler(null);
     eventChannelMonitoring.setStreamHandler(null);
+    eventChannelPositioning.setStreamHandler(null);
+    eventChannelRules.setStreamHandler(null);
     eventChannelBluetoothState.setStreamHandler(null);
     eventChannelAuthorizationStatus.setStreamHandler(null);
 
     channel = null;
     eventChannel = null;
     eventChannelMonitoring = null;
+    eventChannelPositioning = null;
+    eventChannelRules = null;
     eventChannelBluetoothState = null;
     eventChannelAuthorizationStatus = null;
 
@@ -153,162 +287,365 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
 
   @Override
   public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
-    if (call.method.equals("initialize")) {
-      Log.d("INITIALIZE", "eddystone: " + call.argument("eddystone"));
-      Log.d("INITIALIZE", "altbeacon: " + call.argument("altbeacon"));
-      boolean eddystoneRequired = call.argument("eddystone") != null ? (boolean)call.argument("eddystone") : false;
-      boolean altBeaconRequired = call.argument("altbeacon") != null ? (boolean)call.argument("altbeacon") : false;
-      initialize(eddystoneRequired, altBeaconRequired);
-
-      if (beaconManager != null && !beaconManager.isBound(beaconScanner.beaconConsumer)) {
-        this.flutterResult = result;
-        this.beaconManager.bind(beaconScanner.beaconConsumer);
+    switch (call.method) {
+      case "initialize": {
+        Log.d("INITIALIZE", "layouts: " + call.arguments);
+        initialize(call.arguments);
+
+        if (beaconManager != null
+            && (beaconScanner.isBinding() || !beaconManager.isBound(beaconScanner.beaconConsumer))) {
+          this.flutterResult = result;
+          beaconScanner.bind();
+          return;
+        }
+
+        result.success(true);
         return;
       }
 
-      result.success(true);
-      return;
-    }
+      case "initializeAndCheck": {
+        Log.d("INITIALIZE", "layouts: " + call.arguments);
+        initializeAndCheck(result, call.arguments);
+        return;
+      }
 
-    if (call.method.equals("initializeAndCheck")) {
-      Log.d("INITIALIZE", "eddystone: " + call.argument("eddystone"));
-      Log.d("INITIALIZE", "altbeacon: " + call.argument("altbeacon"));
-      boolean eddystoneRequired = call.argument("eddystone") != null ? (boolean)call.argument("eddystone") : false;
-      boolean altBeaconRequired = call.argument("altbeacon") != null ? (boolean)call.argument("altbeacon") : false;
-      initializeAndCheck(result, eddystoneRequired, altBeaconRequired);
-      return;
-    }
+      case "registerBeaconLayout": {
+        String name = call.argument("name");
+        String layout = call.argument("layout");
+        if (name == null || layout == null) {
+          result.error("Beacon", "invalid beacon layout", null);
+          return;
+        }
 
-    if (call.method.equals("setLocationAuthorizationTypeDefault")) {
-      // Android does not have the concept of "requestWhenInUse" and "requestAlways" like iOS does,
-      // so this method does nothing.
-      // (Well, in Android API 29 and higher, there is an "ACCESS_BACKGROUND_LOCATION" option,
-      //  which could perhaps be appropriate to add here as an improvement.)
-      result.success(true);
-      return;
-    }
+        try {
+          FlutterBeaconParsers.register(name, layout);
+        } catch (BeaconParser.BeaconLayoutException | IllegalArgumentException e) {
+          result.error("Beacon", e.getLocalizedMessage(), null);
+          return;
+        }
 
-    if (call.method.equals("authorizationStatus")) {
-      result.success(platform.checkLocationServicesPermission() ? "ALLOWED" : "NOT_DETERMINED");
-      return;
-    }
+        result.success(true);
+        return;
+      }
 
-    if (call.method.equals("checkLocationServicesIfEnabled")) {
-      result.success(platform.checkLocationServicesIfEnabled());
-      return;
-    }
+      case "setLocationAuthorizationTypeDefault": {
+        // Android does not have the concept of "requestWhenInUse" and "requestAlways" like iOS does,
+        // so this method does nothing.
+        // (Well, in Android API 29 and higher, there is an "ACCESS_BACKGROUND_LOCATION" option,
+        //  which could perhaps be appropriate to add here as an improvement.)
+        result.success(true);
+        return;
+      }
 
-    if (call.method.equals("bluetoothState")) {
-      try {
-        boolean flag = platform.checkBluetoothIfEnabled();
-        result.success(flag ? "STATE_ON" : "STATE_OFF");
+      case "authorizationStatus": {
+        result.success(platform.checkLocationServicesPermission() ? "ALLOWED" : "NOT_DETERMINED");
         return;
-      } catch (RuntimeException ignored) {
+      }
 
+      case "checkLocationServicesIfEnabled": {
+        result.success(platform.checkLocationServicesIfEnabled());
+        return;
       }
 
-      result.success("STATE_UNSUPPORTED");
-      return;
-    }
+      case "bluetoothState": {
+        try {
+          boolean flag = platform.checkBluetoothIfEnabled();
+          result.success(flag ? "STATE_ON" : "STATE_OFF");
+          return;
+        } catch (RuntimeException ignored) {
 
-    if (call.method.equals("requestAuthorization")) {
-      if (!platform.checkLocationServicesPermission()) {
-        this.flutterResult = result;
-        platform.requestAuthorization();
+        }
+
+        result.success("STATE_UNSUPPORTED");
         return;
       }
 
-      // Here, location services permission is granted.
-      //
-      // It's possible location permission was granted without going through
-      // our onRequestPermissionsResult() - for example if a different flutter plugin
-      // also requested location permissions, we could end up here with
-      // checkLocationServicesPermission() returning true before we ever called requestAuthorization().
-      //
-      // In that case, we'll never get a notification posted to eventSinkLocationAuthorizationStatus
-      //
-      // So we could could have flutter code calling requestAuthorization here and expecting to see
-      // a change in eventSinkLocationAuthorizationStatus but never receiving it.
-      //
-      // Ensure an ALLOWED status (possibly duplicate) is posted back.
-      if (eventSinkLocationAuthorizationStatus != null) {
-        eventSinkLocationAuthorizationStatus.success("ALLOWED");
+      case "requestAuthorization": {
+        if (!platform.checkLocationServicesPermission()) {
+          this.flutterResult = result;
+          platform.requestAuthorization();
+          return;
+        }
+
+        // Here, location services permission is granted.
+        //
+        // It's possible location permission was granted without going through
+        // our onRequestPermissionsResult() - for example if a different flutter plugin
+        // also requested location permissions, we could end up here with
+        // checkLocationServicesPermission() returning true before we ever called requestAuthorization().
+        //
+        // In that case, we'll never get a notification posted to eventSinkLocationAuthorizationStatus
+        //
+        // So we could could have flutter code calling requestAuthorization here and expecting to see
+        // a change in eventSinkLocationAuthorizationStatus but never receiving it.
+        //
+        // Ensure an ALLOWED status (possibly duplicate) is posted back.
+        if (eventSinkLocationAuthorizationStatus != null) {
+          eventSinkLocationAuthorizationStatus.success("ALLOWED");
+        }
+
+        result.success(true);
+        return;
       }
 
-      result.success(true);
-      return;
-    }
+      case "openBluetoothSettings": {
+        if (!platform.checkBluetoothIfEnabled()) {
+          this.flutterResultBluetooth = result;
+          platform.openBluetoothSettings();
+          return;
+        }
 
-    if (call.method.equals("openBluetoothSettings")) {
-      if (!platform.checkBluetoothIfEnabled()) {
-        this.flutterResultBluetooth = result;
-        platform.openBluetoothSettings();
+        result.success(true);
         return;
       }
 
-      result.success(true);
-      return;
-    }
+      case "openLocationSettings": {
+        platform.openLocationSettings();
+        result.success(true);
+        return;
+      }
 
-    if (call.method.equals("openLocationSettings")) {
-      platform.openLocationSettings();
-      result.success(true);
-      return;
-    }
+      case "openApplicationSettings": {
+        result.notImplemented();
+        return;
+      }
 
-    if (call.method.equals("openApplicationSettings")) {
-      result.notImplemented();
-      return;
-    }
+      case "close": {
+        if (beaconManager != null) {
+          beaconScanner.stopRanging();
+          beaconManager.removeAllRangeNotifiers();
+          beaconScanner.stopMonitoring();
+          beaconManager.removeAllMonitorNotifiers();
+          if (beaconManager.isBound(beaconScanner.beaconConsumer)) {
+            beaconScanner.unbind();
+          }
+        }
+        result.success(true);
+        return;
+      }
+
+      case "startBroadcast": {
+        beaconBroadcast.startBroadcast(call.arguments, result);
+        return;
+      }
 
-    if (call.method.equals("close")) {
-      if (beaconManager != null) {
-        beaconScanner.stopRanging();
-        beaconManager.removeAllRangeNotifiers();
-        beaconScanner.stopMonitoring();
-        beaconManager.removeAllMonitorNotifiers();
-        if (beaconManager.isBound(beaconScanner.beaconConsumer)) {
-          beaconManager.unbind(beaconScanner.beaconConsumer);
+      case "updateBroadcast": {
+        beaconBroadcast.updateBroadcast(call.arguments, result);
+        return;
+      }
+
+      case "stopBroadcast": {
+        beaconBroadcast.stopBroadcast(result);
+        return;
+      }
+
+      case "startBroadcastRotation": {
+        beaconBroadcast.startBroadcastRotation(call.arguments, result);
+        return;
+      }
+
+      case "getBroadcastStats": {
+        beaconBroadcast.getBroadcastStats(result);
+        return;
+      }
+
+      case "isBroadcasting": {
+        beaconBroadcast.isBroadcasting(result);
+        return;
+      }
+
+      case "isBroadcastSupported": {
+        result.success(platform.isBroadcastSupported());
+        return;
+      }
+
+      case "setIdentityResolution": {
+        if (beaconScanner.getIdentityResolver().configure(call.arguments)) {
+          result.success(true);
+        } else {
+          result.error("Beacon", "Invalid parameter", null);
         }
+        return;
       }
-      result.success(true);
-      return;
-    }
 
-    if (call.method.equals("startBroadcast")) {
-      beaconBroadcast.startBroadcast(call.arguments, result);
-      return;
-    }
+      case "setPositioningMap": {
+        if (beaconScanner.getPositioning().configure(call.arguments)) {
+          result.success(true);
+        } else {
+          result.error("Beacon", "Invalid parameter", null);
+        }
+        return;
+      }
 
-    if (call.method.equals("stopBroadcast")) {
-      beaconBroadcast.stopBroadcast(result);
-      return;
+      case "setRules": {
+        int count = beaconScanner.getRules().setRules(call.arguments);
+        if (count < 0) {
+          result.error("Beacon", "Invalid parameter", null);
+        } else {
+          result.success(count);
+        }
+        return;
+      }
+
+      case "setBatchedScanning": {
+        if (beaconScanner.setBatchedScanning(call.arguments)) {
+          result.success(true);
+        } else {
+          result.error("Beacon", "Batched scanning is not supported", null);
+        }
+        return;
+      }
+
+      case "startExport": {
+        if (beaconScanner.startExport(call.arguments)) {
+          result.success(true);
+        } else {
+          result.error("Beacon", "Invalid parameter", null);
+        }
+        return;
+      }
+
+      case "stopExport": {
+        beaconScanner.stopExport();
+        result.success(true);
+        return;
+      }
+
+      case "getExportStats": {
+        result.success(beaconScanner.getExportStats());
+        return;
+      }
+
+      case "startCalibration": {
+        Object distance = call.argument("distance");
+        if (!(distance instanceof Number) || ((Number) distance).doubleValue() <= 0) {
+          result.error("Calibration", "Invalid parameter", null);
+          return;
+        }
+        calibration.start(((Number) distance).doubleValue(), (String) call.argument("identity"));
+        result.success(true);
+        return;
+      }
+
+      case "stopCalibration": {
+        result.success(calibration.stop());
+        return;
+      }
+
+      case "applyCalibration": {
+        Map<String, Object> fitted = calibration.fit();
+        if (fitted == null) {
+          result.error("Calibration", "NOT_ENOUGH_SAMPLES", calibration.toMap());
+        } else {
+          result.success(fitted);
+        }
+        return;
+      }
+
+      case "resetCalibration": {
+        calibration.reset();
+        result.success(true);
+        return;
+      }
+
+      case "getCalibration": {
+        result.success(calibration.toMap());
+        return;
+      }
+
+      case "getMetrics": {
+        result.success(metrics.toMap());
+        return;
+      }
+
+      case "getEnergyEstimate": {
+        result.success(metrics.getEnergy().estimate(call.arguments, SystemClock.elapsedRealtime()));
+        return;
+      }
+
+      case "resetEnergyEstimate": {
+        metrics.getEnergy().reset(SystemClock.elapsedRealtime());
+        result.success(true);
+        return;
+      }
+
+      case "batch": {
+        if (!(call.arguments instanceof List)) {
+          result.error("Beacon", "invalid batch", null);
+          return;
+        }
+
+        runBatch((List<?>) call.arguments, 0, new ArrayList<Map<String, Object>>(), result);
+        return;
+      }
+
+      default:
+        result.notImplemented();
     }
+  }
 
-    if (call.method.equals("isBroadcasting")) {
-      beaconBroadcast.isBroadcasting(result);
+  /**
+   * Run the calls of a batch one after another, each starting once the previous one
+   * completed, and reply with one entry per call. Stops at the first failing call.
+   */
+  @SuppressWarnings("rawtypes")
+  private void runBatch(final List<?> calls, final int index, final List<Map<String, Object>> results,
+                        final Result result) {
+    if (index == calls.size()) {
+      result.success(results);
       return;
     }
 
-    if (call.method.equals("isBroadcastSupported")) {
-      result.success(platform.isBroadcastSupported());
+    Object item = calls.get(index);
+    Object method = item instanceof Map ? ((Map) item).get("method") : null;
+    if (!(method instanceof String) || method.equals("batch")) {
+      Map<String, Object> entry = new HashMap<>();
+      entry.put("method", method);
+      entry.put("error", "Beacon");
+      entry.put("message", "invalid batch call");
+      results.add(entry);
+      result.success(results);
       return;
     }
 
-    result.notImplemented();
+    final Map<String, Object> entry = new HashMap<>();
+    entry.put("method", method);
+    onMethodCall(new MethodCall((String) method, ((Map) item).get("arguments")), new Result() {
+      @Override
+      public void success(Object value) {
+        entry.put("result", value);
+        results.add(entry);
+        runBatch(calls, index + 1, results, result);
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        entry.put("error", errorCode);
+        entry.put("message", errorMessage);
+        results.add(entry);
+        result.success(results);
+      }
+
+      @Override
+      public void notImplemented() {
+        entry.put("error", "NOT_IMPLEMENTED");
+        results.add(entry);
+        result.success(results);
+      }
+    });
   }
 
-  private void initialize (boolean eddystoneRequired, boolean altBeaconRequired) {
-    beaconManager.getBeaconParsers().clear();
-    if (eddystoneRequired) {
-      beaconManager.getBeaconParsers().add(eddystoneUIDLayout);
+  private void initialize(Object layouts) {
+    List<BeaconParser> parsers = FlutterBeaconParsers.fromArguments(layouts);
+    if (FlutterBeaconParsers.apply(beaconManager, parsers)) {
+      Log.d("INITIALIZE", "beacon parsers changed");
     }
-    if (altBeaconRequired) {
-      beaconManager.getBeaconParsers().add(iBeaconLayout);
+    if (regionStore != null) {
+      regionStore.saveLayouts(parsers);
     }
   }
 
-  private void initializeAndCheck(Result result, boolean eddystoneRequired, boolean altBeaconRequired){
+  private void initializeAndCheck(Result result, Object layouts){
 
     if (platform.checkLocationServicesPermission()
         && platform.checkBluetoothIfEnabled()
@@ -320,7 +657,7 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
     }
 
 
-    initialize(eddystoneRequired, altBeaconRequired);
+    initialize(layouts);
 
     flutterResult = result;
     if (!platform.checkBluetoothIfEnabled()) {
@@ -338,12 +675,13 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
       return;
     }
 
-    if (beaconManager != null && !beaconManager.isBound(beaconScanner.beaconConsumer)) {
+    if (beaconManager != null
+        && (beaconScanner.isBinding() || !beaconManager.isBound(beaconScanner.beaconConsumer))) {
       if (result != null) {
         this.flutterResult = result;
       }
 
-      beaconManager.bind(beaconScanner.beaconConsumer);
+      beaconScanner.bind();
       return;
     }
 
@@ -371,6 +709,7 @@ public class FlutterBeaconPlugin implements FlutterPlugin, ActivityAware, Method
       return false;
     }
 
+    platform.invalidateLocationServicesPermission();
     boolean locationServiceAllowed = false;
     if (permissions.length > 0 && grantResults.length > 0) {
       String permission = permissions[0];
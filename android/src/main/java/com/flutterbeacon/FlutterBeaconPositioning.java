@@ -0,0 +1,340 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Estimates the position of the device from the ranged distances to beacons of
+ * known coordinates, so only positions have to cross the platform channel.
+ *
+ * Every cycle is solved by weighted least squares, dropping the worst fitting
+ * beacon while its residual is above the outlier threshold. Optionally a particle
+ * filter smooths the estimates over time, weighting the beacons the cycle kept.
+ *
+ * The beacons of a cycle are delivered once per ranged region, so they are gathered
+ * until every region of the cycle reported and solved together, once per cycle.
+ *
+ * Only depends on the beacon library, so it can be driven on a plain JVM.
+ */
+class FlutterBeaconPositioning {
+  private static final int MIN_BEACONS = 3;
+  private static final double DEFAULT_OUTLIER_METERS = 2.0;
+  private static final int DEFAULT_PARTICLES = 500;
+  // Walking speed the particle filter allows for between two cycles, in m/s.
+  private static final double PROCESS_NOISE = 1.5;
+
+  private final Map<String, double[]> coordinates = new HashMap<>();
+  private double outlierMeters = DEFAULT_OUTLIER_METERS;
+  private ParticleFilter particleFilter;
+  private long seed = System.nanoTime();
+
+  // Beacons by identity of the regions reported so far in the current cycle.
+  private final Map<String, Beacon> cycleBeacons = new LinkedHashMap<>();
+  private final Set<String> cycleRegions = new HashSet<>();
+  private long cycleTimestamp;
+
+  /**
+   * @param arguments {beacons: [{identity, x, y}], outlierMeters, particleFilter, particles},
+   *                  or null to turn positioning off.
+   * @return false when the arguments are not valid.
+   */
+  @SuppressWarnings("rawtypes")
+  synchronized boolean configure(Object arguments) {
+    if (arguments == null) {
+      coordinates.clear();
+      particleFilter = null;
+      return true;
+    }
+    if (!(arguments instanceof Map) || !(((Map) arguments).get("beacons") instanceof List)) {
+      return false;
+    }
+
+    Map map = (Map) arguments;
+    Map<String, double[]> parsed = new HashMap<>();
+    for (Object object : (List) map.get("beacons")) {
+      if (!(object instanceof Map)) {
+        return false;
+      }
+      Map beacon = (Map) object;
+      if (!(beacon.get("identity") instanceof String)
+          || !(beacon.get("x") instanceof Number)
+          || !(beacon.get("y") instanceof Number)) {
+        return false;
+      }
+      parsed.put(((String) beacon.get("identity")).toLowerCase(Locale.US), new double[]{
+          ((Number) beacon.get("x")).doubleValue(),
+          ((Number) beacon.get("y")).doubleValue()
+      });
+    }
+
+    coordinates.clear();
+    coordinates.putAll(parsed);
+    Object outlier = map.get("outlierMeters");
+    outlierMeters = outlier instanceof Number ? ((Number) outlier).doubleValue() : DEFAULT_OUTLIER_METERS;
+    Object particles = map.get("particles");
+    particleFilter = Boolean.TRUE.equals(map.get("particleFilter"))
+        ? new ParticleFilter(particles instanceof Number ? Math.max(10, ((Number) particles).intValue()) : DEFAULT_PARTICLES, new Random(seed))
+        : null;
+    return true;
+  }
+
+  synchronized boolean isEnabled() {
+    return !coordinates.isEmpty();
+  }
+
+  // Fixed seed for reproducible particle filter runs.
+  synchronized void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  synchronized void reset() {
+    if (particleFilter != null) {
+      particleFilter.reset();
+    }
+    cycleBeacons.clear();
+    cycleRegions.clear();
+  }
+
+  /**
+   * Gather the beacons of one region of a ranging cycle.
+   *
+   * @param region  identifier of the region the beacons come from.
+   * @param regions number of regions ranged for positioning.
+   * @return the estimate of the cycle once all its regions reported, otherwise null.
+   */
+  synchronized Map<String, Object> estimate(Collection<Beacon> beacons, String region, int regions, long timestamp) {
+    Map<String, Object> position = null;
+    if (cycleRegions.contains(region)) {
+      // The region is back before the others reported, they are not ranged anymore.
+      position = estimateCycle();
+    }
+    if (cycleRegions.isEmpty()) {
+      cycleTimestamp = timestamp;
+    }
+    cycleRegions.add(region);
+    for (Beacon beacon : beacons) {
+      cycleBeacons.put(FlutterBeaconUtils.identityOf(beacon), beacon);
+    }
+    if (cycleRegions.size() >= regions) {
+      position = estimateCycle();
+    }
+    return position;
+  }
+
+  private Map<String, Object> estimateCycle() {
+    Map<String, Object> position = estimate(cycleBeacons.values(), cycleTimestamp);
+    cycleBeacons.clear();
+    cycleRegions.clear();
+    return position;
+  }
+
+  /**
+   * @return {x, y, accuracy, beacons, timestamp}, or null when fewer than three
+   * beacons of the map are in range.
+   */
+  synchronized Map<String, Object> estimate(Collection<Beacon> beacons, long timestamp) {
+    List<double[]> ranges = new ArrayList<>();
+    for (Beacon beacon : beacons) {
+      double[] coordinate = coordinates.get(FlutterBeaconUtils.identityOf(beacon).toLowerCase(Locale.US));
+      double distance = beacon.getDistance();
+      if (coordinate != null && distance > 0) {
+        ranges.add(new double[]{coordinate[0], coordinate[1], distance});
+      }
+    }
+
+    double[] position = solve(ranges, outlierMeters);
+    if (position == null) {
+      return null;
+    }
+    if (particleFilter != null) {
+      // Only the ranges least squares kept, outliers would drag the particles along.
+      position = particleFilter.update(position, ranges, timestamp);
+    }
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("x", position[0]);
+    map.put("y", position[1]);
+    map.put("accuracy", position[2]);
+    map.put("beacons", (int) position[3]);
+    map.put("timestamp", timestamp);
+    return map;
+  }
+
+  /**
+   * Weighted least squares over [x, y, distance] ranges, with outlier rejection.
+   *
+   * @param used ranges of the cycle; the outliers are removed from it, so it ends up
+   *             holding the ranges the position was solved with.
+   * @return [x, y, rms residual, beacons used], or null when it can not be solved.
+   */
+  static double[] solve(List<double[]> used, double outlierMeters) {
+    while (used.size() >= MIN_BEACONS) {
+      double[] position = solveOnce(used);
+      if (position == null) {
+        return null;
+      }
+
+      int worst = -1;
+      double worstResidual = 0, sumSquares = 0;
+      for (int i = 0; i < used.size(); i++) {
+        double residual = Math.abs(distance(position, used.get(i)) - used.get(i)[2]);
+        sumSquares += residual * residual;
+        if (residual > worstResidual) {
+          worstResidual = residual;
+          worst = i;
+        }
+      }
+
+      if (worstResidual <= outlierMeters || used.size() == MIN_BEACONS) {
+        return new double[]{position[0], position[1], Math.sqrt(sumSquares / used.size()), used.size()};
+      }
+      used.remove(worst);
+    }
+    return null;
+  }
+
+  /**
+   * Linearizes the range equations against the closest beacon, weighting each
+   * by the inverse square of its distance since far ranges are the noisiest.
+   */
+  private static double[] solveOnce(List<double[]> ranges) {
+    double[] reference = ranges.get(0);
+    for (double[] range : ranges) {
+      if (range[2] < reference[2]) {
+        reference = range;
+      }
+    }
+
+    double a11 = 0, a12 = 0, a22 = 0, b1 = 0, b2 = 0;
+    for (double[] range : ranges) {
+      if (range == reference) {
+        continue;
+      }
+      double ax = 2 * (range[0] - reference[0]);
+      double ay = 2 * (range[1] - reference[1]);
+      double b = reference[2] * reference[2] - range[2] * range[2]
+          - reference[0] * reference[0] - reference[1] * reference[1]
+          + range[0] * range[0] + range[1] * range[1];
+      double weight = 1 / (range[2] * range[2]);
+      a11 += weight * ax * ax;
+      a12 += weight * ax * ay;
+      a22 += weight * ay * ay;
+      b1 += weight * ax * b;
+      b2 += weight * ay * b;
+    }
+
+    double determinant = a11 * a22 - a12 * a12;
+    if (Math.abs(determinant) < 1e-12) {
+      // Beacons on a line, the position is ambiguous.
+      return null;
+    }
+    return new double[]{(a22 * b1 - a12 * b2) / determinant, (a11 * b2 - a12 * b1) / determinant};
+  }
+
+  private static double distance(double[] position, double[] range) {
+    double dx = position[0] - range[0];
+    double dy = position[1] - range[1];
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  private static class ParticleFilter {
+    private final Random random;
+    private final double[][] particles;
+    private final double[] weights;
+    private long lastTimestamp = -1;
+
+    ParticleFilter(int count, Random random) {
+      this.random = random;
+      this.particles = new double[count][2];
+      this.weights = new double[count];
+    }
+
+    void reset() {
+      lastTimestamp = -1;
+    }
+
+    double[] update(double[] measured, List<double[]> ranges, long timestamp) {
+      int count = particles.length;
+      if (lastTimestamp < 0) {
+        // Start around the least squares estimate.
+        for (double[] particle : particles) {
+          particle[0] = measured[0] + random.nextGaussian() * measured[2];
+          particle[1] = measured[1] + random.nextGaussian() * measured[2];
+        }
+      } else {
+        double seconds = Math.max(0.1, (timestamp - lastTimestamp) / 1000.0);
+        double spread = PROCESS_NOISE * seconds;
+        for (double[] particle : particles) {
+          particle[0] += random.nextGaussian() * spread;
+          particle[1] += random.nextGaussian() * spread;
+        }
+      }
+      lastTimestamp = timestamp;
+
+      double total = 0;
+      for (int i = 0; i < count; i++) {
+        double logLikelihood = 0;
+        for (double[] range : ranges) {
+          // Ranging error grows with distance.
+          double sigma = 0.5 + 0.3 * range[2];
+          double error = distance(particles[i], range) - range[2];
+          logLikelihood -= error * error / (2 * sigma * sigma);
+        }
+        weights[i] = Math.exp(logLikelihood);
+        total += weights[i];
+      }
+      if (total <= 0 || Double.isNaN(total)) {
+        lastTimestamp = -1;
+        return measured;
+      }
+
+      double x = 0, y = 0;
+      for (int i = 0; i < count; i++) {
+        weights[i] /= total;
+        x += weights[i] * particles[i][0];
+        y += weights[i] * particles[i][1];
+      }
+      double spread = 0;
+      for (int i = 0; i < count; i++) {
+        double dx = particles[i][0] - x;
+        double dy = particles[i][1] - y;
+        spread += weights[i] * (dx * dx + dy * dy);
+      }
+
+      resample();
+      return new double[]{x, y, Math.sqrt(spread), measured[3]};
+    }
+
+    // Systematic resampling.
+    private void resample() {
+      int count = particles.length;
+      double[][] resampled = new double[count][2];
+      double step = 1.0 / count;
+      double position = random.nextDouble() * step;
+      double cumulative = weights[0];
+      int j = 0;
+      for (int i = 0; i < count; i++) {
+        while (position > cumulative && j < count - 1) {
+          cumulative += weights[++j];
+        }
+        resampled[i][0] = particles[j][0];
+        resampled[i][1] = particles[j][1];
+        position += step;
+      }
+      for (int i = 0; i < count; i++) {
+        particles[i][0] = resampled[i][0];
+        particles[i][1] = resampled[i][1];
+      }
+    }
+  }
+}
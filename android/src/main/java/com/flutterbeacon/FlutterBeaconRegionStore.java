@@ -0,0 +1,142 @@
+package com.flutterbeacon;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the monitored regions and the scanned layouts across process death, so
+ * monitoring can be resumed from plugin attach without waiting for Dart to
+ * register everything again.
+ *
+ * Regions are stored as a JSON array of [identifier, id1, id2, id3] entries,
+ * and only rewritten when they actually change. Layouts are stored as a JSON array
+ * too, in parser order, since the first parser matching an advertisement wins.
+ */
+class FlutterBeaconRegionStore {
+  private static final String TAG = FlutterBeaconRegionStore.class.getSimpleName();
+  private static final String PREFERENCES = "flutter_beacon_regions";
+  private static final String KEY_MONITORING = "monitoring";
+  private static final String KEY_LAYOUTS = "layoutList";
+  // Unordered set written by earlier versions, read until layouts are saved again.
+  private static final String KEY_LEGACY_LAYOUTS = "layouts";
+
+  private final SharedPreferences preferences;
+  private String monitoring;
+
+  FlutterBeaconRegionStore(Context context) {
+    this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    this.monitoring = preferences.getString(KEY_MONITORING, null);
+  }
+
+  void saveMonitoring(List<Region> regions) {
+    String encoded = regions == null || regions.isEmpty() ? null : encode(regions);
+    if (encoded == null ? monitoring == null : encoded.equals(monitoring)) {
+      return;
+    }
+
+    monitoring = encoded;
+    if (encoded == null) {
+      preferences.edit().remove(KEY_MONITORING).apply();
+    } else {
+      preferences.edit().putString(KEY_MONITORING, encoded).apply();
+    }
+  }
+
+  List<Region> loadMonitoring() {
+    List<Region> regions = new ArrayList<>();
+    if (monitoring == null) {
+      return regions;
+    }
+
+    try {
+      JSONArray array = new JSONArray(monitoring);
+      for (int i = 0; i < array.length(); i++) {
+        JSONArray entry = array.getJSONArray(i);
+        List<Identifier> identifiers = new ArrayList<>();
+        for (int j = 1; j < entry.length(); j++) {
+          if (entry.isNull(j)) {
+            break;
+          }
+          identifiers.add(Identifier.parse(entry.getString(j)));
+        }
+        regions.add(new Region(entry.getString(0), identifiers));
+      }
+    } catch (JSONException | IllegalArgumentException e) {
+      Log.e(TAG, "Discarding stored regions: " + e);
+      saveMonitoring(null);
+      regions.clear();
+    }
+    return regions;
+  }
+
+  void saveLayouts(List<BeaconParser> parsers) {
+    JSONArray layouts = new JSONArray();
+    for (BeaconParser parser : parsers) {
+      layouts.put(parser.getLayout());
+    }
+    String encoded = layouts.toString();
+    if (!encoded.equals(preferences.getString(KEY_LAYOUTS, null))) {
+      preferences.edit().putString(KEY_LAYOUTS, encoded).remove(KEY_LEGACY_LAYOUTS).apply();
+    }
+  }
+
+  List<BeaconParser> loadLayouts() {
+    List<BeaconParser> parsers = new ArrayList<>();
+    List<String> layouts = new ArrayList<>();
+    String encoded = preferences.getString(KEY_LAYOUTS, null);
+    if (encoded != null) {
+      try {
+        JSONArray array = new JSONArray(encoded);
+        for (int i = 0; i < array.length(); i++) {
+          layouts.add(array.getString(i));
+        }
+      } catch (JSONException e) {
+        Log.e(TAG, "Discarding stored layouts: " + e);
+        preferences.edit().remove(KEY_LAYOUTS).apply();
+        return parsers;
+      }
+    } else {
+      Set<String> legacy = preferences.getStringSet(KEY_LEGACY_LAYOUTS, null);
+      if (legacy != null) {
+        layouts.addAll(legacy);
+      }
+    }
+
+    for (String layout : layouts) {
+      try {
+        parsers.add(FlutterBeaconParsers.parserForLayout(layout));
+      } catch (BeaconParser.BeaconLayoutException e) {
+        Log.e(TAG, "Skipping stored layout " + layout + ": " + e);
+      }
+    }
+    return parsers;
+  }
+
+  private static String encode(List<Region> regions) {
+    JSONArray array = new JSONArray();
+    for (Region region : regions) {
+      JSONArray entry = new JSONArray();
+      entry.put(region.getUniqueId());
+      for (int i = 0; i < 3; i++) {
+        Identifier identifier = region.getIdentifier(i);
+        if (identifier == null) {
+          break;
+        }
+        entry.put(identifier.toString());
+      }
+      array.put(entry);
+    }
+    return array.toString();
+  }
+}
@@ -0,0 +1,322 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Proximity rules evaluated on every ranging cycle, so only firings have to reach Dart.
+ *
+ * A rule selects either one beacon by identity, or counts the beacons of a region
+ * ({@code minCount}), with optional distance and RSSI thresholds. It fires once its
+ * condition held for {@code dwellMillis}, and again while it keeps holding, or on the
+ * next episode, only after {@code cooldownMillis}.
+ *
+ * Rules are compiled into an index by beacon identity and by region identifier, so a
+ * cycle only looks at the rules its beacons and region can match. Rules without a
+ * region count the beacons of the last cycle of every region together, since each
+ * region of a cycle is delivered on its own.
+ *
+ * A beacon not seen for two ranging cycles starts the dwell of its rules over, and a
+ * region not ranged for as long stops counting, so the scan periods in effect have to
+ * be given with {@link #setCycleMillis(long)}.
+ */
+class FlutterBeaconRules {
+  // Least gap tolerated, for cycles delivered late with the default foreground period.
+  static final long MIN_ABSENCE_MILLIS = 3000;
+
+  private long absenceMillis = MIN_ABSENCE_MILLIS;
+
+  private Map<String, List<Rule>> byIdentity = new HashMap<>();
+  private Map<String, List<Rule>> countByRegion = new HashMap<>();
+  private List<Rule> countAnyRegion = new ArrayList<>();
+  // Beacons of the last cycle by region identifier, then by identity, for countAnyRegion.
+  private final Map<String, Map<String, Beacon>> lastCycles = new HashMap<>();
+  private final Map<String, Long> lastCycleAt = new HashMap<>();
+
+  /**
+   * Replace the registered rules.
+   *
+   * @param arguments list of {id, identity, region, maxDistance, minRssi, minCount,
+   *                  dwellMillis, cooldownMillis}.
+   * @return the number of rules, or -1 when a rule is not valid.
+   */
+  @SuppressWarnings("rawtypes")
+  synchronized int setRules(Object arguments) {
+    if (!(arguments instanceof List)) {
+      return -1;
+    }
+
+    Map<String, List<Rule>> identities = new HashMap<>();
+    Map<String, List<Rule>> regions = new HashMap<>();
+    List<Rule> anyRegion = new ArrayList<>();
+    for (Object object : (List) arguments) {
+      if (!(object instanceof Map)) {
+        return -1;
+      }
+      Rule rule = Rule.from((Map) object);
+      if (rule == null) {
+        return -1;
+      }
+
+      if (rule.identity != null) {
+        add(identities, rule.identity, rule);
+      } else if (rule.region != null) {
+        add(regions, rule.region, rule);
+      } else {
+        anyRegion.add(rule);
+      }
+    }
+
+    byIdentity = identities;
+    countByRegion = regions;
+    countAnyRegion = anyRegion;
+    lastCycles.clear();
+    lastCycleAt.clear();
+    return ((List) arguments).size();
+  }
+
+  /**
+   * @param cycleMillis time from one ranging cycle to the next: the scan period plus
+   *                    the between scan period of the mode in effect.
+   */
+  synchronized void setCycleMillis(long cycleMillis) {
+    absenceMillis = Math.max(MIN_ABSENCE_MILLIS, 2 * cycleMillis);
+  }
+
+  synchronized boolean isEmpty() {
+    return byIdentity.isEmpty() && countByRegion.isEmpty() && countAnyRegion.isEmpty();
+  }
+
+  synchronized void reset() {
+    for (List<Rule> rules : byIdentity.values()) {
+      for (Rule rule : rules) {
+        rule.reset();
+      }
+    }
+    for (List<Rule> rules : countByRegion.values()) {
+      for (Rule rule : rules) {
+        rule.reset();
+      }
+    }
+    for (Rule rule : countAnyRegion) {
+      rule.reset();
+    }
+    lastCycles.clear();
+    lastCycleAt.clear();
+  }
+
+  /**
+   * @return the firings of this cycle, usually empty.
+   */
+  synchronized List<Map<String, Object>> evaluate(Collection<Beacon> beacons, Region region, long now) {
+    List<Map<String, Object>> firings = Collections.emptyList();
+
+    if (!byIdentity.isEmpty()) {
+      for (Beacon beacon : beacons) {
+        List<Rule> rules = byIdentity.get(FlutterBeaconUtils.identityOf(beacon).toLowerCase(Locale.US));
+        if (rules == null) {
+          continue;
+        }
+        for (Rule rule : rules) {
+          if (rule.region != null && !rule.region.equals(region.getUniqueId())) {
+            continue;
+          }
+          if (rule.update(rule.matches(beacon), now, absenceMillis)) {
+            firings = add(firings, rule.firing(region, beacon, 1, now));
+          }
+        }
+      }
+    }
+
+    List<Rule> regionRules = countByRegion.get(region.getUniqueId());
+    if (regionRules != null) {
+      for (Rule rule : regionRules) {
+        firings = evaluateCount(firings, rule, beacons, region, now);
+      }
+    }
+    if (!countAnyRegion.isEmpty()) {
+      Collection<Beacon> allRegions = updateLastCycles(beacons, region, now);
+      for (Rule rule : countAnyRegion) {
+        firings = evaluateCount(firings, rule, allRegions, region, now);
+      }
+    }
+    return firings;
+  }
+
+  /**
+   * @return the beacons of the last cycle of every region still ranged, each once.
+   */
+  private Collection<Beacon> updateLastCycles(Collection<Beacon> beacons, Region region, long now) {
+    Map<String, Beacon> cycle = new HashMap<>();
+    for (Beacon beacon : beacons) {
+      cycle.put(FlutterBeaconUtils.identityOf(beacon), beacon);
+    }
+    lastCycles.put(region.getUniqueId(), cycle);
+    lastCycleAt.put(region.getUniqueId(), now);
+
+    Map<String, Beacon> all = new HashMap<>();
+    Iterator<Map.Entry<String, Map<String, Beacon>>> iterator = lastCycles.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Map<String, Beacon>> entry = iterator.next();
+      // Regions no longer ranged stop counting.
+      if (now - lastCycleAt.get(entry.getKey()) > absenceMillis) {
+        lastCycleAt.remove(entry.getKey());
+        iterator.remove();
+        continue;
+      }
+      all.putAll(entry.getValue());
+    }
+    return all.values();
+  }
+
+  private List<Map<String, Object>> evaluateCount(List<Map<String, Object>> firings, Rule rule,
+                                                  Collection<Beacon> beacons, Region region, long now) {
+    int count = 0;
+    for (Beacon beacon : beacons) {
+      if (rule.matches(beacon)) {
+        count++;
+      }
+    }
+    if (rule.update(count >= rule.minCount, now, absenceMillis)) {
+      return add(firings, rule.firing(region, null, count, now));
+    }
+    return firings;
+  }
+
+  private static List<Map<String, Object>> add(List<Map<String, Object>> firings, Map<String, Object> firing) {
+    if (firings.isEmpty()) {
+      firings = new ArrayList<>();
+    }
+    firings.add(firing);
+    return firings;
+  }
+
+  private static void add(Map<String, List<Rule>> index, String key, Rule rule) {
+    List<Rule> rules = index.get(key);
+    if (rules == null) {
+      rules = new ArrayList<>();
+      index.put(key, rules);
+    }
+    rules.add(rule);
+  }
+
+  private static class Rule {
+    final String id;
+    final String identity;
+    final String region;
+    final double maxDistance;
+    final int minRssi;
+    final int minCount;
+    final long dwellMillis;
+    final long cooldownMillis;
+
+    long satisfiedSince = -1;
+    long lastSatisfied = -1;
+    long lastFired = -1;
+
+    Rule(String id, String identity, String region, double maxDistance, int minRssi, int minCount,
+         long dwellMillis, long cooldownMillis) {
+      this.id = id;
+      this.identity = identity;
+      this.region = region;
+      this.maxDistance = maxDistance;
+      this.minRssi = minRssi;
+      this.minCount = minCount;
+      this.dwellMillis = dwellMillis;
+      this.cooldownMillis = cooldownMillis;
+    }
+
+    @SuppressWarnings("rawtypes")
+    static Rule from(Map map) {
+      Object id = map.get("id");
+      Object identity = map.get("identity");
+      Object region = map.get("region");
+      if (!(id instanceof String)) {
+        return null;
+      }
+      if (identity != null && !(identity instanceof String) || region != null && !(region instanceof String)) {
+        return null;
+      }
+
+      return new Rule(
+          (String) id,
+          identity == null ? null : ((String) identity).toLowerCase(Locale.US),
+          (String) region,
+          map.get("maxDistance") instanceof Number ? ((Number) map.get("maxDistance")).doubleValue() : Double.MAX_VALUE,
+          map.get("minRssi") instanceof Number ? ((Number) map.get("minRssi")).intValue() : Integer.MIN_VALUE,
+          map.get("minCount") instanceof Number ? Math.max(1, ((Number) map.get("minCount")).intValue()) : 1,
+          map.get("dwellMillis") instanceof Number ? ((Number) map.get("dwellMillis")).longValue() : 0,
+          map.get("cooldownMillis") instanceof Number ? ((Number) map.get("cooldownMillis")).longValue() : 0
+      );
+    }
+
+    boolean matches(Beacon beacon) {
+      if (beacon.getRssi() < minRssi) {
+        return false;
+      }
+      if (maxDistance == Double.MAX_VALUE) {
+        return true;
+      }
+      double distance = beacon.getDistance();
+      return distance >= 0 && distance <= maxDistance;
+    }
+
+    /**
+     * @param absenceMillis gap after which the condition counts as interrupted.
+     * @return true when the rule fires.
+     */
+    boolean update(boolean satisfied, long now, long absenceMillis) {
+      if (!satisfied) {
+        satisfiedSince = -1;
+        return false;
+      }
+
+      boolean repeat = satisfiedSince >= 0 && now - lastSatisfied <= absenceMillis;
+      if (!repeat) {
+        satisfiedSince = now;
+      }
+      lastSatisfied = now;
+      if (now - satisfiedSince < dwellMillis) {
+        return false;
+      }
+
+      boolean firedThisEpisode = lastFired >= satisfiedSince;
+      if (firedThisEpisode ? cooldownMillis <= 0 || now - lastFired < cooldownMillis
+          : lastFired >= 0 && now - lastFired < cooldownMillis) {
+        return false;
+      }
+      lastFired = now;
+      return true;
+    }
+
+    void reset() {
+      satisfiedSince = -1;
+      lastSatisfied = -1;
+      lastFired = -1;
+    }
+
+    Map<String, Object> firing(Region region, Beacon beacon, int count, long now) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("rule", id);
+      map.put("region", FlutterBeaconUtils.regionToMap(region));
+      map.put("count", count);
+      map.put("dwellMillis", now - satisfiedSince);
+      map.put("timestamp", now);
+      if (beacon != null) {
+        map.put("identity", FlutterBeaconUtils.identityOf(beacon));
+        map.put("rssi", beacon.getRssi());
+        map.put("distance", beacon.getDistance());
+      }
+      return map;
+    }
+  }
+}
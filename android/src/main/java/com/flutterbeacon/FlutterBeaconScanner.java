@@ -1,40 +1,93 @@
 package com.flutterbeacon;
 
-import android.app.Activity;
+import android.bluetooth.BluetoothAdapter;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.altbeacon.beacon.Beacon;
 import org.altbeacon.beacon.BeaconConsumer;
+import org.altbeacon.beacon.BeaconManager;
+import org.altbeacon.beacon.BeaconParser;
 import org.altbeacon.beacon.MonitorNotifier;
 import org.altbeacon.beacon.RangeNotifier;
 import org.altbeacon.beacon.Region;
 
-import java.lang.ref.WeakReference;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.flutter.plugin.common.EventChannel;
 
 class FlutterBeaconScanner {
   private static final String TAG = FlutterBeaconScanner.class.getSimpleName();
+  private static final int MAX_MISSED_TRANSITIONS = 64;
+  // Adapters often bounce between states while toggling, wait for STATE_ON to settle.
+  private static final long RESUME_DELAY_MILLIS = 1000;
+  private static final String CONSUMER_RANGING = "ranging";
+  private static final String CONSUMER_POSITIONING = "positioning";
+  private static final String CONSUMER_RULES = "rules";
+  private static final String CONSUMER_EXPORT = "export";
   private final FlutterBeaconPlugin plugin;
-  private final WeakReference<Activity> activity;
+  private final Context context;
 
   private EventChannel.EventSink eventSinkRanging;
   private EventChannel.EventSink eventSinkMonitoring;
-  private List<Region> regionRanging;
+  private EventChannel.EventSink eventSinkPositioning;
+  private EventChannel.EventSink eventSinkRules;
+  // Regions asked for by each ranging consumer; the union of them is what is ranged.
+  private final Map<String, List<Region>> rangingConsumers = new LinkedHashMap<>();
+  private List<Region> regionRanging = new ArrayList<>();
   private List<Region> regionMonitoring;
+  private final FlutterBeaconTelemetry telemetry = new FlutterBeaconTelemetry();
+  private final FlutterBeaconIdentityResolver identityResolver = new FlutterBeaconIdentityResolver();
+  private final FlutterBeaconPositioning positioning = new FlutterBeaconPositioning();
+  private final FlutterBeaconRules rules = new FlutterBeaconRules();
 
-  public FlutterBeaconScanner(FlutterBeaconPlugin plugin, Activity activity) {
+  // Set in batched scanning mode, where the BLE scanner replaces the BeaconManager
+  // scans; the service binding is kept for switching back.
+  private FlutterBeaconBatchScanner batchScanner;
+  private FlutterBeaconBatchScanner.LeScanner leScanner;
+
+  // Ranging consumer shipping sightings to a gateway, next to the Dart sinks.
+  private FlutterBeaconExporter exporter;
+
+  // Set between bind() and onBeaconServiceConnect(); ranging and monitoring requested
+  // meanwhile are started once the service connects.
+  private boolean binding;
+  private boolean serviceConnected;
+  // Monitoring restored from the region store, running without a Dart listener.
+  private boolean monitoringResumed;
+
+  // Set while the bluetooth adapter is off; regions and sinks are kept so scanning
+  // resumes as it was, without binding the service again.
+  private boolean paused;
+  private long pausedAt;
+  private Handler handler;
+  // Whether the scan energy was last accounted with the background periods.
+  private boolean backgroundMode;
+
+  // Latest transition per region and event while nobody listens, replayed in
+  // order once the monitoring stream is listened to again.
+  private final Map<String, Map<String, Object>> missedTransitions = new LinkedHashMap<>();
+
+  public FlutterBeaconScanner(FlutterBeaconPlugin plugin, Context context) {
     this.plugin = plugin;
-    this.activity = new WeakReference<>(activity);
+    this.context = context;
   }
 
   final EventChannel.StreamHandler rangingStreamHandler = new EventChannel.StreamHandler() {
@@ -47,45 +100,275 @@ class FlutterBeaconScanner {
     @Override
     public void onCancel(Object o) {
       Log.d("RANGING", "Stop ranging = " + o);
-      stopRanging();
+      eventSinkRanging = null;
+      removeRangingConsumer(CONSUMER_RANGING);
     }
   };
 
-  @SuppressWarnings("rawtypes")
-  private void startRanging(Object o, EventChannel.EventSink eventSink) {
-    if (o instanceof List) {
-      List list = (List) o;
-      if (regionRanging == null) {
-        regionRanging = new ArrayList<>();
-      } else {
-        regionRanging.clear();
+  final EventChannel.StreamHandler positioningStreamHandler = new EventChannel.StreamHandler() {
+    @Override
+    public void onListen(Object o, EventChannel.EventSink eventSink) {
+      Log.d("RANGING", "Start positioning = " + o);
+      if (!positioning.isEnabled()) {
+        eventSink.error("Beacon", "no beacon coordinates set for positioning", null);
+        return;
       }
-      for (Object object : list) {
-        if (object instanceof Map) {
-          Map map = (Map) object;
-          Region region = FlutterBeaconUtils.regionFromMap(map);
-          if (region != null) {
-            regionRanging.add(region);
-          }
+      List<Region> regions = regionsFromArguments(o);
+      if (regions == null) {
+        eventSink.error("Beacon", "invalid region for ranging", null);
+        return;
+      }
+      eventSinkPositioning = eventSink;
+      positioning.reset();
+      setRangingConsumer(CONSUMER_POSITIONING, regions);
+    }
+
+    @Override
+    public void onCancel(Object o) {
+      Log.d("RANGING", "Stop positioning = " + o);
+      eventSinkPositioning = null;
+      removeRangingConsumer(CONSUMER_POSITIONING);
+    }
+  };
+
+  final EventChannel.StreamHandler rulesStreamHandler = new EventChannel.StreamHandler() {
+    @Override
+    public void onListen(Object o, EventChannel.EventSink eventSink) {
+      Log.d("RANGING", "Start rules = " + o);
+      List<Region> regions = regionsFromArguments(o);
+      if (regions == null) {
+        eventSink.error("Beacon", "invalid region for ranging", null);
+        return;
+      }
+      eventSinkRules = eventSink;
+      rules.reset();
+      setRangingConsumer(CONSUMER_RULES, regions);
+    }
+
+    @Override
+    public void onCancel(Object o) {
+      Log.d("RANGING", "Stop rules = " + o);
+      eventSinkRules = null;
+      removeRangingConsumer(CONSUMER_RULES);
+    }
+  };
+
+  // Ranging, positioning, rules and the exporter all feed from the same ranging cycles.
+  private boolean isRangingNeeded() {
+    return eventSinkRanging != null || eventSinkPositioning != null || eventSinkRules != null
+        || exporter != null;
+  }
+
+  private void removeRangingConsumer(String consumer) {
+    if (rangingConsumers.remove(consumer) == null) {
+      return;
+    }
+    if (!isRangingNeeded()) {
+      stopRanging();
+    } else {
+      updateRangedRegions();
+    }
+  }
+
+  private void setRangingConsumer(String consumer, List<Region> regions) {
+    rangingConsumers.put(consumer, regions);
+    updateRangedRegions();
+  }
+
+  /**
+   * Range the union of the consumers' regions, stopping the ones no consumer asks for
+   * anymore. Regions are told apart by their identifier, as in the BeaconManager.
+   */
+  private void updateRangedRegions() {
+    List<Region> previous = regionRanging;
+    Map<String, Region> union = new LinkedHashMap<>();
+    for (List<Region> regions : rangingConsumers.values()) {
+      for (Region region : regions) {
+        if (!union.containsKey(region.getUniqueId())) {
+          union.put(region.getUniqueId(), region);
         }
       }
+    }
+    regionRanging = new ArrayList<>(union.values());
+    plugin.getMetrics().setRangingRegions(regionRanging.size());
+
+    List<Region> dropped = new ArrayList<>();
+    for (Region region : previous) {
+      Region kept = union.get(region.getUniqueId());
+      if (kept == null || !kept.hasSameIdentifiers(region)) {
+        dropped.add(region);
+      }
+    }
+    stopManagerRanging(dropped);
+
+    if (plugin.getBeaconManager() != null && !serviceConnected) {
+      bind();
     } else {
+      startRanging();
+    }
+  }
+
+  // Whether the consumer asked for the region the cycle comes from.
+  private boolean isRangedFor(String consumer, Region region) {
+    List<Region> regions = rangingConsumers.get(consumer);
+    if (regions == null) {
+      return false;
+    }
+    for (Region candidate : regions) {
+      if (candidate.getUniqueId().equals(region.getUniqueId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isMonitoringNeeded() {
+    return eventSinkMonitoring != null || monitoringResumed;
+  }
+
+  private void startRanging(Object o, EventChannel.EventSink eventSink) {
+    List<Region> regions = regionsFromArguments(o);
+    if (regions == null) {
       eventSink.error("Beacon", "invalid region for ranging", null);
       return;
     }
     eventSinkRanging = eventSink;
-    if (plugin.getBeaconManager() != null && !plugin.getBeaconManager().isBound(beaconConsumer)) {
-      plugin.getBeaconManager().bind(beaconConsumer);
-    } else {
-      startRanging();
+    setRangingConsumer(CONSUMER_RANGING, regions);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static List<Region> regionsFromArguments(Object o) {
+    if (!(o instanceof List)) {
+      return null;
     }
+    List<Region> regions = new ArrayList<>();
+    for (Object object : (List) o) {
+      if (object instanceof Map) {
+        Region region = FlutterBeaconUtils.regionFromMap((Map) object);
+        if (region != null) {
+          regions.add(region);
+        }
+      }
+    }
+    return regions;
+  }
+
+  /**
+   * Range the given regions and export the sightings natively, see
+   * {@link FlutterBeaconExporter} for the other arguments.
+   *
+   * @param arguments {regions, host, port} or {regions, path}.
+   */
+  @SuppressWarnings("rawtypes")
+  boolean startExport(Object arguments) {
+    if (!(arguments instanceof Map) || !(((Map) arguments).get("regions") instanceof List)) {
+      return false;
+    }
+
+    FlutterBeaconExporter started;
+    try {
+      started = new FlutterBeaconExporter(exportSpoolDirectory(), arguments, null);
+    } catch (IllegalArgumentException e) {
+      Log.e(TAG, "Export not started: " + e.getMessage());
+      return false;
+    }
+    // The old worker keeps sending what it has left; the new one waits for it before
+    // touching the shared spool.
+    FlutterBeaconExporter previous = exporter;
+    if (previous != null) {
+      previous.stop(0);
+    }
+    exporter = started;
+    exporter.start(previous);
+    setRangingConsumer(CONSUMER_EXPORT, regionsFromArguments(((Map) arguments).get("regions")));
+    return true;
+  }
+
+  void stopExport() {
+    if (exporter == null) {
+      return;
+    }
+    exporter.stop(0);
+    exporter = null;
+    removeRangingConsumer(CONSUMER_EXPORT);
+  }
+
+  Map<String, Object> getExportStats() {
+    if (exporter == null) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("running", false);
+      return map;
+    }
+    return exporter.toMap();
+  }
+
+  private File exportSpoolDirectory() {
+    File parent = context != null ? context.getCacheDir() : new File(System.getProperty("java.io.tmpdir"));
+    return new File(parent, "flutter_beacon_export");
+  }
+
+  FlutterBeaconIdentityResolver getIdentityResolver() {
+    return identityResolver;
+  }
+
+  FlutterBeaconPositioning getPositioning() {
+    return positioning;
+  }
+
+  FlutterBeaconRules getRules() {
+    return rules;
+  }
+
+  void bind() {
+    if (binding) {
+      return;
+    }
+    binding = true;
+    plugin.getMetrics().onBindStarted();
+    plugin.getBeaconManager().bind(beaconConsumer);
+  }
+
+  boolean isBinding() {
+    return binding;
+  }
+
+  boolean isPaused() {
+    return paused;
+  }
+
+  void unbind() {
+    binding = false;
+    serviceConnected = false;
+    long startedAt = SystemClock.elapsedRealtime();
+    plugin.getBeaconManager().unbind(beaconConsumer);
+    plugin.getMetrics().onUnbind(SystemClock.elapsedRealtime() - startedAt);
+    updateScanEnergy();
+  }
+
+  /**
+   * Stop what keeps running on its own once the engine is gone.
+   */
+  void release() {
+    if (batchScanner != null) {
+      batchScanner.stop();
+      batchScanner = null;
+    }
+    stopExport();
   }
 
   void startRanging() {
-    if (regionRanging == null || regionRanging.isEmpty()) {
+    if (regionRanging.isEmpty()) {
       Log.e("RANGING", "Region ranging is null or empty. Ranging not started.");
       return;
     }
+    if (paused) {
+      Log.d("RANGING", "Bluetooth is off, ranging starts when it is back on.");
+      return;
+    }
+    if (batchScanner != null) {
+      restartBatch();
+      return;
+    }
 
     try {
       if (plugin.getBeaconManager() != null) {
@@ -100,10 +383,11 @@ class FlutterBeaconScanner {
         eventSinkRanging.error("Beacon", e.getLocalizedMessage(), null);
       }
     }
+    updateScanEnergy();
   }
 
   void stopRanging() {
-    if (regionRanging != null && !regionRanging.isEmpty()) {
+    if (!regionRanging.isEmpty() && plugin.getBeaconManager() != null) {
       try {
         for (Region region : regionRanging) {
           plugin.getBeaconManager().stopRangingBeaconsInRegion(region);
@@ -113,21 +397,88 @@ class FlutterBeaconScanner {
       } catch (RemoteException ignored) {
       }
     }
+    rangingConsumers.clear();
+    regionRanging = new ArrayList<>();
+    plugin.getMetrics().setRangingRegions(0);
+    telemetry.clear();
+    identityResolver.clear();
+    if (exporter != null) {
+      exporter.stop(0);
+      exporter = null;
+    }
     eventSinkRanging = null;
+    eventSinkPositioning = null;
+    eventSinkRules = null;
+    if (batchScanner != null) {
+      restartBatch();
+    }
+    updateScanEnergy();
   }
 
-  private final RangeNotifier rangeNotifier = new RangeNotifier() {
+  final RangeNotifier rangeNotifier = new RangeNotifier() {
     @Override
     public void didRangeBeaconsInRegion(Collection<Beacon> collection, Region region) {
-      if (eventSinkRanging != null) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("region", FlutterBeaconUtils.regionToMap(region));
-        map.put("beacons", FlutterBeaconUtils.beaconsToArray(new ArrayList<>(collection)));
-        eventSinkRanging.success(map);
-      }
+      plugin.getMetrics().onWakeup();
+      onScanModeMaybeChanged();
+      onRangingCycle(collection, region, System.currentTimeMillis(), false);
     }
   };
 
+  /**
+   * @param replayed true when the cycle comes from a scan batch, in which case the
+   *                 original timestamp is sent along with the beacons.
+   */
+  private void onRangingCycle(Collection<Beacon> collection, Region region, long timestamp, boolean replayed) {
+    FlutterBeaconCalibration calibration = plugin.getCalibration();
+    if (calibration != null && calibration.isCollecting()) {
+      calibration.collect(collection);
+    }
+
+    if (exporter != null && isRangedFor(CONSUMER_EXPORT, region)) {
+      exporter.onRangingCycle(collection, region, timestamp);
+    }
+
+    if (eventSinkRules != null && isRangedFor(CONSUMER_RULES, region)) {
+      rules.setCycleMillis(getCycleMillis());
+      for (Map<String, Object> firing : rules.evaluate(collection, region, timestamp)) {
+        eventSinkRules.success(firing);
+      }
+    }
+
+    if (eventSinkPositioning != null && isRangedFor(CONSUMER_POSITIONING, region)) {
+      Map<String, Object> position = positioning.estimate(collection, region.getUniqueId(),
+          rangingConsumers.get(CONSUMER_POSITIONING).size(), timestamp);
+      if (position != null) {
+        eventSinkPositioning.success(position);
+      }
+    }
+
+    if (eventSinkRanging != null && isRangedFor(CONSUMER_RANGING, region)) {
+      long startedAt = System.nanoTime();
+      Map<String, Object> map = new HashMap<>();
+      map.put("region", FlutterBeaconUtils.regionToMap(region));
+      if (replayed) {
+        map.put("timestamp", timestamp);
+      }
+      if (identityResolver.isEnabled()) {
+        Map<String, Beacon> stitched = identityResolver.resolve(collection, timestamp);
+        List<Map<String, Object>> beacons = FlutterBeaconUtils.beaconsToArray(new ArrayList<>(stitched.values()), telemetry);
+        int i = 0;
+        for (String logicalId : stitched.keySet()) {
+          beacons.get(i++).put("logicalId", logicalId);
+        }
+        map.put("beacons", beacons);
+      } else {
+        map.put("beacons", FlutterBeaconUtils.beaconsToArray(new ArrayList<>(collection), telemetry));
+      }
+      long elapsed = System.nanoTime() - startedAt;
+      plugin.getMetrics().onRangingCycle(collection.size(), elapsed, FlutterBeaconMetrics.estimatePayloadBytes(map));
+      eventSinkRanging.success(map);
+    } else if (!isRangingNeeded()) {
+      plugin.getMetrics().onEventDropped();
+    }
+  }
+
   final EventChannel.StreamHandler monitoringStreamHandler = new EventChannel.StreamHandler() {
     @Override
     public void onListen(Object o, EventChannel.EventSink eventSink) {
@@ -145,37 +496,93 @@ class FlutterBeaconScanner {
     Log.d(TAG, "START MONITORING=" + o);
     if (o instanceof List) {
       List list = (List) o;
-      if (regionMonitoring == null) {
-        regionMonitoring = new ArrayList<>();
-      } else {
-        regionMonitoring.clear();
-      }
+      List<Region> regions = new ArrayList<>();
       for (Object object : list) {
         if (object instanceof Map) {
           Map map = (Map) object;
           Region region = FlutterBeaconUtils.regionFromMap(map);
-          regionMonitoring.add(region);
+          regions.add(region);
         }
       }
+      // Regions resumed from the store, or listened to before, that Dart left out.
+      stopManagerMonitoring(droppedRegions(regionMonitoring, regions));
+      regionMonitoring = regions;
     } else {
       eventSink.error("Beacon", "invalid region for monitoring", null);
       return;
     }
     eventSinkMonitoring = eventSink;
-    if (plugin.getBeaconManager() != null && !plugin.getBeaconManager().isBound(beaconConsumer)) {
-      plugin.getBeaconManager().bind(beaconConsumer);
+    monitoringResumed = false;
+    if (plugin.getRegionStore() != null) {
+      plugin.getRegionStore().saveMonitoring(regionMonitoring);
+    }
+    replayMissedTransitions();
+    plugin.getMetrics().setMonitoringRegions(regionMonitoring.size());
+    if (plugin.getBeaconManager() != null && !serviceConnected) {
+      bind();
+    } else {
+      startMonitoring();
+    }
+  }
+
+  /**
+   * Monitor the given regions with no listener attached yet; transitions are kept
+   * until the monitoring stream is listened to.
+   */
+  void resumeMonitoring(List<Region> regions) {
+    regionMonitoring = new ArrayList<>(regions);
+    monitoringResumed = true;
+    plugin.getMetrics().setMonitoringRegions(regionMonitoring.size());
+    if (plugin.getBeaconManager() != null && !serviceConnected) {
+      bind();
     } else {
       startMonitoring();
     }
   }
 
+  @SuppressWarnings("rawtypes")
+  private void replayMissedTransitions() {
+    if (missedTransitions.isEmpty()) {
+      return;
+    }
+
+    List<Map<String, Object>> events = new ArrayList<>(missedTransitions.values());
+    missedTransitions.clear();
+    for (Map<String, Object> event : events) {
+      Map region = (Map) event.get("region");
+      if (isMonitored((String) region.get("identifier"))) {
+        eventSinkMonitoring.success(event);
+      }
+    }
+  }
+
+  private boolean isMonitored(String identifier) {
+    for (Region region : regionMonitoring) {
+      if (region != null && region.getUniqueId().equals(identifier)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   void startMonitoring() {
     if (regionMonitoring == null || regionMonitoring.isEmpty()) {
       Log.e("MONITORING", "Region monitoring is null or empty. Monitoring not started.");
       return;
     }
+    if (paused) {
+      Log.d("MONITORING", "Bluetooth is off, monitoring starts when it is back on.");
+      return;
+    }
+    if (batchScanner != null) {
+      restartBatch();
+      return;
+    }
 
     try {
+      if (plugin.getBeaconManager() == null) {
+        return;
+      }
       plugin.getBeaconManager().removeAllMonitorNotifiers();
       plugin.getBeaconManager().addMonitorNotifier(monitorNotifier);
       for (Region region : regionMonitoring) {
@@ -186,10 +593,11 @@ class FlutterBeaconScanner {
         eventSinkMonitoring.error("Beacon", e.getLocalizedMessage(), null);
       }
     }
+    updateScanEnergy();
   }
 
   void stopMonitoring() {
-    if (regionMonitoring != null && !regionMonitoring.isEmpty()) {
+    if (regionMonitoring != null && !regionMonitoring.isEmpty() && plugin.getBeaconManager() != null) {
       try {
         for (Region region : regionMonitoring) {
           plugin.getBeaconManager().stopMonitoringBeaconsInRegion(region);
@@ -199,37 +607,354 @@ class FlutterBeaconScanner {
       }
     }
     eventSinkMonitoring = null;
+    monitoringResumed = false;
+    missedTransitions.clear();
+    if (plugin.getRegionStore() != null) {
+      plugin.getRegionStore().saveMonitoring(null);
+    }
+    if (batchScanner != null) {
+      restartBatch();
+    }
+    updateScanEnergy();
   }
 
-  private final MonitorNotifier monitorNotifier = new MonitorNotifier() {
+  final MonitorNotifier monitorNotifier = new MonitorNotifier() {
     @Override
     public void didEnterRegion(Region region) {
-      if (eventSinkMonitoring != null) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("event", "didEnterRegion");
-        map.put("region", FlutterBeaconUtils.regionToMap(region));
-        eventSinkMonitoring.success(map);
-      }
+      plugin.getMetrics().onWakeup();
+      onScanModeMaybeChanged();
+      sendMonitoringEvent("didEnterRegion", null, region);
     }
 
     @Override
     public void didExitRegion(Region region) {
-      if (eventSinkMonitoring != null) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("event", "didExitRegion");
-        map.put("region", FlutterBeaconUtils.regionToMap(region));
-        eventSinkMonitoring.success(map);
-      }
+      plugin.getMetrics().onWakeup();
+      onScanModeMaybeChanged();
+      sendMonitoringEvent("didExitRegion", null, region);
     }
 
     @Override
     public void didDetermineStateForRegion(int state, Region region) {
-      if (eventSinkMonitoring != null) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("event", "didDetermineStateForRegion");
-        map.put("state", FlutterBeaconUtils.parseState(state));
-        map.put("region", FlutterBeaconUtils.regionToMap(region));
-        eventSinkMonitoring.success(map);
+      plugin.getMetrics().onWakeup();
+      onScanModeMaybeChanged();
+      sendMonitoringEvent("didDetermineStateForRegion", FlutterBeaconUtils.parseState(state), region);
+    }
+  };
+
+  private void sendMonitoringEvent(String event, String state, Region region) {
+    sendMonitoringEvent(event, state, region, -1);
+  }
+
+  private void sendMonitoringEvent(String event, String state, Region region, long timestamp) {
+    if (!isMonitoringNeeded()) {
+      plugin.getMetrics().onEventDropped();
+      return;
+    }
+
+    long startedAt = System.nanoTime();
+    Map<String, Object> map = new HashMap<>();
+    map.put("event", event);
+    if (state != null) {
+      map.put("state", state);
+    }
+    map.put("region", FlutterBeaconUtils.regionToMap(region));
+    if (timestamp >= 0) {
+      map.put("timestamp", timestamp);
+    }
+    long elapsed = System.nanoTime() - startedAt;
+    plugin.getMetrics().onMonitoringEvent(elapsed, FlutterBeaconMetrics.estimatePayloadBytes(map));
+    if (eventSinkMonitoring == null) {
+      keepMissedTransition(region.getUniqueId() + "/" + event, map);
+      return;
+    }
+    eventSinkMonitoring.success(map);
+  }
+
+  private void keepMissedTransition(String key, Map<String, Object> map) {
+    // Re-inserted so the replay keeps the order the transitions happened in.
+    missedTransitions.remove(key);
+    missedTransitions.put(key, map);
+    if (missedTransitions.size() > MAX_MISSED_TRANSITIONS) {
+      Iterator<String> oldest = missedTransitions.keySet().iterator();
+      oldest.next();
+      oldest.remove();
+      plugin.getMetrics().onEventDropped();
+    }
+  }
+
+  void onBluetoothStateChanged(int state) {
+    if (handler == null) {
+      handler = new Handler(Looper.getMainLooper());
+    }
+
+    switch (state) {
+      case BluetoothAdapter.STATE_TURNING_OFF:
+      case BluetoothAdapter.STATE_OFF:
+        // Cancels a resume still waiting, so a quick off/on/off stays one pause.
+        handler.removeCallbacks(resume);
+        pause();
+        break;
+      case BluetoothAdapter.STATE_ON:
+        if (paused) {
+          handler.removeCallbacks(resume);
+          handler.postDelayed(resume, RESUME_DELAY_MILLIS);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void pause() {
+    if (paused) {
+      return;
+    }
+    paused = true;
+    pausedAt = SystemClock.elapsedRealtime();
+    plugin.getMetrics().onScanPaused();
+
+    if (batchScanner != null) {
+      batchScanner.stop();
+    } else {
+      stopManagerScans();
+    }
+    updateScanEnergy();
+  }
+
+  // Stop ranging regions left by every consumer; batched scanning restarts with the union.
+  private void stopManagerRanging(List<Region> regions) {
+    if (regions.isEmpty() || plugin.getBeaconManager() == null || !serviceConnected
+        || batchScanner != null || paused) {
+      return;
+    }
+    try {
+      for (Region region : regions) {
+        plugin.getBeaconManager().stopRangingBeaconsInRegion(region);
+      }
+    } catch (RemoteException e) {
+      Log.e(TAG, "Stopping ranging: " + e);
+    }
+  }
+
+  private void stopManagerMonitoring(List<Region> regions) {
+    if (regions.isEmpty() || plugin.getBeaconManager() == null || !serviceConnected
+        || batchScanner != null || paused) {
+      return;
+    }
+    try {
+      for (Region region : regions) {
+        plugin.getBeaconManager().stopMonitoringBeaconsInRegion(region);
+      }
+    } catch (RemoteException e) {
+      Log.e(TAG, "Stopping monitoring: " + e);
+    }
+  }
+
+  // Regions of before without a region of the same unique id now.
+  private static List<Region> droppedRegions(List<Region> before, List<Region> now) {
+    List<Region> dropped = new ArrayList<>();
+    if (before == null) {
+      return dropped;
+    }
+    Set<String> kept = new HashSet<>();
+    for (Region region : now) {
+      if (region != null) {
+        kept.add(region.getUniqueId());
+      }
+    }
+    for (Region region : before) {
+      if (region != null && !kept.contains(region.getUniqueId())) {
+        dropped.add(region);
+      }
+    }
+    return dropped;
+  }
+
+  // Stop the regions in the BeaconManager, keeping regions, sinks and binding.
+  private void stopManagerScans() {
+    if (plugin.getBeaconManager() == null || !serviceConnected) {
+      return;
+    }
+    try {
+      if (isRangingNeeded()) {
+        for (Region region : regionRanging) {
+          plugin.getBeaconManager().stopRangingBeaconsInRegion(region);
+        }
+      }
+      if (regionMonitoring != null && isMonitoringNeeded()) {
+        for (Region region : regionMonitoring) {
+          plugin.getBeaconManager().stopMonitoringBeaconsInRegion(region);
+        }
+      }
+    } catch (RemoteException e) {
+      Log.e(TAG, "Stopping scan: " + e);
+    }
+  }
+
+  /**
+   * Switch to batched scanning with {reportDelayMillis, cycleMillis, exitMillis}, or back
+   * to the BeaconManager scans when the arguments are null.
+   */
+  boolean setBatchedScanning(Object arguments) {
+    if (arguments == null) {
+      if (batchScanner != null) {
+        batchScanner.stop();
+        batchScanner = null;
+        if (isRangingNeeded() && serviceConnected) {
+          startRanging();
+        }
+        if (isMonitoringNeeded() && serviceConnected) {
+          startMonitoring();
+        }
+        updateScanEnergy();
+      }
+      return true;
+    }
+    if (leScanner == null) {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+        return false;
+      }
+      leScanner = new FlutterBeaconLeScanner();
+    }
+
+    if (batchScanner != null) {
+      batchScanner.stop();
+    } else if (!paused) {
+      stopManagerScans();
+    }
+    batchScanner = new FlutterBeaconBatchScanner(leScanner, batchListener, arguments);
+    restartBatch();
+    return true;
+  }
+
+  // Lets a fake scanner stand in for the platform one.
+  void setLeScanner(FlutterBeaconBatchScanner.LeScanner leScanner) {
+    this.leScanner = leScanner;
+  }
+
+  FlutterBeaconBatchScanner getBatchScanner() {
+    return batchScanner;
+  }
+
+  private void restartBatch() {
+    if (paused) {
+      return;
+    }
+
+    List<Region> ranging = isRangingNeeded() ? regionRanging : new ArrayList<Region>();
+    List<Region> monitoring = isMonitoringNeeded() && regionMonitoring != null ? regionMonitoring : new ArrayList<Region>();
+    if (ranging.isEmpty() && monitoring.isEmpty()) {
+      batchScanner.stop();
+      updateScanEnergy();
+      return;
+    }
+
+    List<BeaconParser> parsers = plugin.getBeaconManager() != null
+        ? plugin.getBeaconManager().getBeaconParsers()
+        : Collections.singletonList(FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON));
+    if (!batchScanner.start(parsers, ranging, monitoring)) {
+      Log.e(TAG, "Batched scanning could not be started");
+    }
+    updateScanEnergy();
+  }
+
+  /**
+   * Time from the start of one ranging cycle to the next, in the scan mode in effect.
+   */
+  long getCycleMillis() {
+    if (batchScanner != null) {
+      return batchScanner.getCycleMillis();
+    }
+    return scanPeriod() + betweenScanPeriod();
+  }
+
+  private boolean isBackgroundMode() {
+    BeaconManager beaconManager = plugin.getBeaconManager();
+    return beaconManager != null && beaconManager.getBackgroundMode();
+  }
+
+  /**
+   * The BeaconManager switches to its background periods on its own, so the duty cycle
+   * of the energy accounting follows on the first callback in the new mode.
+   */
+  private void onScanModeMaybeChanged() {
+    if (isBackgroundMode() != backgroundMode) {
+      updateScanEnergy();
+    }
+  }
+
+  // Scan period of the mode the BeaconManager is in.
+  private long scanPeriod() {
+    BeaconManager beaconManager = plugin.getBeaconManager();
+    if (beaconManager == null) {
+      return BeaconManager.DEFAULT_FOREGROUND_SCAN_PERIOD;
+    }
+    return beaconManager.getBackgroundMode()
+        ? beaconManager.getBackgroundScanPeriod() : beaconManager.getForegroundScanPeriod();
+  }
+
+  private long betweenScanPeriod() {
+    BeaconManager beaconManager = plugin.getBeaconManager();
+    if (beaconManager == null) {
+      return BeaconManager.DEFAULT_FOREGROUND_BETWEEN_SCAN_PERIOD;
+    }
+    return beaconManager.getBackgroundMode()
+        ? beaconManager.getBackgroundBetweenScanPeriod() : beaconManager.getForegroundBetweenScanPeriod();
+  }
+
+  // Tell the energy accounting whether the radio is scanning now, and how much of the time.
+  private void updateScanEnergy() {
+    boolean scanning;
+    double dutyCycle;
+    if (batchScanner != null) {
+      scanning = batchScanner.isRunning();
+      dutyCycle = FlutterBeaconEnergy.LOW_POWER_DUTY_CYCLE;
+    } else {
+      scanning = serviceConnected && (isRangingNeeded() || isMonitoringNeeded());
+      dutyCycle = (double) scanPeriod() / Math.max(1, scanPeriod() + betweenScanPeriod());
+    }
+    backgroundMode = isBackgroundMode();
+    plugin.getMetrics().getEnergy().setScanning(!paused && scanning, dutyCycle, SystemClock.elapsedRealtime());
+  }
+
+  private final FlutterBeaconBatchScanner.Listener batchListener = new FlutterBeaconBatchScanner.Listener() {
+    @Override
+    public void onBatchDelivered(int sightings) {
+      plugin.getMetrics().onWakeup();
+    }
+
+    @Override
+    public void onRangingCycle(List<Beacon> beacons, Region region, long timestamp) {
+      FlutterBeaconScanner.this.onRangingCycle(beacons, region, timestamp, true);
+    }
+
+    @Override
+    public void onMonitoringEvent(String event, String state, Region region, long timestamp) {
+      sendMonitoringEvent(event, state, region, timestamp);
+    }
+  };
+
+  // Posted RESUME_DELAY_MILLIS after the adapter is back on.
+  final Runnable resume = new Runnable() {
+    @Override
+    public void run() {
+      if (!paused) {
+        return;
+      }
+      paused = false;
+      long pausedMillis = SystemClock.elapsedRealtime() - pausedAt;
+      plugin.getMetrics().onScanResumed(pausedMillis);
+      Log.d(TAG, "Bluetooth back on after " + pausedMillis + "ms, resuming scan");
+
+      if (!serviceConnected && batchScanner == null) {
+        // Started from onBeaconServiceConnect.
+        return;
+      }
+      if (isRangingNeeded()) {
+        startRanging();
+      }
+      if (isMonitoringNeeded()) {
+        startMonitoring();
       }
     }
   };
@@ -237,28 +962,38 @@ class FlutterBeaconScanner {
   final BeaconConsumer beaconConsumer = new BeaconConsumer() {
     @Override
     public void onBeaconServiceConnect() {
+      binding = false;
+      serviceConnected = true;
+      plugin.getMetrics().onBindCompleted();
+      if (plugin.getCalibration() != null) {
+        // The service installs its own distance calculator when it starts.
+        plugin.getCalibration().apply();
+      }
       if (plugin.flutterResult != null) {
         plugin.flutterResult.success(true);
         plugin.flutterResult = null;
-      } else {
+      }
+      if (isRangingNeeded()) {
         startRanging();
+      }
+      if (isMonitoringNeeded()) {
         startMonitoring();
       }
     }
 
     @Override
     public Context getApplicationContext() {
-      return activity.get().getApplicationContext();
+      return context;
     }
 
     @Override
     public void unbindService(ServiceConnection serviceConnection) {
-      activity.get().unbindService(serviceConnection);
+      context.unbindService(serviceConnection);
     }
 
     @Override
     public boolean bindService(Intent intent, ServiceConnection serviceConnection, int i) {
-      return activity.get().bindService(intent, serviceConnection, i);
+      return context.bindService(intent, serviceConnection, i);
     }
   };
 }
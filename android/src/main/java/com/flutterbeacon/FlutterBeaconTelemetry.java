@@ -0,0 +1,71 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the Eddystone-TLM frames the library merges into Eddystone-UID beacons as
+ * extra data fields, and reports them only when battery, temperature or version change,
+ * or when the beacon has rebooted.
+ */
+class FlutterBeaconTelemetry {
+  private static final int MAX_TRACKED_BEACONS = 512;
+  private static final int TEMPERATURE_NOT_SUPPORTED = 0x8000;
+
+  private final Map<String, long[]> lastReported = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+      return size() > MAX_TRACKED_BEACONS;
+    }
+  };
+
+  /**
+   * @return the telemetry of the beacon, or null when it has none or it has not changed
+   * since it was last reported.
+   */
+  synchronized Map<String, Object> changedTelemetry(String key, Beacon beacon) {
+    List<Long> fields = beacon.getExtraDataFields();
+    if (fields == null || fields.size() < 5) {
+      return null;
+    }
+
+    long version = fields.get(0);
+    long batteryMilliVolts = fields.get(1);
+    long temperature = fields.get(2);
+    long advertisingCount = fields.get(3);
+    long uptime = fields.get(4);
+
+    long[] last = lastReported.get(key);
+    boolean changed = last == null
+        || last[0] != version
+        || last[1] != batteryMilliVolts
+        || last[2] != temperature
+        || uptime < last[3];
+    if (!changed) {
+      last[3] = uptime;
+      return null;
+    }
+    lastReported.put(key, new long[]{version, batteryMilliVolts, temperature, uptime});
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("version", (int) version);
+    map.put("batteryMilliVolts", (int) batteryMilliVolts);
+    if (temperature != TEMPERATURE_NOT_SUPPORTED) {
+      // 8.8 signed fixed point, in degrees Celsius.
+      map.put("temperature", ((short) temperature) / 256.0);
+    }
+    map.put("advertisingCount", advertisingCount);
+    // Uptime is counted in 0.1 second steps.
+    map.put("uptimeSeconds", uptime / 10);
+
+    return map;
+  }
+
+  synchronized void clear() {
+    lastReported.clear();
+  }
+}
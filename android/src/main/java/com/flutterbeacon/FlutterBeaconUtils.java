@@ -3,10 +3,13 @@ package com.flutterbeacon;
 import android.util.Log;
 
 import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.BeaconParser;
 import org.altbeacon.beacon.Identifier;
 import org.altbeacon.beacon.MonitorNotifier;
 import org.altbeacon.beacon.Region;
+import org.altbeacon.beacon.utils.UrlBeaconUrlCompressor;
 
+import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -15,28 +18,35 @@ import java.util.Locale;
 import java.util.Map;
 
 class FlutterBeaconUtils {
+  private static final int EDDYSTONE_URL_TYPE_CODE = 0x10;
+
   static String parseState(int state) {
     return state == MonitorNotifier.INSIDE ? "INSIDE" : state == MonitorNotifier.OUTSIDE ? "OUTSIDE" : "UNKNOWN";
   }
 
   static List<Map<String, Object>> beaconsToArray(List<Beacon> beacons) {
+    return beaconsToArray(beacons, null);
+  }
+
+  static List<Map<String, Object>> beaconsToArray(List<Beacon> beacons, FlutterBeaconTelemetry telemetry) {
     if (beacons == null) {
       return new ArrayList<>();
     }
     List<Map<String, Object>> list = new ArrayList<>();
     for (Beacon beacon : beacons) {
-      Map<String, Object> map = beaconToMap(beacon);
+      Map<String, Object> map = beaconToMap(beacon, telemetry);
       list.add(map);
     }
 
     return list;
   }
 
-  private static Map<String, Object> beaconToMap(Beacon beacon) {
+  private static Map<String, Object> beaconToMap(Beacon beacon, FlutterBeaconTelemetry telemetry) {
     Map<String, Object> map = new HashMap<>();
 
     if (beacon != null) {
-      if (beacon.getServiceUuid() == 0xfeaa) {
+      List<Identifier> identifiers = beacon.getIdentifiers();
+      if (beacon.getServiceUuid() == 0xfeaa && identifiers.size() >= 2) {
           // This is Eddystone, which uses a service Uuid of 0xfeaa
           // namespaceId = beacon.getId1();
           // instanceId = beacon.getId2();
@@ -49,8 +59,24 @@ class FlutterBeaconUtils {
           map.put("proximityUUID", "");
           map.put("major", -1);
           map.put("minor", -1);
+
+          if (telemetry != null) {
+            Map<String, Object> tlm = telemetry.changedTelemetry(
+                beacon.getId1() + ":" + beacon.getId2(), beacon);
+            if (tlm != null) {
+              map.put("telemetry", tlm);
+            }
+          }
       }
-      else {
+      else if (beacon.getServiceUuid() == 0xfeaa && beacon.getBeaconTypeCode() == EDDYSTONE_URL_TYPE_CODE
+          && identifiers.size() == 1) {
+          // Eddystone-URL has a single identifier, the compressed url
+          map.put("type", FlutterBeaconParsers.EDDYSTONE_URL);
+          map.put("url", UrlBeaconUrlCompressor.uncompress(beacon.getId1().toByteArray()));
+          putEmptyIdentifiers(map);
+      }
+      else if (identifiers.size() == 3 && identifiers.get(1).getByteCount() <= 2
+          && identifiers.get(2).getByteCount() <= 2) {
           // This is another type of beacon like AltBeacon or iBeacon
           // uuid = beacon.getId1();
           // major = beacon.getId2();
@@ -66,6 +92,16 @@ class FlutterBeaconUtils {
           map.put("namespaceId", "");
           map.put("instanceId", "");
       }
+      else {
+          // Any other layout, identifiers are sent as they are, in layout order
+          List<String> list = new ArrayList<>();
+          for (Identifier identifier : identifiers) {
+            list.add(identifier.toString());
+          }
+          map.put("type", "custom");
+          map.put("identifiers", list);
+          putEmptyIdentifiers(map);
+      }
     }
 
     // Log.d("BEACON", "rssi: " + beacon.getRssi());
@@ -82,6 +118,14 @@ class FlutterBeaconUtils {
     return map;
   }
 
+  private static void putEmptyIdentifiers(Map<String, Object> map) {
+    map.put("proximityUUID", "");
+    map.put("major", -1);
+    map.put("minor", -1);
+    map.put("namespaceId", "");
+    map.put("instanceId", "");
+  }
+
   static Map<String, Object> regionToMap(Region region) {
     Map<String, Object> map = new HashMap<>();
 
@@ -133,20 +177,44 @@ class FlutterBeaconUtils {
   }
 
   @SuppressWarnings("rawtypes")
-  static Beacon beaconFromMap(Map map) {
+  static Beacon beaconFromMap(Map map, BeaconParser beaconParser) {
     Beacon.Builder builder = new Beacon.Builder();
+    boolean iBeacon = beaconParser.getLayout().equals(
+        FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON).getLayout());
 
-    Object proximityUUID = map.get("proximityUUID");
-    if (proximityUUID instanceof String) {
-      builder.setId1((String) proximityUUID);
-    }
-    Object major = map.get("major");
-    if (major instanceof Integer) {
-      builder.setId2(major.toString());
-    }
-    Object minor = map.get("minor");
-    if (minor instanceof Integer) {
-      builder.setId3(minor.toString());
+    Object identifiers = map.get("identifiers");
+    Object url = map.get("url");
+    if (identifiers instanceof List) {
+      List<Identifier> list = new ArrayList<>();
+      for (Object identifier : (List) identifiers) {
+        if (identifier instanceof Integer) {
+          list.add(Identifier.fromInt((Integer) identifier));
+        } else if (identifier != null) {
+          list.add(Identifier.parse(identifier.toString()));
+        }
+      }
+      builder.setIdentifiers(list);
+    } else if (url instanceof String) {
+      try {
+        byte[] compressed = UrlBeaconUrlCompressor.compress((String) url);
+        builder.setIdentifiers(Collections.singletonList(
+            Identifier.fromBytes(compressed, 0, compressed.length, false)));
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException("Invalid url: " + url);
+      }
+    } else {
+      Object proximityUUID = map.get("proximityUUID");
+      if (proximityUUID instanceof String) {
+        builder.setId1((String) proximityUUID);
+      }
+      Object major = map.get("major");
+      if (major instanceof Integer) {
+        builder.setId2(major.toString());
+      }
+      Object minor = map.get("minor");
+      if (minor instanceof Integer) {
+        builder.setId3(minor.toString());
+      }
     }
 
     Object txPower = map.get("txPower");
@@ -156,9 +224,38 @@ class FlutterBeaconUtils {
       builder.setTxPower(-59);
     }
 
-    builder.setDataFields(Collections.singletonList(0L));
-    builder.setManufacturer(0x004c);
+    Object dataFields = map.get("dataFields");
+    if (dataFields instanceof List) {
+      List<Long> list = new ArrayList<>();
+      for (Object dataField : (List) dataFields) {
+        list.add(dataField instanceof Number ? ((Number) dataField).longValue() : 0L);
+      }
+      builder.setDataFields(list);
+    } else if (iBeacon) {
+      builder.setDataFields(Collections.singletonList(0L));
+    } else {
+      builder.setDataFields(Collections.nCopies(beaconParser.getDataFieldCount(), 0L));
+    }
+
+    Object manufacturer = map.get("manufacturer");
+    if (manufacturer instanceof Integer) {
+      builder.setManufacturer((Integer) manufacturer);
+    } else {
+      // Apple for iBeacon, Radius Networks for AltBeacon and Eddystone, as the library does.
+      builder.setManufacturer(iBeacon ? 0x004c : 0x0118);
+    }
 
     return builder.build();
   }
+
+  static String identityOf(Beacon beacon) {
+    StringBuilder builder = new StringBuilder();
+    for (Identifier identifier : beacon.getIdentifiers()) {
+      if (builder.length() > 0) {
+        builder.append(':');
+      }
+      builder.append(identifier);
+    }
+    return builder.toString();
+  }
 }
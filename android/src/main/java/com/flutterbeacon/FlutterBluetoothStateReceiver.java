@@ -10,25 +10,89 @@ import android.content.IntentFilter;
 
 import io.flutter.plugin.common.EventChannel;
 
+/**
+ * Relays adapter state changes to Dart, and to the scanner so it can pause while
+ * the adapter is off. The only receiver of adapter state in the plugin: it is
+ * registered on the application context for as long as the scanner exists, so
+ * scanning resumes even when the adapter comes back with no activity attached,
+ * and keeps the adapter state that the method channel queries.
+ */
 class FlutterBluetoothStateReceiver extends BroadcastReceiver implements EventChannel.StreamHandler {
   private final Context context;
+  private final FlutterBeaconScanner scanner;
   private EventChannel.EventSink eventSink;
+  private boolean registered;
+  // Null until resolved from the adapter or told by a broadcast.
+  private Boolean enabled;
 
-  public FlutterBluetoothStateReceiver(Context context) {
-    this.context = context;
+  public FlutterBluetoothStateReceiver(Context context, FlutterBeaconScanner scanner) {
+    this.context = context.getApplicationContext();
+    this.scanner = scanner;
+  }
+
+  void register() {
+    if (!registered) {
+      context.registerReceiver(this, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+      registered = true;
+    }
+  }
+
+  void unregister() {
+    if (registered) {
+      context.unregisterReceiver(this);
+      registered = false;
+    }
   }
 
   @Override
   public void onReceive(Context context, Intent intent) {
-    if (eventSink == null) return;
     final String action = intent.getAction();
 
     if (BluetoothAdapter.ACTION_STATE_CHANGED.equals(action)) {
       final int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
-      sendState(state);
+      enabled = state == BluetoothAdapter.STATE_ON;
+      if (scanner != null) {
+        scanner.onBluetoothStateChanged(state);
+      }
+      if (eventSink != null) {
+        sendState(state);
+      }
+    }
+  }
+
+  boolean isEnabled() {
+    if (enabled == null) {
+      enabled = getState() == BluetoothAdapter.STATE_ON;
+    }
+
+    return enabled;
+  }
+
+  /**
+   * Read the adapter state again and hand it to the scanner, in case a change
+   * happened while the receiver could not hear it.
+   */
+  void refresh() {
+    int state = getState();
+    enabled = state == BluetoothAdapter.STATE_ON;
+    if (scanner != null) {
+      scanner.onBluetoothStateChanged(state);
     }
   }
 
+  @SuppressLint("MissingPermission")
+  private int getState() {
+    BluetoothManager bluetoothManager = (BluetoothManager)
+        context.getSystemService(Context.BLUETOOTH_SERVICE);
+    if (bluetoothManager == null) {
+      // No bluetooth on this device or emulator, which is as good as off.
+      return BluetoothAdapter.STATE_OFF;
+    }
+
+    BluetoothAdapter adapter = bluetoothManager.getAdapter();
+    return adapter != null ? adapter.getState() : BluetoothAdapter.STATE_OFF;
+  }
+
   private void sendState(int state) {
     switch (state) {
       case BluetoothAdapter.STATE_OFF:
@@ -49,28 +113,14 @@ class FlutterBluetoothStateReceiver extends BroadcastReceiver implements EventCh
     }
   }
 
-  @SuppressLint("MissingPermission")
   @Override
   public void onListen(Object o, EventChannel.EventSink eventSink) {
-    int state = BluetoothAdapter.STATE_OFF;
-
-    BluetoothManager bluetoothManager = (BluetoothManager)
-        context.getSystemService(Context.BLUETOOTH_SERVICE);
-    if (bluetoothManager != null) {
-      BluetoothAdapter adapter = bluetoothManager.getAdapter();
-      if (adapter != null) {
-        state = adapter.getState();
-      }
-    }
     this.eventSink = eventSink;
-    this.sendState(state);
-
-    IntentFilter filter = new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED);
-    context.registerReceiver(this, filter);
+    this.sendState(getState());
   }
 
   @Override
   public void onCancel(Object o) {
-    context.unregisterReceiver(this);
+    eventSink = null;
   }
 }
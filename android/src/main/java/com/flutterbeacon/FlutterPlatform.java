@@ -1,12 +1,12 @@
 package com.flutterbeacon;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.location.LocationManager;
 import android.os.Build;
@@ -21,9 +21,51 @@ import java.lang.ref.WeakReference;
 
 class FlutterPlatform {
   private final WeakReference<Activity> activityWeakReference;
-  
-  FlutterPlatform(Activity activity) {
+  private final Context applicationContext;
+  private final FlutterBluetoothStateReceiver bluetoothStateReceiver;
+
+  // Capabilities resolved once and kept current by stateReceiver, so method channel
+  // queries do not go through system services every time. Null means not resolved yet.
+  // Negative answers that may change without a broadcast are not kept.
+  // The adapter state is kept by bluetoothStateReceiver.
+  private Boolean locationServicesEnabled;
+  private Boolean locationServicesPermission;
+  private Boolean broadcastSupported;
+
+  FlutterPlatform(Activity activity, FlutterBluetoothStateReceiver bluetoothStateReceiver) {
+    this(activity, activity.getApplicationContext(), bluetoothStateReceiver);
+  }
+
+  FlutterPlatform(Activity activity, Context applicationContext, FlutterBluetoothStateReceiver bluetoothStateReceiver) {
     activityWeakReference = new WeakReference<>(activity);
+    this.applicationContext = applicationContext;
+    this.bluetoothStateReceiver = bluetoothStateReceiver;
+
+    applicationContext.registerReceiver(stateReceiver, new IntentFilter(LocationManager.PROVIDERS_CHANGED_ACTION));
+  }
+
+  void dispose() {
+    applicationContext.unregisterReceiver(stateReceiver);
+  }
+
+  private final BroadcastReceiver stateReceiver = new BroadcastReceiver() {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+      if (LocationManager.PROVIDERS_CHANGED_ACTION.equals(intent.getAction())) {
+        onProvidersChanged();
+      }
+    }
+  };
+
+  void onProvidersChanged() {
+    locationServicesEnabled = null;
+  }
+
+  /**
+   * Forget the cached permission, after a permission request completed.
+   */
+  void invalidateLocationServicesPermission() {
+    locationServicesPermission = null;
   }
   
   private Activity getActivity() {
@@ -49,8 +91,22 @@ class FlutterPlatform {
   }
 
   boolean checkLocationServicesPermission() {
+    if (locationServicesPermission == null) {
+      boolean granted = resolveLocationServicesPermission();
+      // Only a grant is kept: revoking a permission restarts the process, but it can be
+      // granted from the system settings without telling us.
+      if (!granted) {
+        return false;
+      }
+      locationServicesPermission = true;
+    }
+
+    return locationServicesPermission;
+  }
+
+  boolean resolveLocationServicesPermission() {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      return ContextCompat.checkSelfPermission(getActivity(),
+      return ContextCompat.checkSelfPermission(applicationContext,
           Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
     }
 
@@ -58,13 +114,21 @@ class FlutterPlatform {
   }
 
   boolean checkLocationServicesIfEnabled() {
+    if (locationServicesEnabled == null) {
+      locationServicesEnabled = resolveLocationServicesIfEnabled();
+    }
+
+    return locationServicesEnabled;
+  }
+
+  boolean resolveLocationServicesIfEnabled() {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-      LocationManager locationManager = (LocationManager) getActivity().getSystemService(Context.LOCATION_SERVICE);
+      LocationManager locationManager = (LocationManager) applicationContext.getSystemService(Context.LOCATION_SERVICE);
       return locationManager != null && locationManager.isLocationEnabled();
     }
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-      int mode = Settings.Secure.getInt(getActivity().getContentResolver(), Settings.Secure.LOCATION_MODE,
+      int mode = Settings.Secure.getInt(applicationContext.getContentResolver(), Settings.Secure.LOCATION_MODE,
           Settings.Secure.LOCATION_MODE_OFF);
       return (mode != Settings.Secure.LOCATION_MODE_OFF);
     }
@@ -72,21 +136,26 @@ class FlutterPlatform {
     return true;
   }
 
-  @SuppressLint("MissingPermission")
   boolean checkBluetoothIfEnabled() {
-    BluetoothManager bluetoothManager = (BluetoothManager)
-        getActivity().getSystemService(Context.BLUETOOTH_SERVICE);
-    if (bluetoothManager == null) {
-      throw new RuntimeException("No bluetooth service");
-    }
+    return bluetoothStateReceiver.isEnabled();
+  }
 
-    BluetoothAdapter adapter = bluetoothManager.getAdapter();
+  boolean isBroadcastSupported() {
+    if (broadcastSupported == null) {
+      boolean supported = resolveBroadcastSupported();
+      // Only support is kept: with the adapter off there is no advertiser, and
+      // transmission is reported unsupported until it is back on.
+      if (!supported) {
+        return false;
+      }
+      broadcastSupported = true;
+    }
 
-    return (adapter != null) && (adapter.isEnabled());
+    return broadcastSupported;
   }
-  
-  boolean isBroadcastSupported() {
-    return BeaconTransmitter.checkTransmissionSupported(getActivity()) == 0;
+
+  boolean resolveBroadcastSupported() {
+    return BeaconTransmitter.checkTransmissionSupported(applicationContext) == 0;
   }
   
   boolean shouldShowRequestPermissionRationale(String permission) {
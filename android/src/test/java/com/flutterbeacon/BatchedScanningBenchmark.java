@@ -0,0 +1,239 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.BeaconParser;
+import org.altbeacon.beacon.Region;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Wakeups per hour of regular scanning, one per ranging cycle, against batched
+ * scanning through {@link FakeLeScanner}, over the same simulated hour of
+ * advertisements. Half of the beacons belong to another UUID and should be dropped
+ * by the hardware filters, and the region beacons go away for two minutes in the
+ * middle so monitoring has to exit and enter again.
+ *
+ * <p>Batched events are checked to carry the original scan timestamps, not the time
+ * their batch was delivered. The exit timer of the batch scanner is fired whenever it
+ * is due, and counts as a wakeup.
+ */
+class BatchedScanningBenchmark {
+  private static final String REGION_UUID = "CB10023F-A318-3394-4199-A8730C7C1AEC";
+  private static final String OTHER_UUID = "E2C56DB5-DFFB-48D2-B060-D0F5A71096E0";
+  private static final int BEACONS = 10;
+  private static final int TX_POWER = -59;
+  private static final long START = 1600000000000L;
+  private static final long HOUR_MILLIS = 3600000;
+  private static final long ADVERTISING_MILLIS = 1000;
+  private static final long CYCLE_MILLIS = 1100;
+  private static final long GONE_FROM = START + HOUR_MILLIS / 2;
+  private static final long GONE_UNTIL = GONE_FROM + 120000;
+  private static final long[] REPORT_DELAYS = {5000, 10000, 30000, 60000};
+
+  public static void main(String[] args) throws IOException {
+    List<Advertisement> trace = trace();
+
+    List<String> results = new ArrayList<>();
+    results.add(runRegular(trace).toJson());
+    for (long reportDelay : REPORT_DELAYS) {
+      results.add(runBatched(trace, reportDelay).toJson());
+    }
+    BenchmarkReport.write(args, "batched", results);
+  }
+
+  /**
+   * Regular scanning: the beacons of each cycle reach the range notifier at the end
+   * of the cycle, one wakeup each.
+   */
+  static Result runRegular(List<Advertisement> trace) {
+    FlutterBeaconScanner scanner = new FlutterBeaconScanner(new FlutterBeaconPlugin(), null);
+    FakeEventSink sink = new FakeEventSink();
+    scanner.rangingStreamHandler.onListen(regionArguments(), sink);
+
+    BeaconParser parser = FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON);
+    Region region = FlutterBeaconUtils.regionFromMap(regionArguments().get(0));
+    long wakeups = 0;
+    int index = 0;
+    for (long cycleEnd = START + CYCLE_MILLIS; cycleEnd <= START + HOUR_MILLIS; cycleEnd += CYCLE_MILLIS) {
+      Map<String, Beacon> beacons = new HashMap<>();
+      for (; index < trace.size() && trace.get(index).timestamp < cycleEnd; index++) {
+        Advertisement advertisement = trace.get(index);
+        Beacon beacon = parser.fromScanData(advertisement.scanRecord, advertisement.rssi, null);
+        if (beacon != null && region.matchesBeacon(beacon)) {
+          beacons.put(advertisement.address, beacon);
+        }
+      }
+      scanner.rangeNotifier.didRangeBeaconsInRegion(new ArrayList<>(beacons.values()), region);
+      wakeups++;
+    }
+
+    scanner.rangingStreamHandler.onCancel(null);
+    return new Result("regular", 0, wakeups, sink.getSuccessCount(), trace.size(), 0, 0, 0, true);
+  }
+
+  static Result runBatched(List<Advertisement> trace, long reportDelay) {
+    FlutterBeaconScanner scanner = new FlutterBeaconScanner(new FlutterBeaconPlugin(), null);
+    FakeLeScanner leScanner = new FakeLeScanner();
+    scanner.setLeScanner(leScanner);
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("reportDelayMillis", reportDelay);
+    arguments.put("cycleMillis", CYCLE_MILLIS);
+    arguments.put("exitMillis", 10000L);
+    scanner.setBatchedScanning(arguments);
+
+    FakeEventSink ranging = new FakeEventSink(true);
+    FakeEventSink monitoring = new FakeEventSink(true);
+    scanner.rangingStreamHandler.onListen(regionArguments(), ranging);
+    scanner.monitoringStreamHandler.onListen(regionArguments(), monitoring);
+
+    long maxLagMillis = 0;
+    boolean timestampsValid = true;
+    long exitChecks = 0;
+    int index = 0;
+    for (long now = START + reportDelay; now <= START + HOUR_MILLIS; now += reportDelay) {
+      // Between two batches only the exit timer can run, checked once per cycle.
+      for (long time = now - reportDelay + CYCLE_MILLIS; time <= now; time += CYCLE_MILLIS) {
+        for (; index < trace.size() && trace.get(index).timestamp < time; index++) {
+          Advertisement advertisement = trace.get(index);
+          leScanner.advertise(advertisement.scanRecord, advertisement.rssi, advertisement.address, advertisement.timestamp);
+        }
+        if (scanner.getBatchScanner().checkExits(time)) {
+          exitChecks++;
+        }
+      }
+      for (; index < trace.size() && trace.get(index).timestamp < now; index++) {
+        Advertisement advertisement = trace.get(index);
+        leScanner.advertise(advertisement.scanRecord, advertisement.rssi, advertisement.address, advertisement.timestamp);
+      }
+      int before = ranging.getEvents().size();
+      leScanner.flush();
+
+      List<Object> delivered = ranging.getEvents().subList(before, ranging.getEvents().size());
+      for (Object event : delivered) {
+        Object timestamp = ((Map<?, ?>) event).get("timestamp");
+        if (!(timestamp instanceof Long) || (Long) timestamp > now + CYCLE_MILLIS
+            || (Long) timestamp < now - reportDelay) {
+          timestampsValid = false;
+          continue;
+        }
+        maxLagMillis = Math.max(maxLagMillis, now - (Long) timestamp);
+      }
+    }
+
+    // Exit no earlier than the beacons left, enter again once they are back.
+    List<Long> exits = timestampsOf(monitoring.getEvents(), "didExitRegion");
+    List<Long> enters = timestampsOf(monitoring.getEvents(), "didEnterRegion");
+    timestampsValid &= exits.size() == 1 && exits.get(0) >= GONE_FROM && exits.get(0) < GONE_UNTIL;
+    timestampsValid &= enters.size() == 2 && enters.get(1) >= GONE_UNTIL && enters.get(1) < GONE_UNTIL + 2 * CYCLE_MILLIS;
+
+    scanner.rangingStreamHandler.onCancel(null);
+    scanner.monitoringStreamHandler.onCancel(null);
+    return new Result("batched", reportDelay, leScanner.getDeliveries() + exitChecks, ranging.getSuccessCount(),
+        leScanner.getAdvertised(), leScanner.getFilteredOut(), leScanner.getFilters().size(), maxLagMillis,
+        timestampsValid);
+  }
+
+  private static List<Long> timestampsOf(List<Object> events, String name) {
+    List<Long> timestamps = new ArrayList<>();
+    for (Object event : events) {
+      Map<?, ?> map = (Map<?, ?>) event;
+      if (name.equals(map.get("event"))) {
+        timestamps.add((Long) map.get("timestamp"));
+      }
+    }
+    return timestamps;
+  }
+
+  private static List<Map<String, Object>> regionArguments() {
+    Map<String, Object> region = new HashMap<>();
+    region.put("identifier", "batched");
+    region.put("proximityUUID", REGION_UUID);
+    return Collections.singletonList(region);
+  }
+
+  /**
+   * One hour of advertisements, each beacon once per {@link #ADVERTISING_MILLIS} with
+   * jitter, ordered by time.
+   */
+  static List<Advertisement> trace() {
+    Random random = new Random(42);
+    List<Advertisement> trace = new ArrayList<>();
+    for (long slot = START; slot < START + HOUR_MILLIS; slot += ADVERTISING_MILLIS) {
+      for (int i = 0; i < 2 * BEACONS; i++) {
+        boolean inRegion = i < BEACONS;
+        long timestamp = slot + random.nextInt((int) ADVERTISING_MILLIS);
+        if (inRegion && timestamp >= GONE_FROM && timestamp < GONE_UNTIL) {
+          continue;
+        }
+        // Low power scanning misses some of the advertisements.
+        if (random.nextDouble() < 0.3) {
+          continue;
+        }
+        trace.add(new Advertisement(
+            FakeLeScanner.iBeaconRecord(inRegion ? REGION_UUID : OTHER_UUID, 1, i, TX_POWER),
+            TX_POWER - 10 - random.nextInt(30),
+            String.format(Locale.US, "00:11:22:33:44:%02X", i),
+            timestamp));
+      }
+    }
+    Collections.sort(trace, new java.util.Comparator<Advertisement>() {
+      @Override
+      public int compare(Advertisement a, Advertisement b) {
+        return a.timestamp < b.timestamp ? -1 : a.timestamp == b.timestamp ? 0 : 1;
+      }
+    });
+    return trace;
+  }
+
+  static class Advertisement {
+    final byte[] scanRecord;
+    final int rssi;
+    final String address;
+    final long timestamp;
+
+    Advertisement(byte[] scanRecord, int rssi, String address, long timestamp) {
+      this.scanRecord = scanRecord;
+      this.rssi = rssi;
+      this.address = address;
+      this.timestamp = timestamp;
+    }
+  }
+
+  static class Result {
+    final String mode;
+    final long reportDelayMillis;
+    final long wakeups;
+    final long rangingEvents;
+    final long advertised;
+    final long filteredOut;
+    final int filters;
+    final long maxLagMillis;
+    final boolean timestampsValid;
+
+    Result(String mode, long reportDelayMillis, long wakeups, long rangingEvents, long advertised,
+           long filteredOut, int filters, long maxLagMillis, boolean timestampsValid) {
+      this.mode = mode;
+      this.reportDelayMillis = reportDelayMillis;
+      this.wakeups = wakeups;
+      this.rangingEvents = rangingEvents;
+      this.advertised = advertised;
+      this.filteredOut = filteredOut;
+      this.filters = filters;
+      this.maxLagMillis = maxLagMillis;
+      this.timestampsValid = timestampsValid;
+    }
+
+    String toJson() {
+      return String.format(Locale.US,
+          "{\"mode\": \"%s\", \"reportDelayMillis\": %d, \"wakeupsPerHour\": %d, \"rangingEvents\": %d, \"advertised\": %d, \"filteredOut\": %d, \"filters\": %d, \"maxLagMillis\": %d, \"timestampsValid\": %b}",
+          mode, reportDelayMillis, wakeups, rangingEvents, advertised, filteredOut, filters, maxLagMillis, timestampsValid);
+    }
+  }
+}
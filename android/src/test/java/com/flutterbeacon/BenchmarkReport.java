@@ -0,0 +1,58 @@
+package com.flutterbeacon;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Output of the benchmarks run by {@code ./gradlew benchmark}: one JSON object per
+ * result, printed, then written as an array to the path given as first argument or to
+ * {@code build/reports/benchmarks/<name>.json}, where regressions are tracked from.
+ */
+final class BenchmarkReport {
+  private static final String DIRECTORY = "build/reports/benchmarks";
+
+  private BenchmarkReport() {
+  }
+
+  static void write(String[] args, String name, List<String> results) throws IOException {
+    for (String result : results) {
+      System.out.println(result);
+    }
+
+    File output = new File(args.length > 0 ? args[0] : DIRECTORY + "/" + name + ".json");
+    File parent = output.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Cannot create " + parent);
+    }
+    Writer writer = new FileWriter(output);
+    try {
+      writer.write("[\n");
+      for (int i = 0; i < results.size(); i++) {
+        writer.write("  " + results.get(i) + (i < results.size() - 1 ? ",\n" : "\n"));
+      }
+      writer.write("]\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  // Keys sorted, doubles with two decimals.
+  static String toJson(Map<String, Object> result) {
+    StringBuilder builder = new StringBuilder("{");
+    for (Map.Entry<String, Object> entry : new TreeMap<>(result).entrySet()) {
+      if (builder.length() > 1) {
+        builder.append(", ");
+      }
+      Object value = entry.getValue();
+      builder.append('"').append(entry.getKey()).append("\": ")
+          .append(value instanceof Double ? String.format(Locale.US, "%.2f", value) : String.valueOf(value));
+    }
+    return builder.append('}').toString();
+  }
+}
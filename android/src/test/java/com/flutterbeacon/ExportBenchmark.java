@@ -0,0 +1,123 @@
+package com.flutterbeacon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native sighting export from {@link FlutterBeaconScanner} to a
+ * {@link LocalGatewayReceiver}, fed by {@link SyntheticBeaconSource}. The gateway goes
+ * away for the middle third of the run, so batches have to be spooled and sent
+ * again once it is back; every sighting should still arrive.
+ *
+ * <p>Runs with and without gzip, reporting bytes on the wire per sighting, the batches
+ * spooled during the outage and frames the gateway got twice after a retry. Fails
+ * once the report is written if a sighting was lost or a batch left in the spool.
+ */
+class ExportBenchmark {
+  private static final int BEACONS = 100;
+  private static final int REGIONS = 4;
+  private static final int CYCLES_PER_PHASE = 300;
+  private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    List<Map<String, Object>> runs = new ArrayList<>();
+    runs.add(run(true));
+    runs.add(run(false));
+
+    List<String> results = new ArrayList<>();
+    for (Map<String, Object> run : runs) {
+      results.add(BenchmarkReport.toJson(run));
+    }
+    BenchmarkReport.write(args, "export", results);
+
+    for (Map<String, Object> run : runs) {
+      if (!run.get("sightingsReceived").equals(run.get("sightings"))) {
+        throw new AssertionError("sent " + run.get("sightings") + " sightings, received "
+            + run.get("sightingsReceived") + ": " + BenchmarkReport.toJson(run));
+      }
+      if (!run.get("batchesInSpool").equals(0)) {
+        throw new AssertionError(run.get("batchesInSpool") + " batches left in the spool: "
+            + BenchmarkReport.toJson(run));
+      }
+    }
+  }
+
+  static Map<String, Object> run(boolean compress) throws IOException, InterruptedException {
+    clearSpool();
+    LocalGatewayReceiver gateway = new LocalGatewayReceiver();
+    gateway.start();
+
+    FlutterBeaconScanner scanner = new FlutterBeaconScanner(new FlutterBeaconPlugin(), null);
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setBeaconCount(BEACONS)
+        .setRegionCount(REGIONS)
+        .setChurn(0.05)
+        .setRssiNoise(3)
+        .build();
+
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("regions", source.getRegionArguments());
+    arguments.put("port", gateway.getPort());
+    arguments.put("maxBatchSightings", 1000);
+    // Room for the whole outage even uncompressed.
+    arguments.put("maxSpoolBytes", 16 * 1024 * 1024);
+    arguments.put("compress", compress);
+    if (!scanner.startExport(arguments)) {
+      throw new IllegalStateException("export not started");
+    }
+
+    long startedAt = System.nanoTime();
+    source.replayRanging(scanner.rangeNotifier, CYCLES_PER_PHASE);
+    gateway.stop();
+    source.replayRanging(scanner.rangeNotifier, CYCLES_PER_PHASE);
+    gateway.start();
+    long produced = source.replayRanging(scanner.rangeNotifier, CYCLES_PER_PHASE);
+    long replayNanos = System.nanoTime() - startedAt;
+
+    // Let the spool drain, then stop, which seals the open batch.
+    long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline && ((Number) scanner.getExportStats().get("batchesInSpool")).intValue() > 0) {
+      Thread.sleep(50);
+    }
+    Map<String, Object> stats = scanner.getExportStats();
+    long expected = (Long) stats.get("sightings");
+    scanner.stopExport();
+    while (System.currentTimeMillis() < deadline && gateway.getSightings() < expected) {
+      Thread.sleep(50);
+    }
+    gateway.stop();
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("compress", compress);
+    result.put("sightings", expected);
+    result.put("sightingsReceived", gateway.getSightings());
+    result.put("sightingsPerCycle", produced / CYCLES_PER_PHASE);
+    result.put("framesReceived", gateway.getFramesReceived());
+    result.put("duplicateFrames", gateway.getDuplicateFrames());
+    result.put("bytesPerSighting", gateway.getSightings() > 0 ? (double) gateway.getBytesReceived() / gateway.getSightings() : 0.0);
+    result.put("compressionRatio", stats.get("compressionRatio"));
+    result.put("batchesSpooled", stats.get("batchesSpooled"));
+    result.put("batchesDropped", stats.get("batchesDropped"));
+    result.put("batchesInSpool", spoolFiles().length);
+    result.put("sendFailures", stats.get("sendFailures"));
+    result.put("replayMillis", replayNanos / 1000000);
+    return result;
+  }
+
+  private static void clearSpool() {
+    for (File file : spoolFiles()) {
+      if (!file.delete()) {
+        throw new IllegalStateException("Can not delete " + file);
+      }
+    }
+  }
+
+  private static File[] spoolFiles() {
+    File[] files = new File(System.getProperty("java.io.tmpdir"), "flutter_beacon_export").listFiles();
+    return files != null ? files : new File[0];
+  }
+}
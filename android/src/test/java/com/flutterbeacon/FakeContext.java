@@ -0,0 +1,47 @@
+package com.flutterbeacon;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application context on the JVM without any system service, as on a device without
+ * bluetooth. Receivers are only recorded.
+ */
+class FakeContext extends ContextWrapper {
+  private final List<BroadcastReceiver> receivers = new ArrayList<>();
+
+  FakeContext() {
+    super(null);
+  }
+
+  @Override
+  public Context getApplicationContext() {
+    return this;
+  }
+
+  @Override
+  public Object getSystemService(String name) {
+    return null;
+  }
+
+  @Override
+  public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+    receivers.add(receiver);
+    return null;
+  }
+
+  @Override
+  public void unregisterReceiver(BroadcastReceiver receiver) {
+    receivers.remove(receiver);
+  }
+
+  List<BroadcastReceiver> getReceivers() {
+    return receivers;
+  }
+}
@@ -0,0 +1,90 @@
+package com.flutterbeacon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * {@link EventChannel.EventSink} that stays on the JVM, counting what the plugin would
+ * have sent to Dart. Events are only kept when {@code retainEvents} is set, so long
+ * replays do not measure the sink's own allocations.
+ */
+class FakeEventSink implements EventChannel.EventSink {
+  private final boolean retainEvents;
+  private final List<Object> events = new ArrayList<>();
+
+  private long successCount;
+  private long errorCount;
+  private long payloadBytes;
+  private boolean ended;
+  private Object lastEvent;
+  private String lastErrorMessage;
+
+  FakeEventSink() {
+    this(false);
+  }
+
+  FakeEventSink(boolean retainEvents) {
+    this.retainEvents = retainEvents;
+  }
+
+  @Override
+  public void success(Object event) {
+    successCount++;
+    payloadBytes += FlutterBeaconMetrics.estimatePayloadBytes(event);
+    lastEvent = event;
+    if (retainEvents) {
+      events.add(event);
+    }
+  }
+
+  @Override
+  public void error(String errorCode, String errorMessage, Object errorDetails) {
+    errorCount++;
+    lastErrorMessage = errorMessage;
+  }
+
+  @Override
+  public void endOfStream() {
+    ended = true;
+  }
+
+  long getSuccessCount() {
+    return successCount;
+  }
+
+  long getErrorCount() {
+    return errorCount;
+  }
+
+  long getPayloadBytes() {
+    return payloadBytes;
+  }
+
+  boolean isEnded() {
+    return ended;
+  }
+
+  Object getLastEvent() {
+    return lastEvent;
+  }
+
+  String getLastErrorMessage() {
+    return lastErrorMessage;
+  }
+
+  List<Object> getEvents() {
+    return events;
+  }
+
+  void reset() {
+    successCount = 0;
+    errorCount = 0;
+    payloadBytes = 0;
+    ended = false;
+    lastEvent = null;
+    lastErrorMessage = null;
+    events.clear();
+  }
+}
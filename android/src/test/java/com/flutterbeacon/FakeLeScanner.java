@@ -0,0 +1,178 @@
+package com.flutterbeacon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link FlutterBeaconBatchScanner.LeScanner} that stays on the JVM. Advertisements go
+ * through the hardware filters like on a controller, and are queued until
+ * {@link #flush()}, which stands for the report delay expiring. With a report delay
+ * of 0 every advertisement is delivered on its own. Like a controller, nothing is
+ * delivered when nothing passed the filters.
+ */
+class FakeLeScanner implements FlutterBeaconBatchScanner.LeScanner {
+  private static final int AD_SERVICE_UUIDS_16 = 0x03;
+  private static final int AD_SERVICE_DATA_16 = 0x16;
+  private static final int AD_MANUFACTURER_DATA = 0xff;
+
+  private final List<FlutterBeaconBatchScanner.Sighting> queue = new ArrayList<>();
+  private List<FlutterBeaconBatchScanner.Filter> filters;
+  private FlutterBeaconBatchScanner.Callback callback;
+  private long reportDelayMillis;
+
+  private long starts;
+  private long deliveries;
+  private long advertised;
+  private long filteredOut;
+
+  @Override
+  public boolean start(List<FlutterBeaconBatchScanner.Filter> filters, long reportDelayMillis,
+                       FlutterBeaconBatchScanner.Callback callback) {
+    this.filters = filters;
+    this.reportDelayMillis = reportDelayMillis;
+    this.callback = callback;
+    starts++;
+    return true;
+  }
+
+  @Override
+  public void stop() {
+    callback = null;
+    queue.clear();
+  }
+
+  boolean isScanning() {
+    return callback != null;
+  }
+
+  void advertise(byte[] scanRecord, int rssi, String address, long timestamp) {
+    if (callback == null) {
+      return;
+    }
+    advertised++;
+    if (!matchesAnyFilter(scanRecord)) {
+      filteredOut++;
+      return;
+    }
+
+    queue.add(new FlutterBeaconBatchScanner.Sighting(scanRecord, rssi, address, timestamp));
+    if (reportDelayMillis <= 0) {
+      flush();
+    }
+  }
+
+  /**
+   * Deliver the queued sightings, if any.
+   */
+  void flush() {
+    if (callback == null || queue.isEmpty()) {
+      return;
+    }
+    List<FlutterBeaconBatchScanner.Sighting> batch = new ArrayList<>(queue);
+    queue.clear();
+    deliveries++;
+    callback.onBatch(batch);
+  }
+
+  List<FlutterBeaconBatchScanner.Filter> getFilters() {
+    return filters;
+  }
+
+  long getStarts() {
+    return starts;
+  }
+
+  long getDeliveries() {
+    return deliveries;
+  }
+
+  long getAdvertised() {
+    return advertised;
+  }
+
+  long getFilteredOut() {
+    return filteredOut;
+  }
+
+  /**
+   * Scan record of an iBeacon advertisement: flags, then Apple manufacturer data.
+   */
+  static byte[] iBeaconRecord(String uuid, int major, int minor, int txPower) {
+    byte[] record = new byte[30];
+    record[0] = 0x02;
+    record[1] = 0x01;
+    record[2] = 0x06;
+    record[3] = 0x1a;
+    record[4] = (byte) 0xff;
+    record[5] = 0x4c;
+    record[6] = 0x00;
+    record[7] = 0x02;
+    record[8] = 0x15;
+    String hex = uuid.replace("-", "");
+    for (int i = 0; i < 16; i++) {
+      record[9 + i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+    record[25] = (byte) (major >> 8);
+    record[26] = (byte) major;
+    record[27] = (byte) (minor >> 8);
+    record[28] = (byte) minor;
+    record[29] = (byte) txPower;
+    return record;
+  }
+
+  private boolean matchesAnyFilter(byte[] scanRecord) {
+    if (filters == null || filters.isEmpty()) {
+      return true;
+    }
+    for (FlutterBeaconBatchScanner.Filter filter : filters) {
+      if (matches(filter, scanRecord)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(FlutterBeaconBatchScanner.Filter filter, byte[] record) {
+    int i = 0;
+    while (i + 1 < record.length) {
+      int length = record[i] & 0xff;
+      if (length == 0 || i + length >= record.length) {
+        break;
+      }
+      int type = record[i + 1] & 0xff;
+      int start = i + 2;
+      int end = i + 1 + length;
+
+      if (filter.serviceUuid >= 0 && (type == AD_SERVICE_UUIDS_16 || type == AD_SERVICE_DATA_16)
+          && end - start >= 2 && uuid16(record, start) == filter.serviceUuid) {
+        return true;
+      }
+      if (filter.serviceUuid < 0 && type == AD_MANUFACTURER_DATA && end - start >= 2
+          && uuid16(record, start) == filter.manufacturerId
+          && masked(record, start + 2, end, filter.data, filter.mask)) {
+        return true;
+      }
+      i = end;
+    }
+    return false;
+  }
+
+  private static int uuid16(byte[] record, int offset) {
+    return (record[offset] & 0xff) | (record[offset + 1] & 0xff) << 8;
+  }
+
+  private static boolean masked(byte[] record, int start, int end, byte[] data, byte[] mask) {
+    if (data == null) {
+      return true;
+    }
+    if (end - start < data.length) {
+      return false;
+    }
+    for (int i = 0; i < data.length; i++) {
+      if ((record[start + i] & mask[i]) != (data[i] & mask[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,89 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconBatchScannerTest {
+  private static final String UUID = "CB10023F-A318-3394-4199-A8730C7C1AEC";
+  private static final long START = 1600000000000L;
+
+  private final List<String> events = new ArrayList<>();
+  private final List<Long> timestamps = new ArrayList<>();
+  private FakeLeScanner leScanner;
+  private FlutterBeaconBatchScanner batchScanner;
+
+  @Before
+  public void setUp() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("reportDelayMillis", 5000L);
+    arguments.put("exitMillis", 10000L);
+    leScanner = new FakeLeScanner();
+    batchScanner = new FlutterBeaconBatchScanner(leScanner, listener, arguments);
+
+    Region region = new Region("door", Collections.singletonList(Identifier.parse(UUID)));
+    assertTrue(batchScanner.start(
+        Collections.singletonList(FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON)),
+        Collections.<Region>emptyList(), Collections.singletonList(region)));
+  }
+
+  @Test
+  public void regionIsExitedWithoutAnotherBatch() {
+    leScanner.advertise(FakeLeScanner.iBeaconRecord(UUID, 1, 1, -59), -60, "00:11:22:33:44:01", START);
+    leScanner.flush();
+    assertEquals("didEnterRegion", events.get(0));
+
+    // Nothing passes the filters any more, so no batch comes. The region was seen at
+    // the end of the first cycle, and is left after exitMillis plus the report delay.
+    leScanner.flush();
+    assertEquals(1, leScanner.getDeliveries());
+    long exit = START + FlutterBeaconBatchScanner.DEFAULT_CYCLE_MILLIS + 15000;
+    assertFalse(batchScanner.checkExits(exit - 1));
+    assertEquals(2, events.size());
+
+    assertTrue(batchScanner.checkExits(exit));
+    assertEquals("didExitRegion", events.get(2));
+    assertEquals("OUTSIDE", events.get(3));
+    assertEquals(exit, (long) timestamps.get(2));
+    assertFalse(batchScanner.checkExits(exit + 15000));
+  }
+
+  @Test
+  public void sightingsOfALaterBatchKeepTheRegion() {
+    leScanner.advertise(FakeLeScanner.iBeaconRecord(UUID, 1, 1, -59), -60, "00:11:22:33:44:01", START);
+    leScanner.flush();
+    leScanner.advertise(FakeLeScanner.iBeaconRecord(UUID, 1, 1, -59), -60, "00:11:22:33:44:01", START + 9000);
+    leScanner.flush();
+
+    assertFalse(batchScanner.checkExits(START + FlutterBeaconBatchScanner.DEFAULT_CYCLE_MILLIS + 15000));
+    assertEquals(2, events.size());
+  }
+
+  private final FlutterBeaconBatchScanner.Listener listener = new FlutterBeaconBatchScanner.Listener() {
+    @Override
+    public void onBatchDelivered(int sightings) {
+    }
+
+    @Override
+    public void onRangingCycle(List<Beacon> beacons, Region region, long timestamp) {
+    }
+
+    @Override
+    public void onMonitoringEvent(String event, String state, Region region, long timestamp) {
+      events.add(state != null ? state : event);
+      timestamps.add(timestamp);
+    }
+  };
+}
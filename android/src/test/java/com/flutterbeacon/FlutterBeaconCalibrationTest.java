@@ -0,0 +1,73 @@
+package com.flutterbeacon;
+
+import com.flutterbeacon.FlutterBeaconCalibration.PathLossModel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconCalibrationTest {
+  private static final double[] DISTANCES = {0.5, 1, 2, 4, 8};
+
+  @Test
+  public void fitRecoversThePathLossModel() {
+    // n = 2.5 and -3 dB at one meter, with +-1 dB alternating noise.
+    List<double[]> samples = new ArrayList<>();
+    for (double distance : DISTANCES) {
+      for (int i = 0; i < 4; i++) {
+        samples.add(new double[]{distance, -3 - 25 * Math.log10(distance) + (i % 2 == 0 ? 1 : -1)});
+      }
+    }
+
+    PathLossModel model = PathLossModel.fit(samples);
+
+    assertEquals(2.5, model.exponent, 1e-9);
+    assertEquals(-3, model.offset, 1e-9);
+    assertTrue(model.rSquared > 0.95 && model.rSquared < 1);
+    // Back from the RSSI a beacon of -59 dBm at one meter shows at 4 m.
+    assertEquals(4, model.calculateDistance(-59, -59 - 3 - 25 * Math.log10(4)), 1e-9);
+    assertEquals(-1.0, model.calculateDistance(-59, 0), 0);
+  }
+
+  @Test
+  public void fitNeedsEnoughSamplesOverSeveralDistances() {
+    List<double[]> samples = new ArrayList<>();
+    for (int i = 0; i < 9; i++) {
+      samples.add(new double[]{DISTANCES[i % DISTANCES.length], -10 * i});
+    }
+    assertNull(PathLossModel.fit(samples));
+
+    List<double[]> oneDistance = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      oneDistance.add(new double[]{2, -60 - i % 3});
+    }
+    assertNull(PathLossModel.fit(oneDistance));
+  }
+
+  @Test
+  public void signalGrowingWithDistanceIsIgnored() {
+    List<double[]> samples = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      double distance = DISTANCES[i % DISTANCES.length];
+      samples.add(new double[]{distance, 10 * Math.log10(distance)});
+    }
+
+    assertNull(PathLossModel.fit(samples));
+  }
+
+  @Test
+  public void modelSurvivesBeingStored() {
+    PathLossModel model = PathLossModel.decode(new PathLossModel(2.2, -4.5, 0.9).encode());
+
+    assertEquals(2.2, model.exponent, 0);
+    assertEquals(-4.5, model.offset, 0);
+    assertEquals(0.9, model.rSquared, 0);
+    assertNull(PathLossModel.decode(null));
+    assertNull(PathLossModel.decode("2.2"));
+  }
+}
@@ -0,0 +1,91 @@
+package com.flutterbeacon;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class FlutterBeaconEnergyTest {
+  private static final double DELTA = 1e-9;
+  private static final long HOUR = 3600 * 1000;
+
+  private FlutterBeaconEnergy energy;
+
+  @Before
+  public void setUp() {
+    energy = new FlutterBeaconEnergy();
+    energy.reset(0);
+  }
+
+  @Test
+  public void scanRadioIsChargedForTheDutyCycleInEffect() {
+    // Half an hour of foreground scanning, then half an hour of 10 s every 5 minutes.
+    energy.setScanning(true, 1.0, 0);
+    double background = 10000.0 / (10000 + 300000);
+    energy.setScanning(true, background, HOUR / 2);
+    Map<String, Object> estimate = energy.estimate(null, HOUR);
+
+    long active = HOUR / 2 + Math.round(HOUR / 2 * background);
+    assertEquals(active, estimate.get("scanActiveMillis"));
+    assertEquals(HOUR - active, estimate.get("scanIdleMillis"));
+    assertEquals(active * FlutterBeaconEnergy.DEFAULT_SCAN_CURRENT_MA / HOUR,
+        (Double) estimate.get("scanMahPerHour"), 1e-3);
+  }
+
+  @Test
+  public void stoppedScanIsIdle() {
+    energy.setScanning(true, 1.0, 0);
+    energy.setScanning(false, 1.0, 1000);
+    Map<String, Object> estimate = energy.estimate(null, 4000);
+
+    assertEquals(1000L, estimate.get("scanActiveMillis"));
+    assertEquals(3000L, estimate.get("scanIdleMillis"));
+    assertEquals(false, estimate.get("scanning"));
+  }
+
+  @Test
+  public void cpuIsChargedForWakeupsAndSerializationWallTime() {
+    energy.onWakeup();
+    energy.onWakeup();
+    energy.onSerialization(5000000);
+    Map<String, Object> model = new HashMap<>();
+    model.put("cpuCurrentMa", 100);
+    model.put("wakeupMillis", 10);
+    Map<String, Object> estimate = energy.estimate(model, HOUR);
+
+    assertEquals(2L, estimate.get("wakeups"));
+    assertEquals(5.0, (Double) estimate.get("serializationWallMillis"), DELTA);
+    // (2 * 10 ms + 5 ms) at 100 mA over an hour.
+    assertEquals(25.0 * 100 / HOUR, (Double) estimate.get("cpuMahPerHour"), DELTA);
+  }
+
+  @Test
+  public void everyConcurrentAdvertiserIsCharged() {
+    Object first = new Object();
+    Object second = new Object();
+    // Low latency (100 ms) at high power, and low power (1 s) at ultra low power.
+    energy.onAdvertisingStarted(first, 2, 3, 0);
+    energy.onAdvertisingStarted(second, 0, 0, 0);
+    energy.onAdvertisingStopped(second, 10000);
+    Map<String, Object> estimate = energy.estimate(null, 10000);
+
+    assertEquals(1, estimate.get("advertisers"));
+    assertEquals(20000L, estimate.get("advertisingMillis"));
+    assertEquals(100L + 5L, estimate.get("advertisingEvents"));
+  }
+
+  @Test
+  public void resetStartsANewPeriod() {
+    energy.setScanning(true, 1.0, 0);
+    energy.onWakeup();
+    energy.reset(5000);
+    Map<String, Object> estimate = energy.estimate(null, 6000);
+
+    assertEquals(1000L, estimate.get("elapsedMillis"));
+    assertEquals(1000L, estimate.get("scanActiveMillis"));
+    assertEquals(0L, estimate.get("wakeups"));
+  }
+}
@@ -0,0 +1,207 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.Region;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconExporterTest {
+  private static final long STOP_TIMEOUT_MILLIS = 10000;
+  private static final Region REGION = new Region("door", null, null, null);
+
+  private File spool;
+
+  @Before
+  public void setUp() throws IOException {
+    spool = Files.createTempDirectory("export").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = spool.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    spool.delete();
+  }
+
+  @Test
+  public void acknowledgedBatchesAreNotSpooled() {
+    FakeGateway gateway = new FakeGateway();
+    FlutterBeaconExporter exporter = new FlutterBeaconExporter(spool, arguments(), gateway);
+    exporter.start();
+
+    feed(exporter, 25);
+    exporter.stop(STOP_TIMEOUT_MILLIS);
+
+    assertEquals(25, gateway.getSightings());
+    assertEquals(3, gateway.getFrames());
+    Map<String, Object> stats = exporter.toMap();
+    assertEquals(3L, stats.get("batchesSent"));
+    assertEquals(0L, stats.get("batchesSpooled"));
+    assertEquals(0, stats.get("batchesInSpool"));
+  }
+
+  @Test
+  public void unacknowledgedBatchesAreSpooledAndSentOnTheNextStart() {
+    FakeGateway down = new FakeGateway();
+    down.ack = 0x15;
+    FlutterBeaconExporter exporter = new FlutterBeaconExporter(spool, arguments(), down);
+    exporter.start();
+    feed(exporter, 25);
+    exporter.stop(STOP_TIMEOUT_MILLIS);
+
+    Map<String, Object> stats = exporter.toMap();
+    assertEquals(3L, stats.get("batchesSpooled"));
+    assertEquals(3, stats.get("batchesInSpool"));
+    assertTrue((Long) stats.get("sendFailures") > 0);
+
+    FakeGateway up = new FakeGateway();
+    FlutterBeaconExporter next = new FlutterBeaconExporter(spool, arguments(), up);
+    next.start(exporter);
+    feed(next, 5);
+    next.stop(STOP_TIMEOUT_MILLIS);
+
+    // Spooled batches go first, in the order they were spooled.
+    assertEquals(30, up.getSightings());
+    assertEquals(0, next.toMap().get("batchesInSpool"));
+    assertEquals("{\"t\":0,", up.firstLine().substring(0, 7));
+  }
+
+  @Test
+  public void exporterStartedInPlaceOfAnotherWaitsForIt() {
+    FakeGateway gateway = new FakeGateway();
+    gateway.delayMillis = 20;
+    FlutterBeaconExporter first = new FlutterBeaconExporter(spool, arguments(), gateway);
+    first.start();
+    feed(first, 100);
+    first.stop(0);
+
+    FlutterBeaconExporter second = new FlutterBeaconExporter(spool, arguments(), gateway);
+    second.start(first);
+    feed(second, 100);
+    second.stop(STOP_TIMEOUT_MILLIS);
+
+    assertEquals(200, gateway.getSightings());
+    assertEquals(0, second.toMap().get("batchesInSpool"));
+  }
+
+  private static Map<String, Object> arguments() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("maxBatchSightings", 10);
+    arguments.put("maxBatchMillis", 60000);
+    arguments.put("compress", false);
+    return arguments;
+  }
+
+  // One beacon per cycle, one cycle per second.
+  private static void feed(FlutterBeaconExporter exporter, int cycles) {
+    for (int i = 0; i < cycles; i++) {
+      Beacon beacon = new Beacon.Builder()
+          .setIdentifiers(Collections.singletonList(Identifier.fromInt(i)))
+          .setRssi(-60)
+          .setTxPower(-59)
+          .build();
+      exporter.onRangingCycle(Collections.singletonList(beacon), REGION, i * 1000L);
+    }
+  }
+
+  /**
+   * Gateway in memory: every flushed write is one frame, answered with {@link #ack}.
+   */
+  static class FakeGateway implements FlutterBeaconExporter.Endpoint {
+    private final List<String> payloads = new ArrayList<>();
+    volatile int ack = FlutterBeaconExporter.ACK;
+    volatile long delayMillis;
+
+    @Override
+    public FlutterBeaconExporter.Connection connect() {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+        @Override
+        public void flush() {
+          byte[] frame = toByteArray();
+          reset();
+          onFrame(frame);
+        }
+      };
+      return new FlutterBeaconExporter.Connection() {
+        @Override
+        public OutputStream getOutputStream() {
+          return out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+          return new InputStream() {
+            @Override
+            public int read() {
+              return ack;
+            }
+          };
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+
+    private void onFrame(byte[] frame) {
+      if (delayMillis > 0) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (ack != FlutterBeaconExporter.ACK) {
+        return;
+      }
+      // 4 byte length and the flags byte, then the uncompressed payload.
+      synchronized (payloads) {
+        payloads.add(new String(frame, 5, frame.length - 5));
+      }
+    }
+
+    int getFrames() {
+      synchronized (payloads) {
+        return payloads.size();
+      }
+    }
+
+    int getSightings() {
+      int sightings = 0;
+      synchronized (payloads) {
+        for (String payload : payloads) {
+          sightings += payload.split("\n").length;
+        }
+      }
+      return sightings;
+    }
+
+    String firstLine() {
+      synchronized (payloads) {
+        return payloads.get(0).split("\n")[0];
+      }
+    }
+  }
+}
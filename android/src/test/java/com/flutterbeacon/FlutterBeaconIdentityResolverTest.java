@@ -0,0 +1,87 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconIdentityResolverTest {
+  private static final String MAC_1 = "00:11:22:33:44:01";
+  private static final String MAC_2 = "00:11:22:33:44:02";
+  private static final String MAC_3 = "00:11:22:33:44:03";
+
+  @Test
+  public void strongestSightingStandsForTheDevice() {
+    FlutterBeaconIdentityResolver resolver = resolver(1024, "mac", "identifiers");
+    Beacon weak = beacon(MAC_1, 1, -70);
+    Beacon strong = beacon(MAC_1, 2, -60);
+    Beacon other = beacon(MAC_2, 3, -80);
+
+    Map<String, Beacon> stitched = resolver.resolve(Arrays.asList(weak, strong, other), 0);
+
+    assertEquals(Arrays.asList("mac:" + MAC_1, "mac:" + MAC_2), Arrays.asList(stitched.keySet().toArray()));
+    assertSame(strong, stitched.get("mac:" + MAC_1));
+    assertSame(other, stitched.get("mac:" + MAC_2));
+  }
+
+  @Test
+  public void rotatedAddressIsStitchedWithinTheWindow() {
+    FlutterBeaconIdentityResolver resolver = resolver(1024, "mac", "identifiers");
+    resolver.resolve(Collections.singletonList(beacon(MAC_1, 1, -60)), 0);
+
+    // Same identifiers from a new address, within and then past the 10 s window.
+    assertTrue(resolver.resolve(Collections.singletonList(beacon(MAC_2, 1, -60)), 10000)
+        .containsKey("mac:" + MAC_1));
+    assertTrue(resolver.resolve(Collections.singletonList(beacon(MAC_3, 1, -60)), 20001)
+        .containsKey("mac:" + MAC_3));
+  }
+
+  @Test
+  public void leastRecentlySeenKeysAreEvicted() {
+    // Every sighting keeps an address and an identifiers key.
+    FlutterBeaconIdentityResolver small = resolver(2, "mac", "identifiers");
+    FlutterBeaconIdentityResolver large = resolver(4, "mac", "identifiers");
+    for (FlutterBeaconIdentityResolver resolver : Arrays.asList(small, large)) {
+      resolver.resolve(Collections.singletonList(beacon(MAC_1, 1, -60)), 0);
+      resolver.resolve(Collections.singletonList(beacon(MAC_2, 2, -60)), 100);
+    }
+
+    assertFalse(small.resolve(Collections.singletonList(beacon(MAC_3, 1, -60)), 200).containsKey("mac:" + MAC_1));
+    assertTrue(large.resolve(Collections.singletonList(beacon(MAC_3, 1, -60)), 200).containsKey("mac:" + MAC_1));
+  }
+
+  @Test
+  public void unknownKeysAreRejected() {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("keys", Collections.singletonList("serial"));
+
+    assertFalse(new FlutterBeaconIdentityResolver().configure(arguments));
+  }
+
+  private static FlutterBeaconIdentityResolver resolver(int maxEntries, String... keys) {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("keys", Arrays.asList(keys));
+    arguments.put("maxEntries", maxEntries);
+    FlutterBeaconIdentityResolver resolver = new FlutterBeaconIdentityResolver();
+    assertTrue(resolver.configure(arguments));
+    return resolver;
+  }
+
+  private static Beacon beacon(String address, int minor, int rssi) {
+    return new Beacon.Builder()
+        .setId1("2f234454-cf6d-4a0f-adf2-f4911ba9ffa6")
+        .setId2("1")
+        .setId3(Integer.toString(minor))
+        .setBluetoothAddress(address)
+        .setRssi(rssi)
+        .build();
+  }
+}
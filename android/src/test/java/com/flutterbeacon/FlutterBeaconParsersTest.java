@@ -0,0 +1,49 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.BeaconParser;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class FlutterBeaconParsersTest {
+  private static final String CUSTOM_LAYOUT = "m:2-3=beac,i:4-19,i:20-21,i:22-23,p:24-24,d:25-25";
+
+  @Test
+  public void builtInNamesCanNotBeRegistered() {
+    for (String name : Arrays.asList(FlutterBeaconParsers.IBEACON, FlutterBeaconParsers.EDDYSTONE_UID, "altbeacon")) {
+      try {
+        FlutterBeaconParsers.register(name, CUSTOM_LAYOUT);
+        fail("registered " + name);
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+
+    // iBeacon keeps its hardware filter on Apple's company id.
+    BeaconParser iBeacon = FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON);
+    assertEquals(0x004c, iBeacon.getHardwareAssistManufacturers()[0]);
+  }
+
+  @Test
+  public void registeredLayoutIsSharedByName() {
+    FlutterBeaconParsers.register("custom", CUSTOM_LAYOUT);
+
+    assertSame(FlutterBeaconParsers.parserForLayout(CUSTOM_LAYOUT), FlutterBeaconParsers.parserForName("custom"));
+  }
+
+  @Test
+  public void layoutOrderIsSignificant() {
+    BeaconParser iBeacon = FlutterBeaconParsers.parserForName(FlutterBeaconParsers.IBEACON);
+    BeaconParser uid = FlutterBeaconParsers.parserForName(FlutterBeaconParsers.EDDYSTONE_UID);
+    List<BeaconParser> first = Arrays.asList(iBeacon, uid);
+    List<BeaconParser> reordered = Arrays.asList(uid, iBeacon);
+
+    assertEquals(FlutterBeaconParsers.layoutsOf(first), FlutterBeaconParsers.layoutsOf(Arrays.asList(iBeacon, uid)));
+    assertNotEquals(FlutterBeaconParsers.layoutsOf(first), FlutterBeaconParsers.layoutsOf(reordered));
+  }
+}
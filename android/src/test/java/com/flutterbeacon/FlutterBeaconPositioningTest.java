@@ -0,0 +1,136 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.distance.DistanceCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconPositioningTest {
+  private static final int TX_POWER = -59;
+  private static final double[][] CORNERS = {{0, 0}, {10, 0}, {10, 10}, {0, 10}};
+  // Where the device is, and how much the range to the third corner is off.
+  private static final double X = 3, Y = 4, OUTLIER = 6;
+
+  private final List<Beacon> beacons = new ArrayList<>();
+  private FlutterBeaconPositioning positioning;
+
+  @Before
+  public void setUp() {
+    // Free space path loss, so the distances are the ones the RSSI is made from.
+    Beacon.setDistanceCalculator(new DistanceCalculator() {
+      @Override
+      public double calculateDistance(int txPower, double rssi) {
+        return Math.pow(10, (txPower - rssi) / 20.0);
+      }
+    });
+
+    for (int i = 0; i < CORNERS.length; i++) {
+      Beacon beacon = new Beacon.Builder()
+          .setId1("cb10023f-a318-3394-4199-a8730c7c1aec")
+          .setId2("1")
+          .setId3(String.valueOf(i))
+          .setTxPower(TX_POWER)
+          .build();
+      beacon.setRunningAverageRssi(TX_POWER - 20 * Math.log10(range(i)[2]));
+      beacons.add(beacon);
+    }
+
+    positioning = new FlutterBeaconPositioning();
+    positioning.setSeed(7);
+    assertTrue(positioning.configure(arguments(false)));
+  }
+
+  @After
+  public void tearDown() {
+    Beacon.setDistanceCalculator(null);
+  }
+
+  @Test
+  public void solveDropsTheOutlier() {
+    List<double[]> ranges = new ArrayList<>();
+    for (int i = 0; i < CORNERS.length; i++) {
+      ranges.add(range(i));
+    }
+    double[] outlier = ranges.get(2);
+
+    double[] position = FlutterBeaconPositioning.solve(ranges, 2.0);
+
+    assertEquals(X, position[0], 1e-6);
+    assertEquals(Y, position[1], 1e-6);
+    assertEquals(0, position[2], 1e-6);
+    assertEquals(3, (int) position[3]);
+    assertEquals(3, ranges.size());
+    assertTrue(!ranges.contains(outlier));
+  }
+
+  @Test
+  public void solveNeedsThreeBeacons() {
+    List<double[]> ranges = new ArrayList<>(Arrays.asList(range(0), range(1)));
+
+    assertNull(FlutterBeaconPositioning.solve(ranges, 2.0));
+    assertNull(positioning.estimate(beacons.subList(0, 2), 0));
+  }
+
+  @Test
+  public void particleFilterOnlyWeightsTheKeptBeacons() {
+    assertTrue(positioning.configure(arguments(true)));
+
+    Map<String, Object> position = null;
+    for (int cycle = 0; cycle < 10; cycle++) {
+      position = positioning.estimate(beacons, cycle * 1100L);
+    }
+
+    assertEquals(3, position.get("beacons"));
+    assertEquals(X, (Double) position.get("x"), 0.5);
+    assertEquals(Y, (Double) position.get("y"), 0.5);
+  }
+
+  @Test
+  public void cycleIsEstimatedOnceEveryRegionReported() {
+    assertNull(positioning.estimate(beacons.subList(0, 2), "kitchen", 2, 1000));
+    Map<String, Object> position = positioning.estimate(beacons.subList(1, 4), "hall", 2, 1005);
+
+    // The beacon seen from both regions counts once.
+    assertEquals(3, position.get("beacons"));
+    assertEquals(1000L, position.get("timestamp"));
+    assertEquals(X, (Double) position.get("x"), 1e-6);
+
+    // A cycle the hall does not report in ends when the kitchen comes again.
+    assertNull(positioning.estimate(beacons, "kitchen", 2, 2100));
+    position = positioning.estimate(Collections.<Beacon>emptyList(), "kitchen", 2, 3200);
+    assertEquals(2100L, position.get("timestamp"));
+  }
+
+  private Map<String, Object> arguments(boolean particleFilter) {
+    List<Object> map = new ArrayList<>();
+    for (int i = 0; i < CORNERS.length; i++) {
+      Map<String, Object> entry = new HashMap<>();
+      entry.put("identity", FlutterBeaconUtils.identityOf(beacons.get(i)));
+      entry.put("x", CORNERS[i][0]);
+      entry.put("y", CORNERS[i][1]);
+      map.add(entry);
+    }
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("beacons", map);
+    arguments.put("particleFilter", particleFilter);
+    return arguments;
+  }
+
+  // [x, y, distance] of a corner, the third one measured too far.
+  private static double[] range(int i) {
+    double distance = Math.hypot(X - CORNERS[i][0], Y - CORNERS[i][1]);
+    return new double[]{CORNERS[i][0], CORNERS[i][1], i == 2 ? distance + OUTLIER : distance};
+  }
+}
@@ -0,0 +1,160 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Region;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconRulesTest {
+  private static final String UUID = "2f234454-cf6d-4a0f-adf2-f4911ba9ffa6";
+  private static final String IDENTITY = UUID + ":1";
+  private final Region kitchen = new Region("kitchen", null, null, null);
+  private final Region hall = new Region("hall", null, null, null);
+  private FlutterBeaconRules rules;
+
+  @Before
+  public void setUp() {
+    Map<String, Object> rule = new HashMap<>();
+    rule.put("id", "crowd");
+    rule.put("minCount", 2);
+    rule.put("dwellMillis", 2000);
+    rules = new FlutterBeaconRules();
+    assertEquals(1, rules.setRules(Collections.singletonList(rule)));
+  }
+
+  @Test
+  public void anyRegionRuleCountsEveryRegionOfTheCycle() {
+    Collection<Beacon> kitchenBeacons = Arrays.asList(beacon(1), beacon(2));
+    Collection<Beacon> none = Collections.emptyList();
+
+    // The empty hall of each cycle must not start the dwell over.
+    for (long now = 0; now < 2000; now += 1000) {
+      assertTrue(rules.evaluate(kitchenBeacons, kitchen, now).isEmpty());
+      assertTrue(rules.evaluate(none, hall, now + 10).isEmpty());
+    }
+    List<Map<String, Object>> firings = rules.evaluate(kitchenBeacons, kitchen, 2000);
+
+    assertEquals(1, firings.size());
+    assertEquals("crowd", firings.get(0).get("rule"));
+    assertEquals(2, firings.get(0).get("count"));
+  }
+
+  @Test
+  public void anyRegionRuleCountsBeaconsSeenInSeveralRegionsOnce() {
+    Collection<Beacon> doorway = Collections.singletonList(beacon(1));
+
+    for (long now = 0; now <= 3000; now += 1000) {
+      assertTrue(rules.evaluate(doorway, kitchen, now).isEmpty());
+      assertTrue(rules.evaluate(doorway, hall, now + 10).isEmpty());
+    }
+  }
+
+  @Test
+  public void beaconRuleFiresAfterItsDwell() {
+    assertEquals(1, rules.setRules(Collections.singletonList(rule("desk", "dwellMillis", 2000))));
+    Collection<Beacon> seen = Collections.singletonList(beacon(1));
+
+    assertTrue(rules.evaluate(seen, kitchen, 0).isEmpty());
+    assertTrue(rules.evaluate(seen, kitchen, 1000).isEmpty());
+    List<Map<String, Object>> firings = rules.evaluate(seen, kitchen, 2000);
+
+    assertEquals(1, firings.size());
+    assertEquals("desk", firings.get(0).get("rule"));
+    assertEquals(IDENTITY + ":1", firings.get(0).get("identity"));
+    assertEquals(2000L, firings.get(0).get("dwellMillis"));
+    // Other beacons of the cycle do not match the rule.
+    assertTrue(rules.evaluate(Collections.singletonList(beacon(2)), kitchen, 3000).isEmpty());
+  }
+
+  @Test
+  public void beaconRuleOnlyFiresOnceAnEpisodeWithoutCooldown() {
+    assertEquals(1, rules.setRules(Collections.singletonList(rule("desk"))));
+    Collection<Beacon> seen = Collections.singletonList(beacon(1));
+
+    assertEquals(1, rules.evaluate(seen, kitchen, 0).size());
+    assertTrue(rules.evaluate(seen, kitchen, 1000).isEmpty());
+    assertTrue(rules.evaluate(seen, kitchen, 2000).isEmpty());
+  }
+
+  @Test
+  public void cooldownSpacesRepeatedFirings() {
+    assertEquals(1, rules.setRules(Collections.singletonList(rule("desk", "cooldownMillis", 2500))));
+    Collection<Beacon> seen = Collections.singletonList(beacon(1));
+
+    int fired = 0;
+    for (long now = 0; now <= 6000; now += 1000) {
+      fired += rules.evaluate(seen, kitchen, now).size();
+    }
+    // At 0, 3000 and 6000.
+    assertEquals(3, fired);
+  }
+
+  @Test
+  public void absentBeaconStartsTheDwellOver() {
+    assertEquals(1, rules.setRules(Collections.singletonList(rule("desk", "dwellMillis", 2000))));
+    Collection<Beacon> seen = Collections.singletonList(beacon(1));
+
+    assertTrue(rules.evaluate(seen, kitchen, 0).isEmpty());
+    assertTrue(rules.evaluate(seen, kitchen, 1000).isEmpty());
+    // Not seen for longer than two cycles of the default period.
+    assertTrue(rules.evaluate(seen, kitchen, 5000).isEmpty());
+    assertTrue(rules.evaluate(seen, kitchen, 6000).isEmpty());
+    assertEquals(1, rules.evaluate(seen, kitchen, 7000).size());
+  }
+
+  @Test
+  public void dwellSpansTheCyclesOfALongScanPeriod() {
+    // Background mode: 10 s scans every 5 minutes.
+    rules.setCycleMillis(10000 + 300000);
+    assertEquals(1, rules.setRules(Collections.singletonList(rule("desk", "dwellMillis", 600000))));
+    Collection<Beacon> seen = Collections.singletonList(beacon(1));
+
+    assertTrue(rules.evaluate(seen, kitchen, 0).isEmpty());
+    assertTrue(rules.evaluate(seen, kitchen, 310000).isEmpty());
+    assertEquals(1, rules.evaluate(seen, kitchen, 620000).size());
+  }
+
+  @Test
+  public void anyRegionRuleKeepsRegionsOfALongScanPeriod() {
+    rules.setCycleMillis(10000 + 300000);
+    Collection<Beacon> one = Collections.singletonList(beacon(1));
+    Collection<Beacon> other = Collections.singletonList(beacon(2));
+
+    // Each region sees one beacon, and their cycles are minutes apart.
+    assertTrue(rules.evaluate(one, kitchen, 0).isEmpty());
+    assertTrue(rules.evaluate(other, hall, 1000).isEmpty());
+    List<Map<String, Object>> firings = rules.evaluate(one, kitchen, 310000);
+
+    assertEquals(1, firings.size());
+    assertEquals(2, firings.get(0).get("count"));
+  }
+
+  private static Map<String, Object> rule(String id, Object... options) {
+    Map<String, Object> rule = new HashMap<>();
+    rule.put("id", id);
+    rule.put("identity", IDENTITY + ":1");
+    for (int i = 0; i < options.length; i += 2) {
+      rule.put((String) options[i], options[i + 1]);
+    }
+    return rule;
+  }
+
+  private static Beacon beacon(int minor) {
+    return new Beacon.Builder()
+        .setId1(UUID)
+        .setId2("1")
+        .setId3(Integer.toString(minor))
+        .setRssi(-60)
+        .build();
+  }
+}
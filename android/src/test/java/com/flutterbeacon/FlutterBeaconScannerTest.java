@@ -0,0 +1,174 @@
+package com.flutterbeacon;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBeaconScannerTest {
+  private FlutterBeaconPlugin plugin;
+  private FlutterBeaconScanner scanner;
+
+  @Before
+  public void setUp() {
+    plugin = new FlutterBeaconPlugin();
+    scanner = new FlutterBeaconScanner(plugin, null);
+  }
+
+  @Test
+  public void rangingSendsOneEventPerRegionAndCycle() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setBeaconCount(30)
+        .setRegionCount(3)
+        .setChurn(0.1)
+        .setRssiNoise(2)
+        .build();
+    FakeEventSink sink = new FakeEventSink(true);
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    long delivered = source.replayRanging(scanner.rangeNotifier, 10);
+
+    assertEquals(30, sink.getSuccessCount());
+    assertEquals(0, sink.getErrorCount());
+    assertEquals(300, delivered);
+    long beacons = 0;
+    for (Object event : sink.getEvents()) {
+      beacons += ((List<?>) ((Map<?, ?>) event).get("beacons")).size();
+    }
+    assertEquals(delivered, beacons);
+    assertEquals(30L, plugin.getMetrics().toMap().get("rangingCycles"));
+  }
+
+  @Test
+  public void cancelledRangingDropsLaterCycles() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder().setRegionCount(2).build();
+    FakeEventSink sink = new FakeEventSink();
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), sink);
+    source.replayRanging(scanner.rangeNotifier, 1);
+
+    // No BeaconManager is attached, stopping must not touch it.
+    scanner.rangingStreamHandler.onCancel(null);
+    source.replayRanging(scanner.rangeNotifier, 3);
+
+    assertEquals(2, sink.getSuccessCount());
+    assertEquals(6L, plugin.getMetrics().toMap().get("eventsDropped"));
+  }
+
+  @Test
+  public void rangingConsumersOnlyGetTheirOwnRegions() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder().setRegionCount(3).build();
+    List<Map<String, Object>> regions = source.getRegionArguments();
+    FakeEventSink ranging = new FakeEventSink(true);
+    FakeEventSink rules = new FakeEventSink();
+    scanner.rangingStreamHandler.onListen(regions.subList(0, 1), ranging);
+    scanner.rulesStreamHandler.onListen(regions.subList(1, 3), rules);
+
+    source.replayRanging(scanner.rangeNotifier, 2);
+    assertEquals(2, ranging.getSuccessCount());
+    assertEquals("region-0", regionOf(ranging.getLastEvent()));
+    assertEquals(3L, plugin.getMetrics().toMap().get("rangingRegions"));
+
+    // Listening again replaces the regions of that consumer only.
+    scanner.rangingStreamHandler.onListen(regions.subList(2, 3), ranging);
+    ranging.reset();
+    source.replayRanging(scanner.rangeNotifier, 1);
+    assertEquals(1, ranging.getSuccessCount());
+    assertEquals("region-2", regionOf(ranging.getLastEvent()));
+    assertEquals(2L, plugin.getMetrics().toMap().get("rangingRegions"));
+
+    scanner.rangingStreamHandler.onCancel(null);
+    assertEquals(2L, plugin.getMetrics().toMap().get("rangingRegions"));
+    scanner.rulesStreamHandler.onCancel(null);
+    assertEquals(0L, plugin.getMetrics().toMap().get("rangingRegions"));
+  }
+
+  @Test
+  public void invalidRangingRegionsReportAnError() {
+    FakeEventSink sink = new FakeEventSink();
+    scanner.rangingStreamHandler.onListen("not a list", sink);
+
+    assertEquals(1, sink.getErrorCount());
+    assertEquals("invalid region for ranging", sink.getLastErrorMessage());
+  }
+
+  @Test
+  public void monitoringSendsEveryCallback() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setRegionCount(20)
+        .setChurn(0.3)
+        .build();
+    FakeEventSink sink = new FakeEventSink();
+    scanner.monitoringStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    long delivered = source.replayMonitoring(scanner.monitorNotifier, 50);
+
+    assertTrue(delivered > 0);
+    assertEquals(delivered, sink.getSuccessCount());
+  }
+
+  @Test
+  public void transitionsWithoutListenerAreReplayedInOrder() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setRegionCount(4)
+        .setChurn(1)
+        .build();
+    scanner.resumeMonitoring(source.getRegions());
+    // Every region flips to inside: one enter and one state per region.
+    source.replayMonitoring(scanner.monitorNotifier, 1);
+
+    FakeEventSink sink = new FakeEventSink(true);
+    scanner.monitoringStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    assertEquals(8, sink.getSuccessCount());
+    Map<?, ?> first = (Map<?, ?>) sink.getEvents().get(0);
+    Map<?, ?> second = (Map<?, ?>) sink.getEvents().get(1);
+    assertEquals("didEnterRegion", first.get("event"));
+    assertEquals("didDetermineStateForRegion", second.get("event"));
+    assertEquals("INSIDE", second.get("state"));
+    assertEquals("region-0", ((Map<?, ?>) first.get("region")).get("identifier"));
+  }
+
+  @Test
+  public void recordedTraceIsReplayedPerCycleAndRegion() throws IOException {
+    String trace = "# cycle,region,uuid,major,minor,rssi,tx,mac\n"
+        + "0,0,CB10023F-A318-3394-4199-000000000000,1,1,-60,-59,02:00:00:00:00:01\n"
+        + "0,1,CB10023F-A318-3394-4199-000000000001,1,2,-70,-59,02:00:00:00:00:02\n"
+        + "1,0,CB10023F-A318-3394-4199-000000000000,1,1,-61,-59,02:00:00:00:00:01\n";
+    SyntheticBeaconSource source = SyntheticBeaconSource.fromTrace(new StringReader(trace));
+    FakeEventSink sink = new FakeEventSink(true);
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    long delivered = source.replayRanging(scanner.rangeNotifier, 2);
+
+    assertEquals(3, delivered);
+    assertEquals(4, sink.getSuccessCount());
+    Map<?, ?> lastCycle = (Map<?, ?>) sink.getEvents().get(3);
+    assertTrue(((List<?>) lastCycle.get("beacons")).isEmpty());
+  }
+
+  @Test
+  public void releaseStopsBatchedScanning() {
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder().setRegionCount(2).build();
+    FakeLeScanner leScanner = new FakeLeScanner();
+    scanner.setLeScanner(leScanner);
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), new FakeEventSink());
+    assertTrue(scanner.setBatchedScanning(new HashMap<String, Object>()));
+    assertTrue(leScanner.isScanning());
+
+    scanner.release();
+
+    assertFalse(leScanner.isScanning());
+  }
+
+  private static Object regionOf(Object event) {
+    return ((Map<?, ?>) ((Map<?, ?>) event).get("region")).get("identifier");
+  }
+}
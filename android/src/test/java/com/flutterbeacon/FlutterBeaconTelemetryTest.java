@@ -0,0 +1,93 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FlutterBeaconTelemetryTest {
+  private static final String KEY = "edd1ebeac04e5defa017:0badc0ffee00";
+
+  private FlutterBeaconTelemetry telemetry;
+
+  @Before
+  public void setUp() {
+    telemetry = new FlutterBeaconTelemetry();
+  }
+
+  @Test
+  public void firstFrameIsReported() {
+    // 23.5 degrees, 1000 frames sent, up for 120 s.
+    Map<String, Object> map = telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1000, 1200));
+
+    assertNotNull(map);
+    assertEquals(0, map.get("version"));
+    assertEquals(3000, map.get("batteryMilliVolts"));
+    assertEquals(23.5, (Double) map.get("temperature"), 1e-9);
+    assertEquals(1000L, map.get("advertisingCount"));
+    assertEquals(120L, map.get("uptimeSeconds"));
+  }
+
+  @Test
+  public void unchangedFrameIsNotReportedAgain() {
+    telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1000, 1200));
+
+    // Counters always move, only battery, temperature and version count as a change.
+    assertNull(telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1010, 1300)));
+    assertNotNull(telemetry.changedTelemetry(KEY, uid(0, 2990, 0x1780, 1020, 1400)));
+    assertNotNull(telemetry.changedTelemetry(KEY, uid(0, 2990, 0x1800, 1030, 1500)));
+    assertNull(telemetry.changedTelemetry(KEY, uid(0, 2990, 0x1800, 1040, 1600)));
+    // Other beacons are tracked on their own.
+    assertNotNull(telemetry.changedTelemetry("other", uid(0, 2990, 0x1800, 1040, 1600)));
+  }
+
+  @Test
+  public void rebootIsReported() {
+    telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1000, 1200));
+    assertNull(telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1010, 5000)));
+
+    // Uptime going back below the last frame seen, not the last one reported.
+    Map<String, Object> map = telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 5, 3000));
+    assertNotNull(map);
+    assertEquals(300L, map.get("uptimeSeconds"));
+  }
+
+  @Test
+  public void temperatureIsLeftOutWhenNotSupported() {
+    Map<String, Object> map = telemetry.changedTelemetry(KEY, uid(0, 3000, 0x8000, 1000, 1200));
+
+    assertFalse(map.containsKey("temperature"));
+  }
+
+  @Test
+  public void beaconWithoutTelemetryIsSkipped() {
+    Beacon beacon = new Beacon.Builder().setId1("0x00").build();
+
+    assertNull(telemetry.changedTelemetry(KEY, beacon));
+  }
+
+  @Test
+  public void clearReportsEveryBeaconAgain() {
+    telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1000, 1200));
+    telemetry.clear();
+
+    assertNotNull(telemetry.changedTelemetry(KEY, uid(0, 3000, 0x1780, 1010, 1300)));
+  }
+
+  private static Beacon uid(long version, long batteryMilliVolts, long temperature,
+                            long advertisingCount, long uptime) {
+    return new Beacon.Builder()
+        .setId1("0xedd1ebeac04e5defa017")
+        .setId2("0x0badc0ffee00")
+        .setServiceUuid(0xfeaa)
+        .setExtraDataFields(Arrays.asList(version, batteryMilliVolts, temperature, advertisingCount, uptime))
+        .build();
+  }
+}
@@ -0,0 +1,71 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.utils.UrlBeaconUrlCompressor;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FlutterBeaconUtilsTest {
+  @Test
+  public void iBeaconIsSentWithMajorAndMinor() {
+    Beacon beacon = new Beacon.Builder()
+        .setId1("2f234454-cf6d-4a0f-adf2-f4911ba9ffa6")
+        .setId2("1")
+        .setId3("2")
+        .setRssi(-60)
+        .build();
+
+    Map<String, Object> map = toMap(beacon);
+
+    assertEquals("altbeacon", map.get("type"));
+    assertEquals("2F234454-CF6D-4A0F-ADF2-F4911BA9FFA6", map.get("proximityUUID"));
+    assertEquals(1, map.get("major"));
+    assertEquals(2, map.get("minor"));
+    assertNull(map.get("identifiers"));
+  }
+
+  @Test
+  public void eddystoneUrlIsSentWithItsUrl() throws Exception {
+    byte[] compressed = UrlBeaconUrlCompressor.compress("https://example.com");
+    Beacon beacon = new Beacon.Builder()
+        .setIdentifiers(Collections.singletonList(Identifier.fromBytes(compressed, 0, compressed.length, false)))
+        .setServiceUuid(0xfeaa)
+        .setBeaconTypeCode(0x10)
+        .build();
+
+    Map<String, Object> map = toMap(beacon);
+
+    assertEquals("eddystoneURL", map.get("type"));
+    assertEquals("https://example.com", map.get("url"));
+    assertEquals("", map.get("namespaceId"));
+    assertEquals(-1, map.get("major"));
+  }
+
+  @Test
+  public void otherLayoutsAreSentAsIdentifiers() {
+    Beacon beacon = new Beacon.Builder()
+        .setIdentifiers(Arrays.asList(Identifier.parse("0x0102030405"), Identifier.fromInt(7)))
+        .build();
+
+    Map<String, Object> map = toMap(beacon);
+
+    assertEquals("custom", map.get("type"));
+    assertEquals(Arrays.asList("0x0102030405", "7"), map.get("identifiers"));
+    assertEquals("", map.get("proximityUUID"));
+    assertEquals(-1, map.get("minor"));
+  }
+
+  private static Map<String, Object> toMap(Beacon beacon) {
+    List<Map<String, Object>> list = FlutterBeaconUtils.beaconsToArray(Collections.singletonList(beacon));
+    assertEquals(1, list.size());
+    return list.get(0);
+  }
+}
@@ -0,0 +1,77 @@
+package com.flutterbeacon;
+
+import android.bluetooth.BluetoothAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterBluetoothStateReceiverTest {
+  private FlutterBeaconPlugin plugin;
+  private FlutterBeaconScanner scanner;
+  private FakeLeScanner leScanner;
+
+  @Before
+  public void setUp() {
+    plugin = new FlutterBeaconPlugin();
+    scanner = new FlutterBeaconScanner(plugin, null);
+    leScanner = new FakeLeScanner();
+    scanner.setLeScanner(leScanner);
+
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder().setRegionCount(2).build();
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), new FakeEventSink());
+    scanner.setBatchedScanning(new HashMap<String, Object>());
+  }
+
+  @Test
+  public void scanningPausesWhileTheAdapterIsOff() {
+    assertTrue(leScanner.isScanning());
+
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_TURNING_OFF);
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_OFF);
+    assertTrue(scanner.isPaused());
+    assertFalse(leScanner.isScanning());
+    assertEquals(1L, plugin.getMetrics().toMap().get("scanPauses"));
+
+    // Back on: the scan resumes once the adapter settled, not right away.
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_ON);
+    assertTrue(scanner.isPaused());
+    assertFalse(leScanner.isScanning());
+
+    scanner.resume.run();
+    assertFalse(scanner.isPaused());
+    assertTrue(leScanner.isScanning());
+    assertEquals(2L, leScanner.getStarts());
+  }
+
+  @Test
+  public void resumeAfterTheAdapterWentOffAgainIsIgnored() {
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_OFF);
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_ON);
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_OFF);
+    assertEquals(1L, plugin.getMetrics().toMap().get("scanPauses"));
+
+    scanner.resume.run();
+    scanner.onBluetoothStateChanged(BluetoothAdapter.STATE_OFF);
+    assertEquals(2L, plugin.getMetrics().toMap().get("scanPauses"));
+    assertFalse(leScanner.isScanning());
+  }
+
+  @Test
+  public void deviceWithoutBluetoothIsOff() {
+    FlutterBluetoothStateReceiver receiver = new FlutterBluetoothStateReceiver(new FakeContext(), scanner);
+    FakeEventSink sink = new FakeEventSink(true);
+
+    receiver.onListen(null, sink);
+    receiver.refresh();
+
+    assertEquals("STATE_OFF", sink.getLastEvent());
+    assertFalse(receiver.isEnabled());
+    assertTrue(scanner.isPaused());
+  }
+}
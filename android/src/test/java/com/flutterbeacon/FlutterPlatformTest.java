@@ -0,0 +1,99 @@
+package com.flutterbeacon;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlutterPlatformTest {
+  private FakeContext context;
+  private CountingPlatform platform;
+
+  @Before
+  public void setUp() {
+    context = new FakeContext();
+    platform = new CountingPlatform(context);
+  }
+
+  @Test
+  public void broadcastSupportIsOnlyKeptOnceSupported() {
+    // Adapter off: no advertiser, asked again every time.
+    platform.broadcastSupported = false;
+    assertFalse(platform.isBroadcastSupported());
+    assertFalse(platform.isBroadcastSupported());
+    assertEquals(2, platform.broadcastChecks);
+
+    platform.broadcastSupported = true;
+    assertTrue(platform.isBroadcastSupported());
+    platform.broadcastSupported = false;
+    assertTrue(platform.isBroadcastSupported());
+    assertEquals(3, platform.broadcastChecks);
+  }
+
+  @Test
+  public void permissionIsOnlyKeptOnceGranted() {
+    platform.permissionGranted = false;
+    assertFalse(platform.checkLocationServicesPermission());
+    platform.permissionGranted = true;
+    assertTrue(platform.checkLocationServicesPermission());
+    assertTrue(platform.checkLocationServicesPermission());
+    assertEquals(2, platform.permissionChecks);
+
+    platform.invalidateLocationServicesPermission();
+    assertTrue(platform.checkLocationServicesPermission());
+    assertEquals(3, platform.permissionChecks);
+  }
+
+  @Test
+  public void locationServicesAreResolvedAgainWhenProvidersChange() {
+    platform.locationEnabled = false;
+    assertFalse(platform.checkLocationServicesIfEnabled());
+    platform.locationEnabled = true;
+    assertFalse(platform.checkLocationServicesIfEnabled());
+    assertEquals(1, platform.locationChecks);
+
+    platform.onProvidersChanged();
+    assertTrue(platform.checkLocationServicesIfEnabled());
+    assertEquals(2, platform.locationChecks);
+  }
+
+  @Test
+  public void disposeUnregistersTheReceiver() {
+    assertEquals(1, context.getReceivers().size());
+    platform.dispose();
+    assertTrue(context.getReceivers().isEmpty());
+  }
+
+  private static class CountingPlatform extends FlutterPlatform {
+    boolean broadcastSupported;
+    boolean permissionGranted;
+    boolean locationEnabled;
+    int broadcastChecks;
+    int permissionChecks;
+    int locationChecks;
+
+    CountingPlatform(FakeContext context) {
+      super(null, context, null);
+    }
+
+    @Override
+    boolean resolveBroadcastSupported() {
+      broadcastChecks++;
+      return broadcastSupported;
+    }
+
+    @Override
+    boolean resolveLocationServicesPermission() {
+      permissionChecks++;
+      return permissionGranted;
+    }
+
+    @Override
+    boolean resolveLocationServicesIfEnabled() {
+      locationChecks++;
+      return locationEnabled;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package com.flutterbeacon;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stand-in for the gateway process {@link FlutterBeaconExporter} ships to: reads
+ * frames on a local TCP port, acknowledges them and counts the sightings. Frames
+ * sent again after a retry are only counted once, so the count shows what was lost.
+ * It can be stopped and started again on the same port to simulate an outage.
+ */
+class LocalGatewayReceiver {
+  private final Set<String> frames = new HashSet<>();
+  private int port;
+  private ServerSocket serverSocket;
+  private Socket socket;
+  private Thread thread;
+
+  private long framesReceived;
+  private long duplicateFrames;
+  private long sightings;
+  private long bytesReceived;
+
+  synchronized void start() throws IOException {
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    port = serverSocket.getLocalPort();
+
+    final ServerSocket server = serverSocket;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        accept(server);
+      }
+    }, "gateway");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void stop() throws IOException {
+    Thread stopped;
+    synchronized (this) {
+      serverSocket.close();
+      if (socket != null) {
+        socket.close();
+      }
+      stopped = thread;
+    }
+    try {
+      stopped.join(1000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  synchronized long getSightings() {
+    return sightings;
+  }
+
+  synchronized long getFramesReceived() {
+    return framesReceived;
+  }
+
+  synchronized long getDuplicateFrames() {
+    return duplicateFrames;
+  }
+
+  synchronized long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  private void accept(ServerSocket server) {
+    while (!server.isClosed()) {
+      try {
+        Socket accepted = server.accept();
+        synchronized (this) {
+          socket = accepted;
+        }
+        read(accepted);
+      } catch (IOException ignored) {
+        // Closed by the exporter or by stop().
+      }
+    }
+  }
+
+  private void read(Socket accepted) throws IOException {
+    DataInputStream in = new DataInputStream(accepted.getInputStream());
+    OutputStream out = accepted.getOutputStream();
+    try {
+      while (true) {
+        int length = in.readInt();
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        onFrame(frame);
+        out.write(FlutterBeaconExporter.ACK);
+        out.flush();
+      }
+    } finally {
+      accepted.close();
+    }
+  }
+
+  private synchronized void onFrame(byte[] frame) throws IOException {
+    framesReceived++;
+    bytesReceived += frame.length + 4;
+    if (!frames.add(digest(frame))) {
+      duplicateFrames++;
+      return;
+    }
+
+    InputStream payload = new ByteArrayInputStream(frame, 1, frame.length - 1);
+    if ((frame[0] & FlutterBeaconExporter.FLAG_GZIP) != 0) {
+      payload = new GZIPInputStream(payload);
+    }
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = payload.read(buffer)) > 0) {
+      decoded.write(buffer, 0, read);
+    }
+    for (byte b : decoded.toByteArray()) {
+      if (b == '\n') {
+        sightings++;
+      }
+    }
+  }
+
+  private static String digest(byte[] frame) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-1").digest(frame);
+      StringBuilder builder = new StringBuilder();
+      for (byte b : hash) {
+        builder.append(String.format("%02x", b));
+      }
+      return builder.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
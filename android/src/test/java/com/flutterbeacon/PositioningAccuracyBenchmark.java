@@ -0,0 +1,138 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.distance.DistanceCalculator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Accuracy of {@link FlutterBeaconPositioning} on a synthetic walk through a room
+ * with beacons at known coordinates. Ranged distances get proportional noise and a
+ * share of gross outliers (reflections), and are turned into RSSI so they go through
+ * the same {@code Beacon.getDistance()} path as live beacons.
+ *
+ * <p>For each outlier share, the least squares solver and the particle filter report
+ * their mean and 95th percentile error in meters and their cost per ranging cycle.
+ */
+class PositioningAccuracyBenchmark {
+  private static final int TX_POWER = -59;
+  private static final double[][] COORDINATES = {
+      {0, 0}, {20, 0}, {20, 15}, {0, 15}, {10, 0}, {10, 15}, {0, 7.5}, {20, 7.5}
+  };
+  private static final int CYCLES = 600;
+  private static final long CYCLE_MILLIS = 1100;
+
+  public static void main(String[] args) throws IOException {
+    // Free space path loss, the same model the synthetic RSSI is generated with.
+    Beacon.setDistanceCalculator(new DistanceCalculator() {
+      @Override
+      public double calculateDistance(int txPower, double rssi) {
+        return Math.pow(10, (txPower - rssi) / 20.0);
+      }
+    });
+
+    List<String> results = new ArrayList<>();
+    for (double outliers : new double[]{0, 0.1, 0.25}) {
+      results.add(run(false, outliers).toJson());
+      results.add(run(true, outliers).toJson());
+    }
+    BenchmarkReport.write(args, "positioning", results);
+  }
+
+  static Result run(boolean particleFilter, double outlierShare) {
+    Random random = new Random(42);
+    List<Beacon> beacons = new ArrayList<>();
+    List<Map<String, Object>> map = new ArrayList<>();
+    for (int i = 0; i < COORDINATES.length; i++) {
+      Beacon beacon = new Beacon.Builder()
+          .setId1("cb10023f-a318-3394-4199-a8730c7c1aec")
+          .setId2("1")
+          .setId3(String.valueOf(i))
+          .setTxPower(TX_POWER)
+          .setRssi(TX_POWER)
+          .build();
+      beacons.add(beacon);
+
+      Map<String, Object> entry = new HashMap<>();
+      entry.put("identity", FlutterBeaconUtils.identityOf(beacon));
+      entry.put("x", COORDINATES[i][0]);
+      entry.put("y", COORDINATES[i][1]);
+      map.add(entry);
+    }
+
+    FlutterBeaconPositioning positioning = new FlutterBeaconPositioning();
+    positioning.setSeed(7);
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("beacons", map);
+    arguments.put("particleFilter", particleFilter);
+    positioning.configure(arguments);
+
+    double[] errors = new double[CYCLES];
+    int solved = 0;
+    long nanos = 0;
+    for (int cycle = 0; cycle < CYCLES; cycle++) {
+      // Walk around the room along an ellipse.
+      double angle = 2 * Math.PI * cycle / 120.0;
+      double x = 10 + 7 * Math.cos(angle);
+      double y = 7.5 + 5 * Math.sin(angle);
+
+      for (int i = 0; i < beacons.size(); i++) {
+        double distance = Math.hypot(x - COORDINATES[i][0], y - COORDINATES[i][1]);
+        double measured = Math.max(0.1, distance * (1 + 0.1 * random.nextGaussian()));
+        if (random.nextDouble() < outlierShare) {
+          measured += 4 + 6 * random.nextDouble();
+        }
+        beacons.get(i).setRunningAverageRssi(TX_POWER - 20 * Math.log10(measured));
+      }
+
+      long startedAt = System.nanoTime();
+      Map<String, Object> position = positioning.estimate(beacons, cycle * CYCLE_MILLIS);
+      nanos += System.nanoTime() - startedAt;
+      if (position != null) {
+        errors[solved++] = Math.hypot((Double) position.get("x") - x, (Double) position.get("y") - y);
+      }
+    }
+
+    double[] sorted = Arrays.copyOf(errors, solved);
+    Arrays.sort(sorted);
+    double sum = 0;
+    for (double error : sorted) {
+      sum += error;
+    }
+    return new Result(particleFilter, outlierShare, solved,
+        solved > 0 ? sum / solved : -1,
+        solved > 0 ? sorted[(int) Math.min(solved - 1, Math.ceil(solved * 0.95) - 1)] : -1,
+        nanos / 1000.0 / CYCLES);
+  }
+
+  static class Result {
+    final boolean particleFilter;
+    final double outlierShare;
+    final int solved;
+    final double meanError;
+    final double p95Error;
+    final double microsPerCycle;
+
+    Result(boolean particleFilter, double outlierShare, int solved, double meanError, double p95Error, double microsPerCycle) {
+      this.particleFilter = particleFilter;
+      this.outlierShare = outlierShare;
+      this.solved = solved;
+      this.meanError = meanError;
+      this.p95Error = p95Error;
+      this.microsPerCycle = microsPerCycle;
+    }
+
+    String toJson() {
+      return String.format(Locale.US,
+          "{\"particleFilter\": %b, \"outlierShare\": %.2f, \"solved\": %d, \"meanErrorMeters\": %.3f, \"p95ErrorMeters\": %.3f, \"microsPerCycle\": %.1f}",
+          particleFilter, outlierShare, solved, meanError, p95Error, microsPerCycle);
+    }
+  }
+}
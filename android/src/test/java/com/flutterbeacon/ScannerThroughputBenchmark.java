@@ -0,0 +1,203 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.RangeNotifier;
+import org.altbeacon.beacon.Region;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-to-end throughput of {@link FlutterBeaconScanner}: notifier callback, conversion
+ * to maps and delivery to the event sink, fed by {@link SyntheticBeaconSource}.
+ *
+ * <p>Each beacon and region count reports cycles per second, the p99 latency of one
+ * callback and the bytes allocated per cycle, which is what makes the sink lag first.
+ */
+class ScannerThroughputBenchmark {
+  private static final int[] BEACON_COUNTS = {10, 100, 1000, 5000};
+  private static final int[] REGION_COUNTS = {1, 50, 500};
+  private static final long TARGET_CALLBACKS = 200000;
+
+  public static void main(String[] args) throws IOException {
+    List<String> results = new ArrayList<>();
+
+    for (int regions : REGION_COUNTS) {
+      for (int beacons : BEACON_COUNTS) {
+        results.add(runRanging(beacons, regions).toJson());
+      }
+      results.add(runMonitoring(regions).toJson());
+    }
+    BenchmarkReport.write(args, "scanner", results);
+  }
+
+  static Result runRanging(int beacons, int regions) {
+    FlutterBeaconScanner scanner = new FlutterBeaconScanner(new FlutterBeaconPlugin(), null);
+    FakeEventSink sink = new FakeEventSink();
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setBeaconCount(beacons)
+        .setRegionCount(regions)
+        .setChurn(0.05)
+        .setRssiNoise(3)
+        .build();
+    scanner.rangingStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    int cycles = (int) Math.max(20, Math.min(2000, TARGET_CALLBACKS / Math.max(beacons, regions)));
+    LatencyRecorder recorder = new LatencyRecorder(cycles * regions);
+    RangeNotifier timed = timedRangeNotifier(scanner.rangeNotifier, recorder);
+
+    // Warm up the conversion path before measuring.
+    source.replayRanging(scanner.rangeNotifier, Math.max(5, cycles / 4));
+    sink.reset();
+
+    long allocatedBefore = allocatedBytes();
+    long startedAt = System.nanoTime();
+    source.replayRanging(timed, cycles);
+    long elapsed = System.nanoTime() - startedAt;
+    long allocated = allocatedBytes() - allocatedBefore;
+
+    scanner.rangingStreamHandler.onCancel(null);
+    return new Result("ranging", beacons, regions, cycles, elapsed, recorder.percentile(0.99),
+        allocated < 0 ? -1 : allocated / cycles, sink.getPayloadBytes() / cycles);
+  }
+
+  static Result runMonitoring(int regions) {
+    FlutterBeaconScanner scanner = new FlutterBeaconScanner(new FlutterBeaconPlugin(), null);
+    FakeEventSink sink = new FakeEventSink();
+    SyntheticBeaconSource source = new SyntheticBeaconSource.Builder()
+        .setBeaconCount(regions)
+        .setRegionCount(regions)
+        .setChurn(0.5)
+        .build();
+    scanner.monitoringStreamHandler.onListen(source.getRegionArguments(), sink);
+
+    int cycles = (int) Math.max(20, Math.min(2000, TARGET_CALLBACKS / regions));
+    LatencyRecorder recorder = new LatencyRecorder(cycles * regions * 2);
+    MonitorNotifier timed = timedMonitorNotifier(scanner.monitorNotifier, recorder);
+
+    source.replayMonitoring(scanner.monitorNotifier, Math.max(5, cycles / 4));
+    sink.reset();
+
+    long allocatedBefore = allocatedBytes();
+    long startedAt = System.nanoTime();
+    source.replayMonitoring(timed, cycles);
+    long elapsed = System.nanoTime() - startedAt;
+    long allocated = allocatedBytes() - allocatedBefore;
+
+    scanner.monitoringStreamHandler.onCancel(null);
+    return new Result("monitoring", 0, regions, cycles, elapsed, recorder.percentile(0.99),
+        allocated < 0 ? -1 : allocated / cycles, sink.getPayloadBytes() / cycles);
+  }
+
+  private static RangeNotifier timedRangeNotifier(final RangeNotifier delegate, final LatencyRecorder recorder) {
+    return new RangeNotifier() {
+      @Override
+      public void didRangeBeaconsInRegion(Collection<Beacon> collection, Region region) {
+        long startedAt = System.nanoTime();
+        delegate.didRangeBeaconsInRegion(collection, region);
+        recorder.record(System.nanoTime() - startedAt);
+      }
+    };
+  }
+
+  private static MonitorNotifier timedMonitorNotifier(final MonitorNotifier delegate, final LatencyRecorder recorder) {
+    return new MonitorNotifier() {
+      @Override
+      public void didEnterRegion(Region region) {
+        long startedAt = System.nanoTime();
+        delegate.didEnterRegion(region);
+        recorder.record(System.nanoTime() - startedAt);
+      }
+
+      @Override
+      public void didExitRegion(Region region) {
+        long startedAt = System.nanoTime();
+        delegate.didExitRegion(region);
+        recorder.record(System.nanoTime() - startedAt);
+      }
+
+      @Override
+      public void didDetermineStateForRegion(int state, Region region) {
+        long startedAt = System.nanoTime();
+        delegate.didDetermineStateForRegion(state, region);
+        recorder.record(System.nanoTime() - startedAt);
+      }
+    };
+  }
+
+  // Bytes allocated by the current thread, or -1 when the JVM cannot report it.
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static final class LatencyRecorder {
+    private long[] samples;
+    private int count;
+
+    LatencyRecorder(int capacity) {
+      this.samples = new long[Math.max(16, capacity)];
+    }
+
+    void record(long nanos) {
+      if (count == samples.length) {
+        samples = Arrays.copyOf(samples, count * 2);
+      }
+      samples[count++] = nanos;
+    }
+
+    long percentile(double p) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+    }
+  }
+
+  static final class Result {
+    final String path;
+    final int beacons;
+    final int regions;
+    final int cycles;
+    final long elapsedNanos;
+    final long p99Nanos;
+    final long allocatedBytesPerCycle;
+    final long payloadBytesPerCycle;
+
+    Result(String path, int beacons, int regions, int cycles, long elapsedNanos, long p99Nanos,
+           long allocatedBytesPerCycle, long payloadBytesPerCycle) {
+      this.path = path;
+      this.beacons = beacons;
+      this.regions = regions;
+      this.cycles = cycles;
+      this.elapsedNanos = elapsedNanos;
+      this.p99Nanos = p99Nanos;
+      this.allocatedBytesPerCycle = allocatedBytesPerCycle;
+      this.payloadBytesPerCycle = payloadBytesPerCycle;
+    }
+
+    double cyclesPerSecond() {
+      return cycles * 1e9 / elapsedNanos;
+    }
+
+    String toJson() {
+      return String.format(Locale.US,
+          "{\"path\":\"%s\",\"beacons\":%d,\"regions\":%d,\"cycles\":%d,\"opsPerSecond\":%.2f,"
+              + "\"beaconsPerSecond\":%.2f,\"p99LatencyMicros\":%.2f,\"allocatedBytesPerCycle\":%d,"
+              + "\"payloadBytesPerCycle\":%d}",
+          path, beacons, regions, cycles, cyclesPerSecond(), cyclesPerSecond() * beacons,
+          p99Nanos / 1000.0, allocatedBytesPerCycle, payloadBytesPerCycle);
+    }
+  }
+}
@@ -0,0 +1,326 @@
+package com.flutterbeacon;
+
+import org.altbeacon.beacon.Beacon;
+import org.altbeacon.beacon.Identifier;
+import org.altbeacon.beacon.MonitorNotifier;
+import org.altbeacon.beacon.RangeNotifier;
+import org.altbeacon.beacon.Region;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Feeds {@link RangeNotifier} and {@link MonitorNotifier} from a generated or recorded
+ * trace instead of a live {@code BeaconManager}, so the Android layer can be exercised
+ * on a plain JVM.
+ *
+ * <p>Recorded traces are CSV with one sighting per line:
+ * {@code cycle,regionIndex,proximityUUID,major,minor,rssi,txPower,macAddress}.
+ * Lines starting with {@code #} are ignored.
+ *
+ * <p>A scanner created with a plugin that was never attached has no {@code BeaconManager},
+ * so {@code rangingStreamHandler.onListen(source.getRegionArguments(), sink)} only records
+ * the regions and sink, and {@link #replayRanging} can drive {@code rangeNotifier} directly.
+ */
+class SyntheticBeaconSource {
+  private static final String UUID_PREFIX = "CB10023F-A318-3394-4199-";
+
+  private final Random random;
+  private final int beaconCount;
+  private final double churn;
+  private final double rssiNoise;
+  private final long cycleIntervalMillis;
+  private final List<Region> regions = new ArrayList<>();
+  private final List<List<Beacon>> beaconsByRegion = new ArrayList<>();
+  private final List<List<List<Beacon>>> recordedCycles;
+  private final boolean[] inside;
+
+  private int nextMinor;
+  private long nextAddress;
+
+  private SyntheticBeaconSource(Builder builder) {
+    this.random = new Random(builder.seed);
+    this.beaconCount = builder.beaconCount;
+    this.churn = builder.churn;
+    this.rssiNoise = builder.rssiNoise;
+    this.cycleIntervalMillis = builder.cycleIntervalMillis;
+    this.recordedCycles = null;
+
+    for (int i = 0; i < builder.regionCount; i++) {
+      regions.add(new Region("region-" + i, Collections.singletonList(regionUuid(i))));
+      beaconsByRegion.add(new ArrayList<Beacon>());
+    }
+    for (int i = 0; i < beaconCount; i++) {
+      int regionIndex = i % regions.size();
+      beaconsByRegion.get(regionIndex).add(newBeacon(regionIndex));
+    }
+    this.inside = new boolean[regions.size()];
+  }
+
+  private SyntheticBeaconSource(int regionCount, List<List<List<Beacon>>> recordedCycles) {
+    this.random = new Random(0);
+    this.beaconCount = 0;
+    this.churn = 0;
+    this.rssiNoise = 0;
+    this.cycleIntervalMillis = 0;
+    this.recordedCycles = recordedCycles;
+
+    for (int i = 0; i < regionCount; i++) {
+      regions.add(new Region("region-" + i, Collections.singletonList(regionUuid(i))));
+    }
+    this.inside = new boolean[regions.size()];
+  }
+
+  /**
+   * Load a recorded trace. Cycles are replayed in file order and loop when
+   * more cycles are requested than were recorded.
+   */
+  static SyntheticBeaconSource fromTrace(Reader reader) throws IOException {
+    BufferedReader in = new BufferedReader(reader);
+    Map<Integer, Map<Integer, List<Beacon>>> cycles = new HashMap<>();
+    int maxCycle = -1;
+    int maxRegion = -1;
+
+    String line;
+    while ((line = in.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      if (fields.length < 8) {
+        throw new IOException("Invalid trace line: " + line);
+      }
+
+      int cycle = Integer.parseInt(fields[0].trim());
+      int regionIndex = Integer.parseInt(fields[1].trim());
+      Beacon beacon = new Beacon.Builder()
+          .setId1(fields[2].trim())
+          .setId2(fields[3].trim())
+          .setId3(fields[4].trim())
+          .setRssi(Integer.parseInt(fields[5].trim()))
+          .setTxPower(Integer.parseInt(fields[6].trim()))
+          .setBluetoothAddress(fields[7].trim())
+          .setManufacturer(0x004c)
+          .setDataFields(Collections.singletonList(0L))
+          .build();
+
+      Map<Integer, List<Beacon>> regionsInCycle = cycles.get(cycle);
+      if (regionsInCycle == null) {
+        regionsInCycle = new HashMap<>();
+        cycles.put(cycle, regionsInCycle);
+      }
+      List<Beacon> beacons = regionsInCycle.get(regionIndex);
+      if (beacons == null) {
+        beacons = new ArrayList<>();
+        regionsInCycle.put(regionIndex, beacons);
+      }
+      beacons.add(beacon);
+      maxCycle = Math.max(maxCycle, cycle);
+      maxRegion = Math.max(maxRegion, regionIndex);
+    }
+
+    List<List<List<Beacon>>> recorded = new ArrayList<>();
+    for (int cycle = 0; cycle <= maxCycle; cycle++) {
+      List<List<Beacon>> byRegion = new ArrayList<>();
+      Map<Integer, List<Beacon>> regionsInCycle = cycles.get(cycle);
+      for (int regionIndex = 0; regionIndex <= maxRegion; regionIndex++) {
+        List<Beacon> beacons = regionsInCycle == null ? null : regionsInCycle.get(regionIndex);
+        byRegion.add(beacons == null ? Collections.<Beacon>emptyList() : beacons);
+      }
+      recorded.add(byRegion);
+    }
+
+    return new SyntheticBeaconSource(maxRegion + 1, recorded);
+  }
+
+  List<Region> getRegions() {
+    return regions;
+  }
+
+  /**
+   * Regions in the shape Dart sends them through the ranging and monitoring
+   * event channels, ready to pass to {@code StreamHandler.onListen}.
+   */
+  List<Map<String, Object>> getRegionArguments() {
+    List<Map<String, Object>> list = new ArrayList<>();
+    for (Region region : regions) {
+      Map<String, Object> map = new HashMap<>();
+      map.put("identifier", region.getUniqueId());
+      map.put("proximityUUID", region.getId1().toString());
+      list.add(map);
+    }
+    return list;
+  }
+
+  /**
+   * Deliver {@code cycles} ranging cycles, one callback per region per cycle.
+   *
+   * @return the number of beacons delivered.
+   */
+  long replayRanging(RangeNotifier notifier, int cycles) {
+    long delivered = 0;
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      List<List<Beacon>> byRegion = nextCycle(cycle);
+      for (int i = 0; i < regions.size(); i++) {
+        List<Beacon> beacons = byRegion.get(i);
+        notifier.didRangeBeaconsInRegion(beacons, regions.get(i));
+        delivered += beacons.size();
+      }
+      pause();
+    }
+    return delivered;
+  }
+
+  /**
+   * Deliver {@code cycles} monitoring cycles. Each region flips between inside and
+   * outside with the configured churn probability, and every flip produces an
+   * enter/exit callback followed by a state determination, as the library does.
+   *
+   * @return the number of callbacks delivered.
+   */
+  long replayMonitoring(MonitorNotifier notifier, int cycles) {
+    long delivered = 0;
+    for (int cycle = 0; cycle < cycles; cycle++) {
+      List<List<Beacon>> byRegion = recordedCycles != null ? nextCycle(cycle) : null;
+      for (int i = 0; i < regions.size(); i++) {
+        boolean nowInside = byRegion != null
+            ? !byRegion.get(i).isEmpty()
+            : (random.nextDouble() < churn) != inside[i];
+        if (nowInside == inside[i]) {
+          continue;
+        }
+
+        inside[i] = nowInside;
+        Region region = regions.get(i);
+        if (nowInside) {
+          notifier.didEnterRegion(region);
+          notifier.didDetermineStateForRegion(MonitorNotifier.INSIDE, region);
+        } else {
+          notifier.didExitRegion(region);
+          notifier.didDetermineStateForRegion(MonitorNotifier.OUTSIDE, region);
+        }
+        delivered += 2;
+      }
+      pause();
+    }
+    return delivered;
+  }
+
+  private List<List<Beacon>> nextCycle(int cycle) {
+    if (recordedCycles != null) {
+      return recordedCycles.get(cycle % recordedCycles.size());
+    }
+
+    int replaced = (int) Math.round(beaconCount * churn);
+    for (int i = 0; i < replaced; i++) {
+      int regionIndex = random.nextInt(regions.size());
+      List<Beacon> beacons = beaconsByRegion.get(regionIndex);
+      if (!beacons.isEmpty()) {
+        beacons.set(random.nextInt(beacons.size()), newBeacon(regionIndex));
+      }
+    }
+    if (rssiNoise > 0) {
+      for (List<Beacon> beacons : beaconsByRegion) {
+        for (Beacon beacon : beacons) {
+          beacon.setRssi(baseRssi(beacon) + (int) Math.round(random.nextGaussian() * rssiNoise));
+        }
+      }
+    }
+    return beaconsByRegion;
+  }
+
+  private Beacon newBeacon(int regionIndex) {
+    int minor = nextMinor++;
+    long address = nextAddress++;
+    return new Beacon.Builder()
+        .setId1(regionUuid(regionIndex).toString())
+        .setId2(String.valueOf(regionIndex & 0xffff))
+        .setId3(String.valueOf(minor & 0xffff))
+        .setRssi(-50 - random.nextInt(45))
+        .setTxPower(-59)
+        .setBluetoothAddress(String.format(Locale.US, "02:00:%02X:%02X:%02X:%02X",
+            (address >> 24) & 0xff, (address >> 16) & 0xff, (address >> 8) & 0xff, address & 0xff))
+        .setManufacturer(0x004c)
+        .setBeaconTypeCode(0x0215)
+        .setDataFields(Collections.singletonList(0L))
+        .build();
+  }
+
+  // Keep the noisy RSSI anchored to the beacon's identity so it does not drift.
+  private static int baseRssi(Beacon beacon) {
+    return -50 - (beacon.getId3().toInt() % 45);
+  }
+
+  private static Identifier regionUuid(int regionIndex) {
+    return Identifier.parse(UUID_PREFIX + String.format(Locale.US, "%012X", regionIndex));
+  }
+
+  private void pause() {
+    if (cycleIntervalMillis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(cycleIntervalMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static final class Builder {
+    private int beaconCount = 10;
+    private int regionCount = 1;
+    private double churn = 0;
+    private double rssiNoise = 0;
+    private long seed = 42;
+    private long cycleIntervalMillis = 0;
+
+    Builder setBeaconCount(int beaconCount) {
+      this.beaconCount = beaconCount;
+      return this;
+    }
+
+    Builder setRegionCount(int regionCount) {
+      this.regionCount = Math.max(1, regionCount);
+      return this;
+    }
+
+    /** Fraction of beacons replaced by new identities on every cycle, 0..1. */
+    Builder setChurn(double churn) {
+      this.churn = churn;
+      return this;
+    }
+
+    /** Standard deviation, in dBm, of the noise added to each sighting. */
+    Builder setRssiNoise(double rssiNoise) {
+      this.rssiNoise = rssiNoise;
+      return this;
+    }
+
+    Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Real time between cycles. Defaults to 0, replaying as fast as the consumer
+     * allows; use e.g. {@code 1100 / speedup} to keep the scan period shape.
+     */
+    Builder setCycleIntervalMillis(long cycleIntervalMillis) {
+      this.cycleIntervalMillis = cycleIntervalMillis;
+      return this;
+    }
+
+    SyntheticBeaconSource build() {
+      return new SyntheticBeaconSource(this);
+    }
+  }
+}
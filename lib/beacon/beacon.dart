@@ -32,6 +32,17 @@ class Beacon {
   /// The instanceId of the beacon (eddystone).
   final String instanceId;
 
+  /// The url of beacon (eddystoneURL).
+  ///
+  /// From iOS this value will be null
+  final String? url;
+
+  /// The identifiers of beacon in layout order, for layouts other than
+  /// iBeacon, AltBeacon and Eddystone (custom).
+  ///
+  /// From iOS this value will be null
+  final List<String>? identifiers;
+
   /// The rssi value of beacon.
   final int? rssi;
 
@@ -46,6 +57,18 @@ class Beacon {
   /// The proximity of beacon.
   final Proximity? _proximity;
 
+  /// The latest Eddystone-TLM telemetry of beacon (eddystone).
+  ///
+  /// Only set when the telemetry changed since it was last reported.
+  /// From iOS this value will be null
+  final EddystoneTelemetry? telemetry;
+
+  /// The id of the physical device this beacon was stitched into.
+  ///
+  /// Only set when identity resolution is enabled.
+  /// From iOS this value will be null
+  final String? logicalId;
+
   /// Create beacon object.
   const Beacon({
     required this.type,
@@ -55,10 +78,14 @@ class Beacon {
     required this.minor,
     required this.namespaceId,
     required this.instanceId,
+    this.url,
+    this.identifiers,
     int? rssi,
     required this.txPower,
     required this.accuracy,
     Proximity? proximity,
+    this.telemetry,
+    this.logicalId,
   })  : this.rssi = rssi ?? -1,
         this._proximity = proximity;
 
@@ -72,10 +99,14 @@ class Beacon {
           minor: json['minor'],
           namespaceId: json['namespaceId'],
           instanceId: json['instanceId'],
+          url: json['url'],
+          identifiers: json['identifiers'] == null ? null : List<String>.from(json['identifiers']),
           rssi: _parseInt(json['rssi']),
           txPower: _parseInt(json['txPower']),
           accuracy: _parseDouble(json['accuracy']),
           proximity: proximity == null ? Proximity.unknown : proximity,
+          telemetry: json['telemetry'] == null ? null : EddystoneTelemetry.fromJson(json['telemetry']),
+          logicalId: json['logicalId'],
         );
 
   /// Parsing dynamic data into double.
@@ -188,6 +219,22 @@ class Beacon {
       map['macAddress'] = macAddress;
     }
 
+    if (telemetry != null) {
+      map['telemetry'] = telemetry!.toJson;
+    }
+
+    if (logicalId != null) {
+      map['logicalId'] = logicalId;
+    }
+
+    if (url != null) {
+      map['url'] = url;
+    }
+
+    if (identifiers != null) {
+      map['identifiers'] = identifiers;
+    }
+
     return map;
   }
 
@@ -251,11 +298,23 @@ class Beacon {
         namespaceId == other.namespaceId && 
         instanceId == other.instanceId && 
         (Platform.isAndroid ? macAddress == other.macAddress : true)) ||
+      (other is Beacon &&
+        type == 'eddystoneURL' &&
+        runtimeType == other.runtimeType &&
+        url == other.url &&
+        macAddress == other.macAddress) ||
+      (other is Beacon &&
+        type == 'custom' &&
+        runtimeType == other.runtimeType &&
+        listEquals(identifiers, other.identifiers) &&
+        macAddress == other.macAddress) ||
       (other is Beacon &&
           runtimeType == other.runtimeType &&
           proximityUUID == other.proximityUUID &&
           major == other.major &&
           minor == other.minor &&
+          url == other.url &&
+          listEquals(identifiers, other.identifiers) &&
           (macAddress != null ? macAddress == other.macAddress : true));
 
   @override
@@ -263,6 +322,10 @@ class Beacon {
     int hashCode = -1;
     if (type == 'eddystone') {
       hashCode = namespaceId.hashCode ^ instanceId.hashCode;
+    } else if (type == 'eddystoneURL') {
+      hashCode = url.hashCode;
+    } else if (type == 'custom') {
+      hashCode = identifiers?.join(':').hashCode ?? 0;
     } else {
       hashCode = proximityUUID.hashCode ^ major.hashCode ^ minor.hashCode;
     }
@@ -25,6 +25,20 @@ class BeaconBroadcast {
 
   final AdvertisingTxPowerLevel? advertisingTxPowerLevel;
 
+  /// The beacon layout to advertise: one of `iBeacon`, `eddystoneUID`,
+  /// `eddystoneURL`, `standardAltBeacon`, a name registered with
+  /// [FlutterBeacon.registerBeaconLayout], or a raw AltBeacon layout string.
+  ///
+  /// When null, the beacon is advertised as iBeacon.
+  final String? layout;
+
+  /// The identifiers of beacon in layout order, used instead of
+  /// [proximityUUID], [major] and [minor] when [layout] is set.
+  final List<dynamic>? identifiers;
+
+  /// The url of beacon (eddystoneURL).
+  final String? url;
+
   BeaconBroadcast({
     this.identifier = 'com.flutterBeacon',
     required this.proximityUUID,
@@ -33,7 +47,9 @@ class BeaconBroadcast {
     this.txPower,
     this.advertisingMode = AdvertisingMode.low,
     this.advertisingTxPowerLevel = AdvertisingTxPowerLevel.high,
-  }) {
+  })  : layout = null,
+        identifiers = null,
+        url = null {
     if (Platform.isAndroid) {
       assert(advertisingMode != null);
       assert(advertisingTxPowerLevel != null);
@@ -42,6 +58,23 @@ class BeaconBroadcast {
     }
   }
 
+  /// Create a broadcast of any beacon format, such as Eddystone or AltBeacon.
+  ///
+  /// For iOS, only iBeacon can be advertised, so this is not supported.
+  BeaconBroadcast.withLayout({
+    required String this.layout,
+    this.identifiers,
+    this.url,
+    this.txPower,
+    this.advertisingMode = AdvertisingMode.low,
+    this.advertisingTxPowerLevel = AdvertisingTxPowerLevel.high,
+  })  : identifier = null,
+        proximityUUID = '',
+        major = 0,
+        minor = 0 {
+    assert(identifiers != null || url != null);
+  }
+
   /// Serialize current instance object into [Map].
   dynamic get toJson {
     final map = <String, dynamic>{
@@ -51,6 +84,18 @@ class BeaconBroadcast {
       'txPower': txPower,
     };
 
+    if (layout != null) {
+      map['layout'] = layout;
+    }
+
+    if (identifiers != null) {
+      map['identifiers'] = identifiers;
+    }
+
+    if (url != null) {
+      map['url'] = url;
+    }
+
     if (advertisingMode != null) {
       map['advertisingMode'] = advertisingMode!.index;
     }
@@ -67,6 +112,29 @@ class BeaconBroadcast {
   }
 }
 
+/// Class for managing one beacon of a broadcast rotation.
+class BroadcastSlot {
+  /// The beacon to advertise.
+  final BeaconBroadcast beacon;
+
+  /// How long the beacon is advertised before the next one takes over.
+  ///
+  /// Ignored when the rotation advertises all beacons concurrently.
+  final Duration duration;
+
+  BroadcastSlot({
+    required this.beacon,
+    this.duration = const Duration(seconds: 1),
+  });
+
+  /// Serialize current instance object into [Map].
+  dynamic get toJson {
+    final map = Map<String, dynamic>.from(beacon.toJson);
+    map['durationMillis'] = duration.inMilliseconds;
+    return map;
+  }
+}
+
 enum AdvertisingMode { low, mid, high }
 
 enum AdvertisingTxPowerLevel { ultraLow, low, mid, high }
@@ -0,0 +1,91 @@
+//  Copyright (c) 2018 Eyro Labs.
+//  Licensed under Apache License v2.0 that can be
+//  found in the LICENSE file.
+
+part of flutter_beacon;
+
+/// Class for placing a beacon on the positioning map.
+class BeaconCoordinate {
+  /// The identifiers of the beacon joined by `:`, e.g. `uuid:major:minor`.
+  final String identity;
+
+  /// The x coordinate of the beacon in meters.
+  final double x;
+
+  /// The y coordinate of the beacon in meters.
+  final double y;
+
+  /// Create beacon coordinate object.
+  const BeaconCoordinate({
+    required this.identity,
+    required this.x,
+    required this.y,
+  });
+
+  /// Serialize current instance object into [Map].
+  dynamic get toJson {
+    return <String, dynamic>{
+      'identity': identity,
+      'x': x,
+      'y': y,
+    };
+  }
+
+  @override
+  String toString() {
+    return json.encode(toJson);
+  }
+}
+
+/// Class for managing a position estimated from ranged beacons.
+class BeaconPosition {
+  /// The x coordinate of the device in meters.
+  final double x;
+
+  /// The y coordinate of the device in meters.
+  final double y;
+
+  /// The estimated error of the position in meters.
+  final double accuracy;
+
+  /// The number of beacons the position was computed from.
+  final int beacons;
+
+  /// The time the position was computed, in milliseconds since epoch.
+  final int timestamp;
+
+  /// Create position object.
+  const BeaconPosition({
+    required this.x,
+    required this.y,
+    required this.accuracy,
+    required this.beacons,
+    required this.timestamp,
+  });
+
+  /// Create position object from json.
+  BeaconPosition.fromJson(dynamic json)
+      : this(
+          x: (json['x'] as num).toDouble(),
+          y: (json['y'] as num).toDouble(),
+          accuracy: (json['accuracy'] as num).toDouble(),
+          beacons: json['beacons'],
+          timestamp: json['timestamp'],
+        );
+
+  /// Serialize current instance object into [Map].
+  dynamic get toJson {
+    return <String, dynamic>{
+      'x': x,
+      'y': y,
+      'accuracy': accuracy,
+      'beacons': beacons,
+      'timestamp': timestamp,
+    };
+  }
+
+  @override
+  String toString() {
+    return json.encode(toJson);
+  }
+}
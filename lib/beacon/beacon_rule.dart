@@ -0,0 +1,122 @@
+//  Copyright (c) 2018 Eyro Labs.
+//  Licensed under Apache License v2.0 that can be
+//  found in the LICENSE file.
+
+part of flutter_beacon;
+
+/// Class for defining a proximity rule evaluated natively on every ranging cycle.
+///
+/// With [identity] the rule watches one beacon, otherwise it counts the beacons
+/// of [region] (or of any region) matching the thresholds, and holds once at
+/// least [minCount] do.
+class BeaconRule {
+  /// The id reported when the rule fires.
+  final String id;
+
+  /// The identifiers of the beacon joined by `:`, e.g. `uuid:major:minor`.
+  final String? identity;
+
+  /// The identifier of the region the rule applies to.
+  final String? region;
+
+  /// The maximum distance of the beacon in meters.
+  final double? maxDistance;
+
+  /// The minimum rssi of the beacon.
+  final int? minRssi;
+
+  /// The number of matching beacons needed, when no [identity] is set.
+  final int? minCount;
+
+  /// How long the condition must hold before the rule fires.
+  final Duration dwell;
+
+  /// The minimum time between two firings of the rule.
+  final Duration cooldown;
+
+  /// Create rule object.
+  const BeaconRule({
+    required this.id,
+    this.identity,
+    this.region,
+    this.maxDistance,
+    this.minRssi,
+    this.minCount,
+    this.dwell = Duration.zero,
+    this.cooldown = Duration.zero,
+  });
+
+  /// Serialize current instance object into [Map].
+  dynamic get toJson {
+    final map = <String, dynamic>{
+      'id': id,
+      'dwellMillis': dwell.inMilliseconds,
+      'cooldownMillis': cooldown.inMilliseconds,
+    };
+
+    if (identity != null) {
+      map['identity'] = identity;
+    }
+
+    if (region != null) {
+      map['region'] = region;
+    }
+
+    if (maxDistance != null) {
+      map['maxDistance'] = maxDistance;
+    }
+
+    if (minRssi != null) {
+      map['minRssi'] = minRssi;
+    }
+
+    if (minCount != null) {
+      map['minCount'] = minCount;
+    }
+
+    return map;
+  }
+
+  @override
+  String toString() {
+    return json.encode(toJson);
+  }
+}
+
+/// Class for managing a firing of a [BeaconRule].
+class RuleFiring {
+  /// The id of the rule that fired.
+  final String rule;
+
+  /// The region whose ranging cycle fired the rule.
+  final Region region;
+
+  /// The number of beacons matching the rule.
+  final int count;
+
+  /// How long the condition has been holding.
+  final Duration dwell;
+
+  /// The time the rule fired, in milliseconds since epoch.
+  final int timestamp;
+
+  /// The identity of the beacon, for rules watching one beacon.
+  final String? identity;
+
+  /// The rssi of the beacon, for rules watching one beacon.
+  final int? rssi;
+
+  /// The distance of the beacon in meters, for rules watching one beacon.
+  final double? distance;
+
+  /// Create rule firing object from json.
+  RuleFiring.fromJson(dynamic json)
+      : rule = json['rule'],
+        region = Region.fromJson(json['region']),
+        count = json['count'],
+        dwell = Duration(milliseconds: json['dwellMillis']),
+        timestamp = json['timestamp'],
+        identity = json['identity'],
+        rssi = json['rssi'],
+        distance = json['distance'] is num ? (json['distance'] as num).toDouble() : null;
+}
@@ -0,0 +1,66 @@
+//  Copyright (c) 2018 Eyro Labs.
+//  Licensed under Apache License v2.0 that can be
+//  found in the LICENSE file.
+
+part of flutter_beacon;
+
+/// Class for managing Eddystone-TLM telemetry of an Eddystone-UID beacon.
+///
+/// For Android, telemetry is only sent when battery, temperature or version
+/// changed since it was last reported, or when the beacon rebooted.
+class EddystoneTelemetry {
+  /// The TLM frame version.
+  final int version;
+
+  /// The battery voltage in millivolts, 0 when not supported by the beacon.
+  final int batteryMilliVolts;
+
+  /// The beacon temperature in degrees Celsius, null when not supported.
+  final double? temperature;
+
+  /// The number of advertising frames sent since the beacon booted.
+  final int advertisingCount;
+
+  /// The time since the beacon booted, in seconds.
+  final int uptimeSeconds;
+
+  /// Create telemetry object.
+  const EddystoneTelemetry({
+    required this.version,
+    required this.batteryMilliVolts,
+    this.temperature,
+    required this.advertisingCount,
+    required this.uptimeSeconds,
+  });
+
+  /// Create telemetry object from json.
+  EddystoneTelemetry.fromJson(dynamic json)
+      : this(
+          version: json['version'],
+          batteryMilliVolts: json['batteryMilliVolts'],
+          temperature: json['temperature'] is num ? (json['temperature'] as num).toDouble() : null,
+          advertisingCount: json['advertisingCount'],
+          uptimeSeconds: json['uptimeSeconds'],
+        );
+
+  /// Serialize current instance object into [Map].
+  dynamic get toJson {
+    final map = <String, dynamic>{
+      'version': version,
+      'batteryMilliVolts': batteryMilliVolts,
+      'advertisingCount': advertisingCount,
+      'uptimeSeconds': uptimeSeconds,
+    };
+
+    if (temperature != null) {
+      map['temperature'] = temperature;
+    }
+
+    return map;
+  }
+
+  @override
+  String toString() {
+    return json.encode(toJson);
+  }
+}
@@ -27,11 +27,16 @@ class MonitoringResult {
   /// The [Region] of ranging result.
   final Region region;
 
+  /// When the event happened, set only for events replayed from a scan batch,
+  /// see [FlutterBeacon.setBatchedScanning].
+  final DateTime? timestamp;
+
   /// Constructor for deserialize dynamic json into [MonitoringResult].
   MonitoringResult.from(dynamic json)
       : this.monitoringEventType = _parseMonitoringEventType(json['event']),
         this.monitoringState = _parseMonitoringState(json['state']),
-        this.region = Region.fromJson(json['region']);
+        this.region = Region.fromJson(json['region']),
+        this.timestamp = json['timestamp'] is int ? DateTime.fromMillisecondsSinceEpoch(json['timestamp']) : null;
 
   /// Parsing dynamic state into [MonitoringState].
   static MonitoringState? _parseMonitoringState(dynamic state) {
@@ -74,6 +79,10 @@ class MonitoringResult {
       map['state'] = monitoringState.toString().split('.').last;
     }
 
+    if (timestamp != null) {
+      map['timestamp'] = timestamp!.millisecondsSinceEpoch;
+    }
+
     return map;
   }
 }
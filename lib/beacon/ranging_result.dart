@@ -12,16 +12,29 @@ class RangingResult {
   /// The [List] of [Beacon] detected of ranging result by [Region].
   final List<Beacon?> beacons;
 
+  /// When the beacons were scanned, set only for results replayed from a scan
+  /// batch, see [FlutterBeacon.setBatchedScanning].
+  final DateTime? timestamp;
+
   /// Constructor for deserialize dynamic json into [RangingResult].
   RangingResult.from(dynamic json, List<String> macAddresses, List<Proximity> proximities)
       : region = Region.fromJson(json['region']),
-        beacons = Beacon.beaconFromArray(json['beacons'], macAddresses, proximities);
+        beacons = Beacon.beaconFromArray(json['beacons'], macAddresses, proximities),
+        timestamp = json['timestamp'] is int ? DateTime.fromMillisecondsSinceEpoch(json['timestamp']) : null;
 
   /// Return the serializable of this object into [Map].
-  dynamic get toJson => <String, dynamic>{
-        'region': region.toJson,
-        'beacons': Beacon.beaconArrayToJson(beacons),
-      };
+  dynamic get toJson {
+    final map = <String, dynamic>{
+      'region': region.toJson,
+      'beacons': Beacon.beaconArrayToJson(beacons),
+    };
+
+    if (timestamp != null) {
+      map['timestamp'] = timestamp!.millisecondsSinceEpoch;
+    }
+
+    return map;
+  }
 
   @override
   String toString() {
@@ -15,7 +15,10 @@ import 'package:flutter/services.dart';
 part 'beacon/authorization_status.dart';
 part 'beacon/beacon.dart';
 part 'beacon/beacon_broadcast.dart';
+part 'beacon/beacon_position.dart';
+part 'beacon/beacon_rule.dart';
 part 'beacon/bluetooth_state.dart';
+part 'beacon/eddystone_telemetry.dart';
 part 'beacon/monitoring_result.dart';
 part 'beacon/ranging_result.dart';
 part 'beacon/region.dart';
@@ -36,6 +39,12 @@ class FlutterBeacon {
   /// Event Channel used to communicate to native code monitoring beacons.
   static const EventChannel _monitoringChannel = EventChannel('flutter_beacon_event_monitoring');
 
+  /// Event Channel used to communicate to native code positioning.
+  static const EventChannel _positioningChannel = EventChannel('flutter_beacon_event_positioning');
+
+  /// Event Channel used to communicate to native code rule firings.
+  static const EventChannel _rulesChannel = EventChannel('flutter_beacon_event_rules');
+
   /// Event Channel used to communicate to native code to checking
   /// for bluetooth state changed.
   static const EventChannel _bluetoothStateChangedChannel = EventChannel('flutter_bluetooth_state_changed');
@@ -51,6 +60,11 @@ class FlutterBeacon {
   Stream<AuthorizationStatus>? _onAuthorizationStatus;
 
   /// Initialize scanning API.
+  ///
+  /// For Android, [types] selects the beacon layouts to scan for. Besides the
+  /// `eddystone` and `altbeacon` flags, any name registered with
+  /// [registerBeaconLayout] or one of the built-in `iBeacon`, `eddystoneUID`,
+  /// `eddystoneURL`, `eddystoneTLM` and `standardAltBeacon` names can be set to `true`.
   Future<bool> initializeScanning(Map<String, bool>? types) async {
     final result = await _methodChannel.invokeMethod('initialize', types);
 
@@ -63,6 +77,19 @@ class FlutterBeacon {
     return result;
   }
 
+  /// Register an AltBeacon layout string under [name], so it can be enabled
+  /// through [initializeScanning]. The built-in names can not be registered
+  /// again.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> registerBeaconLayout(String name, String layout) async {
+    final result = await _methodChannel.invokeMethod('registerBeaconLayout', {
+      'name': name,
+      'layout': layout,
+    });
+    return result == true || result == 1;
+  }
+
   /// Initialize scanning API and check required permissions.
   ///
   /// For Android, it will check whether Bluetooth is enabled,
@@ -202,6 +229,55 @@ class FlutterBeacon {
     return onMonitoring;
   }
 
+  /// Start positioning from the beacons ranged in the defined [List] of [Region]s.
+  ///
+  /// The position is computed natively from the coordinates set with
+  /// [setPositioningMap], and only positions are sent over the channel.
+  ///
+  /// For iOS, this is not implemented.
+  Stream<BeaconPosition> positioning(List<Region> regions) {
+    final list = regions.map((region) => region.toJson).toList();
+    return _positioningChannel.receiveBroadcastStream(list).map((dynamic event) => BeaconPosition.fromJson(event));
+  }
+
+  /// Set the coordinates of the beacons used by [positioning]. Ranged distances
+  /// farther than [outlierMeters] from the fitted position are rejected, and
+  /// [particleFilter] smooths the positions over time.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> setPositioningMap(
+    List<BeaconCoordinate> beacons, {
+    double outlierMeters = 2.0,
+    bool particleFilter = false,
+    int particles = 500,
+  }) async {
+    final result = await _methodChannel.invokeMethod('setPositioningMap', {
+      'beacons': beacons.map((beacon) => beacon.toJson).toList(),
+      'outlierMeters': outlierMeters,
+      'particleFilter': particleFilter,
+      'particles': particles,
+    });
+    return result == true || result == 1;
+  }
+
+  /// Replace the proximity rules evaluated by [ruleFirings], return the number
+  /// of rules registered.
+  ///
+  /// For iOS, this is not implemented.
+  Future<int> setRules(List<BeaconRule> rules) async {
+    final result = await _methodChannel.invokeMethod('setRules', rules.map((rule) => rule.toJson).toList());
+    return result is int ? result : 0;
+  }
+
+  /// Start ranging the defined [List] of [Region]s and evaluate the rules set
+  /// with [setRules] natively, firing [RuleFiring] only when a rule fires.
+  ///
+  /// For iOS, this is not implemented.
+  Stream<RuleFiring> ruleFirings(List<Region> regions) {
+    final list = regions.map((region) => region.toJson).toList();
+    return _rulesChannel.receiveBroadcastStream(list).map((dynamic event) => RuleFiring.fromJson(event));
+  }
+
   /// Start checking for bluetooth state changed.
   ///
   /// This will fires [BluetoothState] whenever bluetooth state changed.
@@ -226,10 +302,49 @@ class FlutterBeacon {
     await _methodChannel.invokeMethod('startBroadcast', params.toJson);
   }
 
+  /// Change the identifiers, tx power or mode of the running broadcast without
+  /// stopping it first. Rapid successive updates are coalesced natively, and
+  /// returns `false` when this update was superseded by a later one.
+  ///
+  /// When the update can not be advertised, a [PlatformException] is thrown
+  /// with `details` set to `PREVIOUS_RESTORED`, and the broadcast in effect
+  /// before the update is started again.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> updateBroadcast(BeaconBroadcast params) async {
+    final result = await _methodChannel.invokeMethod('updateBroadcast', params.toJson);
+    return result == true || result == 1;
+  }
+
   Future<void> stopBroadcast() async {
     await _methodChannel.invokeMethod('stopBroadcast');
   }
 
+  /// Advertise several beacons, each for its own [BroadcastSlot.duration] in turn.
+  ///
+  /// When [concurrent] is `true`, every beacon gets its own advertising set
+  /// instead, which requires chipset support for multiple advertisers.
+  /// For iOS, this is not implemented.
+  Future<void> startBroadcastRotation(List<BroadcastSlot> slots, {bool concurrent = false}) async {
+    await _methodChannel.invokeMethod('startBroadcastRotation', {
+      'beacons': slots.map((slot) => slot.toJson).toList(),
+      'concurrent': concurrent,
+    });
+  }
+
+  /// Return the advertise success and failure counters of each beacon
+  /// of the current broadcast rotation.
+  ///
+  /// For iOS, this is not implemented.
+  Future<List<Map<String, dynamic>>> getBroadcastStats() async {
+    final result = await _methodChannel.invokeMethod('getBroadcastStats');
+    if (result is List) {
+      return result.map((stats) => Map<String, dynamic>.from(stats)).toList();
+    }
+
+    return <Map<String, dynamic>>[];
+  }
+
   Future<bool> isBroadcasting() async {
     final flag = await _methodChannel.invokeMethod('isBroadcasting');
     return flag == true || flag == 1;
@@ -239,4 +354,235 @@ class FlutterBeacon {
     final flag = await _methodChannel.invokeMethod('isBroadcastSupported');
     return flag == true || flag == 1;
   }
+
+  /// Group sightings of the same physical tag into one logical beacon, for tags
+  /// that rotate their MAC address or identifiers. Sightings sharing any of [keys]
+  /// within [window] are reported once, with the same [Beacon.logicalId].
+  ///
+  /// Supported keys are `mac`, `identifiers` (UUID/major/minor) and
+  /// `eddystoneInstance`. Pass an empty [keys] list to turn it off.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> setIdentityResolution({
+    List<String> keys = const ['mac', 'identifiers'],
+    Duration window = const Duration(seconds: 10),
+    int maxEntries = 1024,
+  }) async {
+    final result = await _methodChannel.invokeMethod(
+      'setIdentityResolution',
+      keys.isEmpty
+          ? null
+          : {
+              'keys': keys,
+              'windowMillis': window.inMilliseconds,
+              'maxEntries': maxEntries,
+            },
+    );
+    return result == true || result == 1;
+  }
+
+  /// Let the bluetooth controller queue scan results, filtered in hardware by the
+  /// ranged and monitored regions, and deliver them every [reportDelay]. Each batch
+  /// is replayed as ranging cycles of [cycle], so results arrive late but carry
+  /// their original [RangingResult.timestamp]. Regions are exited after [exitDelay]
+  /// without sightings. Pass [enabled] false to go back to regular scanning.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> setBatchedScanning({
+    bool enabled = true,
+    Duration reportDelay = const Duration(seconds: 10),
+    Duration cycle = const Duration(milliseconds: 1100),
+    Duration exitDelay = const Duration(seconds: 10),
+  }) async {
+    final result = await _methodChannel.invokeMethod(
+      'setBatchedScanning',
+      enabled
+          ? {
+              'reportDelayMillis': reportDelay.inMilliseconds,
+              'cycleMillis': cycle.inMilliseconds,
+              'exitMillis': exitDelay.inMilliseconds,
+            }
+          : null,
+    );
+    return result == true || result == 1;
+  }
+
+  /// Start collecting RSSI samples for distance calibration, with the device held
+  /// [distance] meters away from the beacon with the given [identity]
+  /// (e.g. `uuid:major:minor`), or from every ranged beacon when omitted.
+  /// Ranging must be running while samples are collected.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> startCalibration(double distance, {String? identity}) async {
+    final result = await _methodChannel.invokeMethod('startCalibration', {
+      'distance': distance,
+      'identity': identity,
+    });
+    return result == true || result == 1;
+  }
+
+  /// Stop collecting samples at the current distance, return the number of
+  /// samples collected so far.
+  ///
+  /// For iOS, this is not implemented.
+  Future<int> stopCalibration() async {
+    final result = await _methodChannel.invokeMethod('stopCalibration');
+    return result is int ? result : 0;
+  }
+
+  /// Fit the path loss model of this device to the collected samples, store it
+  /// and use it for the `accuracy` of ranged beacons from now on. Samples must
+  /// cover at least two distances.
+  ///
+  /// For iOS, this is not implemented.
+  Future<Map<String, dynamic>> applyCalibration() async {
+    final result = await _methodChannel.invokeMethod('applyCalibration');
+    if (result is Map) {
+      return Map<String, dynamic>.from(result);
+    }
+
+    return <String, dynamic>{};
+  }
+
+  /// Drop the stored calibration of this device and go back to the default
+  /// distance model.
+  ///
+  /// For iOS, this is not implemented.
+  Future<void> resetCalibration() async {
+    await _methodChannel.invokeMethod('resetCalibration');
+  }
+
+  /// Range the [regions] and ship the sightings natively to a gateway process
+  /// listening on [host]:[port], or on the Unix socket [path] (a leading `@` for
+  /// the abstract namespace). Sightings never reach Dart; they are sent in gzipped
+  /// batches of up to [maxBatchSightings] or [maxBatchAge], and kept in a spool of
+  /// up to [maxSpoolBytes] while the gateway is not reachable.
+  ///
+  /// Each batch is a frame of a 4 byte big endian length, a flags byte (1 when
+  /// gzipped) and newline separated JSON sightings, acknowledged by the gateway
+  /// with the byte `0x06`.
+  ///
+  /// For iOS, this is not implemented.
+  Future<bool> startExport(
+    List<Region> regions, {
+    String host = '127.0.0.1',
+    int? port,
+    String? path,
+    int maxBatchSightings = 500,
+    Duration maxBatchAge = const Duration(seconds: 5),
+    int maxSpoolBytes = 4 * 1024 * 1024,
+    bool compress = true,
+  }) async {
+    final arguments = <String, dynamic>{
+      'regions': regions.map((region) => region.toJson).toList(),
+      'maxBatchSightings': maxBatchSightings,
+      'maxBatchMillis': maxBatchAge.inMilliseconds,
+      'maxSpoolBytes': maxSpoolBytes,
+      'compress': compress,
+    };
+    if (path != null) {
+      arguments['path'] = path;
+    } else {
+      arguments['host'] = host;
+      arguments['port'] = port;
+    }
+
+    final result = await _methodChannel.invokeMethod('startExport', arguments);
+    return result == true || result == 1;
+  }
+
+  /// Stop the export started with [startExport]. Batches not sent yet stay in
+  /// the spool until the next export.
+  ///
+  /// For iOS, this is not implemented.
+  Future<void> stopExport() async {
+    await _methodChannel.invokeMethod('stopExport');
+  }
+
+  /// Return the counters of the running export, such as batches sent, spooled
+  /// and dropped, and the compression ratio.
+  ///
+  /// For iOS, this is not implemented.
+  Future<Map<String, dynamic>> getExportStats() async {
+    final result = await _methodChannel.invokeMethod('getExportStats');
+    if (result is Map) {
+      return Map<String, dynamic>.from(result);
+    }
+
+    return <String, dynamic>{};
+  }
+
+  /// Return the scanning and broadcasting counters collected by the native side,
+  /// such as ranging cycles, beacons per cycle, serialization time and dropped events.
+  ///
+  /// For iOS, this is not implemented.
+  Future<Map<String, dynamic>> getMetrics() async {
+    final result = await _methodChannel.invokeMethod('getMetrics');
+    if (result is Map) {
+      return Map<String, dynamic>.from(result);
+    }
+
+    return <String, dynamic>{};
+  }
+
+  /// Return an estimated energy budget per hour for scanning and broadcasting
+  /// since the last [resetEnergyEstimate], split into scan radio, CPU and
+  /// advertising, along with the scan, idle and advertising times it comes from.
+  ///
+  /// The estimate uses typical phone currents; pass figures measured on the
+  /// target device to make it closer to the real drain.
+  /// Serialization is measured in wall time (`serializationWallMillis`), so
+  /// the CPU share it adds is an upper bound.
+  ///
+  /// For iOS, this is not implemented.
+  Future<Map<String, dynamic>> getEnergyEstimate({
+    double? scanCurrentMa,
+    double? cpuCurrentMa,
+    double? wakeupMillis,
+    double? advertisingEventMaMillis,
+    double? voltage,
+  }) async {
+    final model = <String, dynamic>{
+      if (scanCurrentMa != null) 'scanCurrentMa': scanCurrentMa,
+      if (cpuCurrentMa != null) 'cpuCurrentMa': cpuCurrentMa,
+      if (wakeupMillis != null) 'wakeupMillis': wakeupMillis,
+      if (advertisingEventMaMillis != null) 'advertisingEventMaMillis': advertisingEventMaMillis,
+      if (voltage != null) 'voltage': voltage,
+    };
+    final result = await _methodChannel.invokeMethod('getEnergyEstimate', model);
+    if (result is Map) {
+      return Map<String, dynamic>.from(result);
+    }
+
+    return <String, dynamic>{};
+  }
+
+  /// Start a new energy accounting period for [getEnergyEstimate].
+  ///
+  /// For iOS, this is not implemented.
+  Future<void> resetEnergyEstimate() async {
+    await _methodChannel.invokeMethod('resetEnergyEstimate');
+  }
+
+  /// Run several method calls in a single platform channel round trip, such as
+  /// `MapEntry('initialize', {'altbeacon': true})` followed by
+  /// `MapEntry('startBroadcast', params.toJson)`.
+  ///
+  /// Calls run in order, each one after the previous completed, and the batch
+  /// stops at the first failure. Each returned entry holds the `method` and
+  /// either its `result` or its `error` and `message`.
+  /// For iOS, this is not implemented.
+  Future<List<Map<String, dynamic>>> batch(List<MapEntry<String, dynamic>> calls) async {
+    final result = await _methodChannel.invokeMethod(
+        'batch',
+        calls.map((call) => <String, dynamic>{
+              'method': call.key,
+              'arguments': call.value,
+            }).toList());
+    if (result is List) {
+      return result.map((entry) => Map<String, dynamic>.from(entry)).toList();
+    }
+
+    return <Map<String, dynamic>>[];
+  }
 }
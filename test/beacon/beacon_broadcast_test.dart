@@ -22,4 +22,44 @@ main() {
     expect(beacon.advertisingTxPowerLevel, AdvertisingTxPowerLevel.low);
     expect(beacon.toJson, isMap);
   });
+
+  test('layout constructor serializes identifiers', () {
+    final beacon = BeaconBroadcast.withLayout(
+      layout: 'eddystoneUID',
+      identifiers: ['0x00010203040506070809', '0x0a0b0c0d0e0f'],
+      txPower: -41,
+    );
+
+    expect(beacon.layout, 'eddystoneUID');
+    expect(beacon.toJson['layout'], 'eddystoneUID');
+    expect(beacon.toJson['identifiers'], ['0x00010203040506070809', '0x0a0b0c0d0e0f']);
+    expect(beacon.toJson['txPower'], -41);
+    expect(beacon.toJson.containsKey('url'), false);
+  });
+
+  test('layout constructor serializes url', () {
+    final beacon = BeaconBroadcast.withLayout(
+      layout: 'eddystoneURL',
+      url: 'https://example.com',
+    );
+
+    expect(beacon.toJson['layout'], 'eddystoneURL');
+    expect(beacon.toJson['url'], 'https://example.com');
+  });
+
+  test('broadcast slot carries its duration', () {
+    final slot = BroadcastSlot(
+      beacon: BeaconBroadcast(
+        proximityUUID: 'UUID',
+        major: 1,
+        minor: 2,
+      ),
+      duration: const Duration(milliseconds: 500),
+    );
+
+    expect(slot.toJson['proximityUUID'], 'UUID');
+    expect(slot.toJson['major'], 1);
+    expect(slot.toJson['minor'], 2);
+    expect(slot.toJson['durationMillis'], 500);
+  });
 }
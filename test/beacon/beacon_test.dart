@@ -196,4 +196,47 @@ main() {
           'macAddress': 'MAC',
         }));
   });
+
+  test('eddystone url and custom beacons from json', () {
+    final url = Beacon.fromJson({
+      'type': 'eddystoneURL',
+      'url': 'https://example.com',
+      'proximityUUID': '',
+      'macAddress': 'MAC-ADDRESS',
+      'major': -1,
+      'minor': -1,
+      'namespaceId': '',
+      'instanceId': '',
+      'rssi': -60,
+      'txPower': -20,
+      'accuracy': '1.23',
+    }, null);
+    expect(url.type, 'eddystoneURL');
+    expect(url.url, 'https://example.com');
+    expect(url.identifiers, isNull);
+    expect(url.toJson['url'], 'https://example.com');
+
+    final custom = Beacon.fromJson({
+      'type': 'custom',
+      'identifiers': ['0x0102030405', '7'],
+      'proximityUUID': '',
+      'macAddress': 'MAC-ADDRESS',
+      'major': -1,
+      'minor': -1,
+      'namespaceId': '',
+      'instanceId': '',
+      'rssi': -60,
+      'txPower': -59,
+      'accuracy': '1.23',
+    }, null);
+    expect(custom.type, 'custom');
+    expect(custom.url, isNull);
+    expect(custom.identifiers, ['0x0102030405', '7']);
+    expect(custom.toJson['identifiers'], ['0x0102030405', '7']);
+
+    final other = Beacon.fromJson({...custom.toJson, 'identifiers': ['0x0102030405', '8']}, null);
+    expect(custom == Beacon.fromJson(custom.toJson, null), isTrue);
+    expect(custom == other, isFalse);
+    expect(url == Beacon.fromJson({...url.toJson, 'url': 'https://example.org'}, null), isFalse);
+  });
 }
@@ -0,0 +1,62 @@
+import 'dart:convert';
+
+import 'package:flutter_beacon/flutter_beacon.dart';
+import 'package:flutter_test/flutter_test.dart';
+
+main() {
+  test('constructor test must be equal', () {
+    final map = {
+      'version': 0,
+      'batteryMilliVolts': 3000,
+      'advertisingCount': 1200,
+      'uptimeSeconds': 360,
+      'temperature': 21.5,
+    };
+    final telemetry = EddystoneTelemetry.fromJson(map);
+
+    expect(telemetry.version, 0);
+    expect(telemetry.batteryMilliVolts, 3000);
+    expect(telemetry.temperature, 21.5);
+    expect(telemetry.advertisingCount, 1200);
+    expect(telemetry.uptimeSeconds, 360);
+    expect(telemetry.toJson, map);
+    expect(telemetry.toString(), json.encode(map));
+  });
+
+  test('temperature is optional', () {
+    final telemetry = EddystoneTelemetry.fromJson({
+      'version': 0,
+      'batteryMilliVolts': 0,
+      'advertisingCount': 1,
+      'uptimeSeconds': 2,
+    });
+
+    expect(telemetry.temperature, isNull);
+    expect(telemetry.toJson.containsKey('temperature'), false);
+  });
+
+  test('beacon parses telemetry', () {
+    final beacon = Beacon.fromJson({
+      'type': 'eddystone',
+      'proximityUUID': '',
+      'major': -1,
+      'minor': -1,
+      'namespaceId': '0x00010203040506070809',
+      'instanceId': '0x0a0b0c0d0e0f',
+      'rssi': -70,
+      'txPower': -41,
+      'accuracy': '1.50',
+      'macAddress': 'MAC-ADDRESS',
+      'telemetry': {
+        'version': 0,
+        'batteryMilliVolts': 2900,
+        'advertisingCount': 10,
+        'uptimeSeconds': 5,
+      },
+    }, null);
+
+    expect(beacon.telemetry, isNotNull);
+    expect(beacon.telemetry!.batteryMilliVolts, 2900);
+    expect(beacon.toJson['telemetry']['batteryMilliVolts'], 2900);
+  });
+}
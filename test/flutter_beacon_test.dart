@@ -9,6 +9,8 @@ void main() {
   const MethodChannel channel = MethodChannel('flutter_beacon');
   const MethodChannel rangingChannel = MethodChannel('flutter_beacon_event');
   const MethodChannel monitoringChannel = MethodChannel('flutter_beacon_event_monitoring');
+  const MethodChannel positioningChannel = MethodChannel('flutter_beacon_event_positioning');
+  const MethodChannel rulesChannel = MethodChannel('flutter_beacon_event_rules');
   const MethodChannel bluetoothChannel = MethodChannel('flutter_bluetooth_state_changed');
   const MethodChannel authorizationChannel = MethodChannel('flutter_authorization_status_changed');
 
@@ -63,10 +65,133 @@ void main() {
         return true;
       }
 
+      if (method == 'updateBroadcast') {
+        return methodCall.arguments['minor'] != null;
+      }
+
+      if (method == 'registerBeaconLayout') {
+        return methodCall.arguments['name'] != null && methodCall.arguments['layout'] != null;
+      }
+
+      if (method == 'batch') {
+        return (methodCall.arguments as List).map((call) {
+          return {'method': call['method'], 'result': true};
+        }).toList();
+      }
+
+      if (method == 'setIdentityResolution') {
+        return methodCall.arguments == null || (methodCall.arguments['keys'] as List).isNotEmpty;
+      }
+
+      if (method == 'setBatchedScanning') {
+        return methodCall.arguments == null || methodCall.arguments['reportDelayMillis'] > 0;
+      }
+
+      if (method == 'setRules') {
+        return (methodCall.arguments as List).length;
+      }
+
+      if (method == 'setPositioningMap') {
+        return (methodCall.arguments['beacons'] as List).length >= 3;
+      }
+
+      if (method == 'startCalibration') {
+        return methodCall.arguments['distance'] > 0;
+      }
+
+      if (method == 'stopCalibration') {
+        return 24;
+      }
+
+      if (method == 'applyCalibration') {
+        return {
+          'model': 'Acme Rugged',
+          'samples': 0,
+          'pathLossExponent': 2.4,
+          'referenceOffset': -3.5,
+          'rSquared': 0.9,
+        };
+      }
+
+      if (method == 'startExport') {
+        final arguments = methodCall.arguments;
+        return (arguments['regions'] as List).isNotEmpty && (arguments['port'] != null || arguments['path'] != null);
+      }
+
+      if (method == 'stopExport') {
+        return true;
+      }
+
+      if (method == 'getExportStats') {
+        return {
+          'running': true,
+          'batchesSent': 4,
+          'batchesInSpool': 0,
+        };
+      }
+
+      if (method == 'getEnergyEstimate') {
+        final arguments = methodCall.arguments as Map;
+        final scanCurrentMa = arguments['scanCurrentMa'] ?? 12.0;
+        return {
+          'elapsedMillis': 3600000,
+          'scanActiveMillis': 360000,
+          'scanMahPerHour': scanCurrentMa * 0.1,
+          'totalMahPerHour': scanCurrentMa * 0.1 + 0.5,
+        };
+      }
+
+      if (method == 'resetEnergyEstimate') {
+        return true;
+      }
+
+      if (method == 'getMetrics') {
+        return {
+          'rangingCycles': 3,
+          'beaconsPerCycle': 2,
+          'eventsDropped': 0,
+        };
+      }
+
       throw MissingPluginException(
           'No implementation found for method $method on channel ${channel.name}');
     });
 
+    rulesChannel.setMockMethodCallHandler((MethodCall methodCall) async {
+      if (methodCall.arguments is List) {
+        ServicesBinding.instance!.defaultBinaryMessenger.handlePlatformMessage(
+          rulesChannel.name,
+          const StandardMethodCodec().encodeSuccessEnvelope({
+            'rule': 'counter',
+            'region': (methodCall.arguments as List).first,
+            'count': 1,
+            'dwellMillis': 5000,
+            'timestamp': 1600000000000,
+            'identity': 'cb10023f-a318-3394-4199-a8730c7c1aec:1:1',
+            'rssi': -60,
+            'distance': 1.2,
+          }),
+          (ByteData? data) {},
+        );
+      }
+    });
+
+    positioningChannel.setMockMethodCallHandler((MethodCall methodCall) async {
+      if (methodCall.arguments is List) {
+        ServicesBinding.instance!.defaultBinaryMessenger.handlePlatformMessage(
+          positioningChannel.name,
+          const StandardMethodCodec().encodeSuccessEnvelope({
+            'x': 4.5,
+            'y': 2.0,
+            'accuracy': 0.8,
+            'beacons': 4,
+            'timestamp': 1600000000000,
+          }),
+          (ByteData? data) {},
+        );
+      }
+    });
+
     rangingChannel.setMockMethodCallHandler((MethodCall methodCall) async {
       final args = methodCall.arguments;
       if (args is List) {
@@ -257,6 +382,73 @@ void main() {
         true,
       );
     });
+
+    test('RegisterBeaconLayout return "true"', () async {
+      expect(
+        await flutterBeacon.registerBeaconLayout('vendor', 'm:2-3=beac,i:4-19,i:20-21,i:22-23,p:24-24,d:25-25'),
+        true,
+      );
+    });
+
+    test('Batch return one result per call', () async {
+      final results = await flutterBeacon.batch([
+        MapEntry('initialize', {'altbeacon': true}),
+        MapEntry('isBroadcastSupported', null),
+      ]);
+      expect(results.length, 2);
+      expect(results.first['method'], 'initialize');
+      expect(results.first['result'], true);
+      expect(results.last['method'], 'isBroadcastSupported');
+    });
+
+    test('SetIdentityResolution must be true', () async {
+      expect(await flutterBeacon.setIdentityResolution(keys: ['mac', 'eddystoneInstance']), true);
+      expect(await flutterBeacon.setIdentityResolution(keys: []), true);
+    });
+
+    test('SetBatchedScanning passes the delays', () async {
+      expect(await flutterBeacon.setBatchedScanning(reportDelay: Duration(seconds: 30)), true);
+      expect(await flutterBeacon.setBatchedScanning(reportDelay: Duration.zero), false);
+      expect(await flutterBeacon.setBatchedScanning(enabled: false), true);
+    });
+
+    test('Calibration collects samples and return the fitted model', () async {
+      expect(await flutterBeacon.startCalibration(1.0), true);
+      expect(await flutterBeacon.stopCalibration(), 24);
+      final calibration = await flutterBeacon.applyCalibration();
+      expect(calibration['pathLossExponent'], 2.4);
+      expect(calibration['referenceOffset'], -3.5);
+    });
+
+    test('StartExport needs an endpoint', () async {
+      final regions = <Region>[
+        Region.fromJson({'identifier': 'Cubeacon', 'proximityUUID': 'CB10023F-A318-3394-4199-A8730C7C1AEC'}),
+      ];
+      expect(await flutterBeacon.startExport(regions), false);
+      expect(await flutterBeacon.startExport(regions, port: 7070), true);
+      expect(await flutterBeacon.startExport(regions, path: '@gateway'), true);
+
+      final stats = await flutterBeacon.getExportStats();
+      expect(stats['batchesSent'], 4);
+      await flutterBeacon.stopExport();
+    });
+
+    test('GetMetrics return counters', () async {
+      final metrics = await flutterBeacon.getMetrics();
+      expect(metrics['rangingCycles'], 3);
+      expect(metrics['beaconsPerCycle'], 2);
+      expect(metrics['eventsDropped'], 0);
+    });
+
+    test('GetEnergyEstimate pass model overrides', () async {
+      final estimate = await flutterBeacon.getEnergyEstimate();
+      expect(estimate['scanActiveMillis'], 360000);
+      expect(estimate['scanMahPerHour'], closeTo(1.2, 1e-9));
+
+      final measured = await flutterBeacon.getEnergyEstimate(scanCurrentMa: 8);
+      expect(measured['scanMahPerHour'], closeTo(0.8, 1e-9));
+      await flutterBeacon.resetEnergyEstimate();
+    });
   });
 
   group('Event channel - ranging', () {
@@ -270,6 +462,58 @@ void main() {
       expect(result.region.proximityUUID, 'CB10023F-A318-3394-4199-A8730C7C1AEC');
       expect(result.beacons, isNotEmpty);
       expect(result.beacons.length, 2);
+      expect(result.timestamp, isNull);
+    });
+
+    test('replayed results keep their scan timestamp', () {
+      final result = RangingResult.from({
+        'region': {'identifier': 'Cubeacon', 'proximityUUID': 'CB10023F-A318-3394-4199-A8730C7C1AEC'},
+        'beacons': [],
+        'timestamp': 1600000000000,
+      }, <String>[], <Proximity>[]);
+      expect(result.timestamp, DateTime.fromMillisecondsSinceEpoch(1600000000000));
+      expect(result.toJson['timestamp'], 1600000000000);
+    });
+  });
+
+  group('Event channel - rules', () {
+    test('ruleFirings emits firings', () async {
+      final count = await flutterBeacon.setRules([
+        BeaconRule(
+          id: 'counter',
+          identity: 'cb10023f-a318-3394-4199-a8730c7c1aec:1:1',
+          maxDistance: 1.5,
+          dwell: Duration(seconds: 5),
+        ),
+      ]);
+      expect(count, 1);
+
+      final firing = await flutterBeacon.ruleFirings(<Region>[
+        Region.fromJson({'identifier': 'Cubeacon', 'proximityUUID': 'CB10023F-A318-3394-4199-A8730C7C1AEC'}),
+      ]).first;
+      expect(firing.rule, 'counter');
+      expect(firing.region.identifier, 'Cubeacon');
+      expect(firing.dwell, Duration(seconds: 5));
+      expect(firing.distance, 1.2);
+    });
+  });
+
+  group('Event channel - positioning', () {
+    test('positioning emits positions', () async {
+      final beacons = <BeaconCoordinate>[
+        BeaconCoordinate(identity: 'cb10023f-a318-3394-4199-a8730c7c1aec:1:1', x: 0, y: 0),
+        BeaconCoordinate(identity: 'cb10023f-a318-3394-4199-a8730c7c1aec:1:2', x: 10, y: 0),
+        BeaconCoordinate(identity: 'cb10023f-a318-3394-4199-a8730c7c1aec:1:3', x: 0, y: 10),
+      ];
+      expect(await flutterBeacon.setPositioningMap(beacons), true);
+
+      final position = await flutterBeacon.positioning(<Region>[
+        Region.fromJson({'identifier': 'Cubeacon', 'proximityUUID': 'CB10023F-A318-3394-4199-A8730C7C1AEC'}),
+      ]).first;
+      expect(position.x, 4.5);
+      expect(position.y, 2.0);
+      expect(position.accuracy, 0.8);
+      expect(position.beacons, 4);
     });
   });
 
@@ -362,5 +606,14 @@ void main() {
       final result = await flutterBeacon.isBroadcasting();
       expect(result, false);
     });
+
+    test('updateBroadcast', () async {
+      final result = await flutterBeacon.updateBroadcast(BeaconBroadcast(
+        proximityUUID: 'CB10023F-A318-3394-4199-A8730C7C1AEC',
+        major: 1,
+        minor: 2,
+      ));
+      expect(result, true);
+    });
   });
 }